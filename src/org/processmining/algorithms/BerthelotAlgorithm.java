@@ -1,15 +1,26 @@
 package org.processmining.algorithms;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.processmining.framework.plugin.PluginContext;
-import org.processmining.lpengines.factories.LPEngineFactory;
 import org.processmining.lpengines.interfaces.LPEngine;
-import org.processmining.lpengines.interfaces.LPEngine.EngineType;
-import org.processmining.lpengines.interfaces.LPEngine.Operator;
 import org.processmining.models.connections.petrinets.behavioral.FinalMarkingConnection;
 import org.processmining.models.connections.petrinets.behavioral.InitialMarkingConnection;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
@@ -23,7 +34,34 @@ import org.processmining.parameters.BerthelotParameters;
 
 public class BerthelotAlgorithm {
 
+	/*
+	 * The maximal number of solver threads that may be stuck in an LP that
+	 * timed out. Once this many are stuck, no further LPs are solved until
+	 * some return, and their places are kept as if their LPs timed out.
+	 */
+	private static final int MAX_STUCK_SOLVERS = 4;
+	/*
+	 * The number of solver threads, of all runs, stuck in an LP that timed
+	 * out.
+	 */
+	private static final AtomicInteger stuckSolvers = new AtomicInteger();
+
 	public Petrinet apply(PluginContext context, Petrinet pn, BerthelotParameters parameters) {
+		return apply(context, pn, parameters, null);
+	}
+
+	/*
+	 * As above, but stops with a CancellationException as soon as the given
+	 * future (which may be null) gets cancelled.
+	 * 
+	 * If the progress of the given context gets cancelled, or the time budget
+	 * of the given parameters runs out, no further places are checked, and
+	 * only the places found redundant so far are removed. Likewise, a place
+	 * whose LP times out is kept. The resulting net is then only partially
+	 * reduced, but every removed place is still structurally redundant.
+	 */
+	protected Petrinet apply(PluginContext context, Petrinet pn, BerthelotParameters parameters, Future<?> future) {
+		long start = System.nanoTime();
 		Map<Place, Place> placeMap = new HashMap<Place, Place>();
 		Map<Transition, Transition> transitionMap = new HashMap<Transition, Transition>();
 		Petrinet reducedPN = cloneNet(pn, placeMap, transitionMap);
@@ -31,178 +69,59 @@ public class BerthelotAlgorithm {
 		Set<Marking> finalMarkings = apply(parameters.getFinalMarkings(), placeMap);
 
 		/*
-		 * Construct easy-lookup for arc weights.
+		 * The constraint system is built once. See BerthelotModel for the
+		 * constraints per candidate place.
 		 */
-		Map<Place, Integer> pMap = new HashMap<Place, Integer>();
-		int ctr = 0;
-		for (Place place : reducedPN.getPlaces()) {
-			pMap.put(place,  ctr);
-			ctr++;
-		}
-		Map<Transition, Integer> tMap = new HashMap<Transition, Integer>();
-		ctr = 0;
-		for (Transition transition : reducedPN.getTransitions()) {
-			tMap.put(transition,  ctr);
-			ctr++;
-		}
-		int[][] ptWeights = new int[reducedPN.getPlaces().size()][reducedPN.getTransitions().size()];
-		for (int p = reducedPN.getPlaces().size() - 1; p >= 0; p--) {
-			for (int t = reducedPN.getTransitions().size() - 1; t >= 0; t--) {
-				ptWeights[p][t] = 0;
-			}
-		}
-		int[][] tpWeights = new int[reducedPN.getTransitions().size()][reducedPN.getPlaces().size()];
-		for (int t = reducedPN.getTransitions().size() - 1; t >= 0; t--) {
-			for (int p = reducedPN.getPlaces().size() - 1; p >= 0; p--) {
-				tpWeights[t][p] = 0;
-			}
-		}
-		for (PetrinetEdge<?, ?> edge : reducedPN.getEdges()) {
-			if (edge instanceof Arc) {
-				Arc arc = (Arc) edge;
-				if (arc.getSource() instanceof Place) {
-					ptWeights[pMap.get(arc.getSource())][tMap.get(arc.getTarget())] = arc.getWeight();
-				} else {
-					tpWeights[tMap.get(arc.getSource())][pMap.get(arc.getTarget())] = arc.getWeight();
-				}
-			}
-		}
-		
+		List<Place> places = new ArrayList<Place>(reducedPN.getPlaces());
+		List<Transition> transitions = new ArrayList<Transition>(reducedPN.getTransitions());
+		BerthelotModel model = new BerthelotModel(reducedPN, places, transitions, initialMarking);
+		setUp(System.nanoTime() - start);
+
 		/*
 		 * redudantPlaces holds the set of redundant places found so far. These
 		 * places will be ignored when checking whether the candidate place is
 		 * redundant.
 		 */
 		Set<Place> redundantPlaces = new HashSet<Place>();
-		for (Place candidatePlace : reducedPN.getPlaces()) {
-			parameters.displayMessage("[BerthelotAlgorithm] Place " + candidatePlace.getLabel());
-			if (fastCheckFails(reducedPN, candidatePlace)) {
-				continue;
-			}
-
-			/*
-			 * Checking whether candidatePlace is structurally redundant. First
-			 * create LPEngine, with a variable for every place and one
-			 * additional variable for the initial marking.
-			 */
-			parameters.displayMessage("[BerthelotAlgorithm] Create engine");
-			Map<Place, Integer> placeIndex = new HashMap<Place, Integer>();
-			int mIndex;
-			LPEngine engine = LPEngineFactory.createLPEngine(EngineType.LPSOLVE, 0, 0);
-			for (Place place : reducedPN.getPlaces()) {
-				if (!redundantPlaces.contains(place)) {
-					placeIndex.put(place,
-							engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.INTEGER));
-				}
-			}
-			//			System.out.println(placeIndex);
-			mIndex = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.INTEGER);
-
-			/*
-			 * Let Q be the set of places in the net excluding the
-			 * candidatePlace p. Let I be the 'selected' subset of Q, that is, I
-			 * = { i in Q | V(q) > 0 }. Note that in the definitions below we
-			 * have replaced I by Q, as V(q) = 0 if q not in I.
-			 * 
-			 * Let Add the first constraint: for the initial marking M0, p has a
-			 * weighted marking grater than the sum of weighted marking of
-			 * places belonging to I.
-			 * 
-			 * V(p).M0(p) - Sum_{q in Q}{V(q).M0(q) - bM0 = 0
-			 */
-			parameters.displayMessage("[BerthelotAlgorithm] First constraint");
-			Map<Integer, Double> constraint = new HashMap<Integer, Double>();
-			for (Place place : reducedPN.getPlaces()) {
-				if (!redundantPlaces.contains(place)) {
-					constraint.put(placeIndex.get(place),
-							(place == candidatePlace ? 1.0 : -1.0) * initialMarking.occurrences(place));
-				}
-			}
-			constraint.put(mIndex, -1.0);
-			engine.addConstraint(constraint, Operator.EQUAL, 0.0);
-
-			/*
-			 * Add the second constraint: the difference between the weighted
-			 * marking of p and those of places belonging to I necessary to give
-			 * concession to t must be less than or equal to this difference in
-			 * the initial marking (bM0).
-			 * 
-			 * Let T be the set of transitions in the net. Let W(m,n) denote the
-			 * arc weight of the arc from node m to node n. If there is no such
-			 * arc, W(m,n) = 0.
-			 * 
-			 * For all t in T: V(p).W(p,t) - Sum_{q in Q}{V(q).W(q.t) - bM0 <= 0
-			 */
-			parameters.displayMessage("[BerthelotAlgorithm] Second constraint");
-			for (Transition transition : reducedPN.getTransitions()) {
-				constraint = new HashMap<Integer, Double>();
-				for (Place place : reducedPN.getPlaces()) {
-					if (!redundantPlaces.contains(place)) {
-						//Arc arc = reducedPN.getArc(place, transition);
-						int weight = ptWeights[pMap.get(place)][tMap.get(transition)]; //(arc == null ? 0 : arc.getWeight());
-						constraint.put(placeIndex.get(place), (place == candidatePlace ? 1.0 : -1.0) * weight);
-					}
-				}
-				constraint.put(mIndex, -1.0);
-				engine.addConstraint(constraint, Operator.LESS_EQUAL, 0.0);
-			}
-
-			/*
-			 * Add the third constraint: when a transition t occurs, the growth
-			 * of the weighted marking of p is greater than that one of I.
-			 * 
-			 * Let C(m,n) = W(n,m) - W(m,n), that is C(m,n) is the net effect on
-			 * place m of firing transition n.
-			 * 
-			 * For all t in T: V(p).C(p,t) - Sum_{q in Q}{V(q).C(q,t) >= 0
-			 */
-			parameters.displayMessage("[BerthelotAlgorithm] Third constraint");
-			for (Transition transition : reducedPN.getTransitions()) {
-				constraint = new HashMap<Integer, Double>();
-				for (Place place : reducedPN.getPlaces()) {
-					if (!redundantPlaces.contains(place)) {
-						//Arc arc = reducedPN.getArc(transition, place);
-						int weight = tpWeights[tMap.get(transition)][pMap.get(place)]; //(arc == null ? 0 : arc.getWeight());
-						//arc = reducedPN.getArc(place, transition);
-						weight -= ptWeights[pMap.get(place)][tMap.get(transition)]; //(arc == null ? 0 : arc.getWeight());
-						constraint.put(placeIndex.get(place), (place == candidatePlace ? 1.0 : -1.0) * weight);
-					}
-				}
-				engine.addConstraint(constraint, Operator.GREATER_EQUAL, 0.0);
-			}
-
-			/*
-			 * Places cannot have a non-negative solution, and candidatePlace
-			 * should have a positive solution.
-			 */
-			parameters.displayMessage("[BerthelotAlgorithm] Fourth constraint");
-			for (Place place : reducedPN.getPlaces()) {
-				if (!redundantPlaces.contains(place)) {
-					constraint = new HashMap<Integer, Double>();
-					constraint.put(placeIndex.get(place), 1.0);
-					if (place == candidatePlace) {
-						engine.addConstraint(constraint, Operator.GREATER_EQUAL, 1.0);
-					} else {
-						engine.addConstraint(constraint, Operator.GREATER_EQUAL, 0.0);
+		boolean[] redundant = new boolean[places.size()];
+		if (context != null) {
+			context.getProgress().setMinimum(0);
+			context.getProgress().setMaximum(places.size());
+			context.getProgress().setCaption("Removing structurally redundant places");
+			context.getProgress().setIndeterminate(false);
+		}
+		long deadline = parameters.getTimeBudget() > 0 ? System.currentTimeMillis() + parameters.getTimeBudget()
+				: Long.MAX_VALUE;
+		/*
+		 * With a timeout or a time budget, LPs are solved on separate threads,
+		 * so that waiting for them can be stopped. Every checking thread waits
+		 * for one LP at a time, and at most MAX_STUCK_SOLVERS threads may be
+		 * stuck, which bounds the number of solver threads.
+		 */
+		ExecutorService solver = null;
+		if (parameters.getTimeout() > 0 || parameters.getTimeBudget() > 0) {
+			int size = Math.max(1, parameters.getNumberOfThreads()) + MAX_STUCK_SOLVERS;
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 10, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new SolverThreadFactory());
+			pool.allowCoreThreadTimeOut(true);
+			solver = pool;
+		}
+		try {
+			if (parameters.getNumberOfThreads() > 1) {
+				findRedundantPlaces(context, reducedPN, places, model, redundant, parameters, solver, deadline,
+						future);
+				for (int candidate = 0; candidate < places.size(); candidate++) {
+					if (redundant[candidate]) {
+						redundantPlaces.add(places.get(candidate));
 					}
 				}
+			} else {
+				findRedundantPlaces(context, reducedPN, places, model, redundant, redundantPlaces, parameters,
+						solver, deadline, future);
 			}
-			/*
-			 * bM0 should be at least 0.
-			 */
-			constraint = new HashMap<Integer, Double>();
-			constraint.put(mIndex, 1.0);
-			engine.addConstraint(constraint, Operator.GREATER_EQUAL, 0.0);
-
-			//			engine.print();
-
-			parameters.displayMessage("[BerthelotAlgorithm] Solve");
-			if (engine.isFeasible()) {
-				/*
-				 * Found a solution: candidatePlace is structurally redundant.
-				 */
-				//				System.out.println("Place " + candidatePlace + " is structurally redundant");
-				redundantPlaces.add(candidatePlace);
+		} finally {
+			if (solver != null) {
+				solver.shutdownNow();
 			}
 		}
 		parameters.displayMessage("[BerthelotAlgorithm] Done");
@@ -253,7 +172,7 @@ public class BerthelotAlgorithm {
 		return reducedPN;
 	}
 
-	private Petrinet cloneNet(Petrinet net, Map<Place, Place> placeMap, Map<Transition, Transition> transitionMap) {
+	protected Petrinet cloneNet(Petrinet net, Map<Place, Place> placeMap, Map<Transition, Transition> transitionMap) {
 		Petrinet clonedNet = PetrinetFactory.newPetrinet(net.getLabel());
 		for (Place place : net.getPlaces()) {
 			Place clonedPlace = clonedNet.addPlace(place.getLabel());
@@ -279,7 +198,7 @@ public class BerthelotAlgorithm {
 		return clonedNet;
 	}
 
-	private Marking apply(Marking marking, Map<Place, Place> map) {
+	protected Marking apply(Marking marking, Map<Place, Place> map) {
 		Marking appliedMarking = new Marking();
 		for (Place place : marking.baseSet()) {
 			appliedMarking.add(map.get(place), marking.occurrences(place));
@@ -287,7 +206,7 @@ public class BerthelotAlgorithm {
 		return appliedMarking;
 	}
 
-	private Set<Marking> apply(Set<Marking> markings, Map<Place, Place> map) {
+	protected Set<Marking> apply(Set<Marking> markings, Map<Place, Place> map) {
 		Set<Marking> appliedMarkings = new HashSet<Marking>();
 		for (Marking marking : markings) {
 			appliedMarkings.add(apply(marking, map));
@@ -295,6 +214,429 @@ public class BerthelotAlgorithm {
 		return appliedMarkings;
 	}
 
+	/*
+	 * Checks the candidate places sequentially, see apply.
+	 */
+	private void findRedundantPlaces(PluginContext context, Petrinet reducedPN, List<Place> places,
+			BerthelotModel model, boolean[] redundant, Set<Place> redundantPlaces, BerthelotParameters parameters,
+			ExecutorService solver, long deadline, Future<?> future) {
+		for (int candidate = 0; candidate < places.size(); candidate++) {
+			if (future != null && future.isCancelled()) {
+				throw new CancellationException();
+			}
+			if (isStopped(context, deadline, parameters)) {
+				return;
+			}
+			Place candidatePlace = places.get(candidate);
+			if (context != null) {
+				context.getProgress().inc();
+			}
+			parameters.displayMessage("[BerthelotAlgorithm] Place " + candidatePlace.getLabel());
+			if (fastCheckFails(reducedPN, candidatePlace)) {
+				continue;
+			}
+			if (model.hasStructuralSolution(candidate, redundant)) {
+				/*
+				 * Found a solution without solving an LP: candidatePlace
+				 * is structurally redundant.
+				 */
+				redundantPlaces.add(candidatePlace);
+				redundant[candidate] = true;
+				continue;
+			}
+
+			/*
+			 * Checking whether candidatePlace is structurally redundant.
+			 * 
+			 * Let Q be the set of places in the net excluding the
+			 * candidatePlace p. Let I be the 'selected' subset of Q, that is, I
+			 * = { i in Q | V(q) > 0 }. Note that in the definitions below we
+			 * have replaced I by Q, as V(q) = 0 if q not in I.
+			 * 
+			 * First constraint: for the initial marking M0, p has a weighted
+			 * marking grater than the sum of weighted marking of places
+			 * belonging to I.
+			 * 
+			 * V(p).M0(p) - Sum_{q in Q}{V(q).M0(q) - bM0 = 0
+			 * 
+			 * Second constraint: the difference between the weighted marking
+			 * of p and those of places belonging to I necessary to give
+			 * concession to t must be less than or equal to this difference in
+			 * the initial marking (bM0).
+			 * 
+			 * Let T be the set of transitions in the net. Let W(m,n) denote the
+			 * arc weight of the arc from node m to node n. If there is no such
+			 * arc, W(m,n) = 0.
+			 * 
+			 * For all t in T: V(p).W(p,t) - Sum_{q in Q}{V(q).W(q.t) - bM0 <= 0
+			 * 
+			 * Third constraint: when a transition t occurs, the growth of the
+			 * weighted marking of p is greater than that one of I.
+			 * 
+			 * Let C(m,n) = W(n,m) - W(m,n), that is C(m,n) is the net effect on
+			 * place m of firing transition n.
+			 * 
+			 * For all t in T: V(p).C(p,t) - Sum_{q in Q}{V(q).C(q,t) >= 0
+			 * 
+			 * Fourth constraint: all V(q) are non-negative, V(p) is positive,
+			 * and bM0 is non-negative.
+			 */
+			if (isFeasible(model, candidate, redundant, parameters, solver, deadline)) {
+				/*
+				 * Found a solution: candidatePlace is structurally redundant.
+				 */
+				//				System.out.println("Place " + candidatePlace + " is structurally redundant");
+				redundantPlaces.add(candidatePlace);
+				redundant[candidate] = true;
+			}
+		}
+	}
+
+	/*
+	 * Checks the candidate places on a pool of threads, see
+	 * BerthelotParameters.setNumberOfThreads. Sequentially, every candidate is
+	 * checked against the places found redundant before it, so the result for
+	 * a candidate depends on the results for the candidates before it. Here,
+	 * the first open candidates are checked concurrently in rounds, where
+	 * every candidate is checked against the places found redundant so far
+	 * plus the open candidates before it that were predicted to be redundant.
+	 * Initially, no candidate is predicted to be redundant, afterwards the
+	 * prediction is the result of the previous round.
+	 * 
+	 * The results are then reconciled in candidate order. Excluding more
+	 * places only removes solutions. Hence, a candidate that is not redundant
+	 * given the assumed places is not redundant given any superset, and a
+	 * candidate that is redundant given the assumed places is redundant given
+	 * any subset. A candidate is done if its result carries over to the
+	 * places actually found redundant before it in this way. Otherwise, the
+	 * result is only a new prediction, and the candidate stays open for the
+	 * next round. This keeps the check sound if, for example, two places are
+	 * each redundant only relative to the other: only the first is removed.
+	 * Every round decides at least the first open candidate, and the removed
+	 * places equal those of the sequential check, regardless of the number of
+	 * threads or their timing.
+	 */
+	private void findRedundantPlaces(PluginContext context, final Petrinet net, final List<Place> places,
+			final BerthelotModel model, boolean[] redundant, final BerthelotParameters parameters,
+			final ExecutorService solver, final long deadline, final Future<?> future) {
+		List<Integer> open = new ArrayList<Integer>();
+		for (int candidate = 0; candidate < places.size(); candidate++) {
+			if (!fastCheckFails(net, places.get(candidate))) {
+				open.add(candidate);
+			}
+		}
+		boolean[] predicted = new boolean[places.size()];
+		/*
+		 * Checks far ahead are likely to be checked again, so every round
+		 * only checks the first open candidates, a few per thread.
+		 */
+		int window = 2 * parameters.getNumberOfThreads();
+		ExecutorService executor = Executors.newFixedThreadPool(parameters.getNumberOfThreads());
+		try {
+			while (!open.isEmpty()) {
+				if (future != null && future.isCancelled()) {
+					throw new CancellationException();
+				}
+				if (isStopped(context, deadline, parameters)) {
+					return;
+				}
+				if (context != null) {
+					context.getProgress().setValue(places.size() - open.size());
+				}
+				parameters.displayMessage("[BerthelotAlgorithm] Checking " + Math.min(open.size(), window) + " of "
+						+ open.size() + " places");
+				final boolean[] assumed = redundant.clone();
+				final int[] checked = new int[Math.min(open.size(), window)];
+				for (int i = 0; i < checked.length; i++) {
+					checked[i] = open.get(i);
+				}
+				List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>();
+				for (int i = 0; i < checked.length; i++) {
+					final boolean[] assumedBefore = assumed.clone();
+					final int candidate = checked[i];
+					checks.add(new Callable<Boolean>() {
+
+						public Boolean call() throws Exception {
+							if (future != null && future.isCancelled()) {
+								throw new CancellationException();
+							}
+							/*
+							 * Every check creates its own engine, so engines
+							 * are never shared between threads.
+							 */
+							return model.hasStructuralSolution(candidate, assumedBefore)
+									|| isFeasible(model, candidate, assumedBefore, parameters, solver, deadline);
+						}
+					});
+					if (predicted[candidate]) {
+						assumed[candidate] = true;
+					}
+				}
+				List<Future<Boolean>> results = executor.invokeAll(checks);
+				List<Integer> stillOpen = new ArrayList<Integer>();
+				/*
+				 * The number of earlier candidates that were assumed redundant
+				 * but are not known to be so, and the number of earlier
+				 * candidates that were not assumed redundant but may be so.
+				 */
+				int assumedOnly = 0;
+				int possibleOnly = 0;
+				for (int i = 0; i < checked.length; i++) {
+					int candidate = checked[i];
+					boolean feasible = get(results.get(i));
+					boolean done = feasible ? possibleOnly == 0 : assumedOnly == 0;
+					if (done) {
+						redundant[candidate] = feasible;
+					} else {
+						stillOpen.add(candidate);
+					}
+					if (predicted[candidate] && !redundant[candidate]) {
+						assumedOnly++;
+					}
+					if (!predicted[candidate] && (redundant[candidate] || !done)) {
+						possibleOnly++;
+					}
+					predicted[candidate] = feasible;
+				}
+				stillOpen.addAll(open.subList(checked.length, open.size()));
+				open = stillOpen;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Whether the progress of the given context (which may be null) has been
+	 * cancelled, or the given deadline has passed.
+	 */
+	private static boolean isStopped(PluginContext context, long deadline, BerthelotParameters parameters) {
+		if (context != null && context.getProgress().isCancelled()) {
+			parameters.displayWarning("[BerthelotAlgorithm] Cancelled, keeping the remaining places");
+			return true;
+		}
+		if (System.currentTimeMillis() >= deadline) {
+			parameters.displayWarning("[BerthelotAlgorithm] Time budget exceeded, keeping the remaining places");
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * The time in milliseconds the next LP may take: the timeout, but not
+	 * beyond the given deadline. Long.MAX_VALUE if neither is set.
+	 */
+	private static long timeout(BerthelotParameters parameters, long deadline) {
+		long timeout = parameters.getTimeout() > 0 ? parameters.getTimeout() : Long.MAX_VALUE;
+		if (deadline != Long.MAX_VALUE) {
+			timeout = Math.min(timeout, deadline - System.currentTimeMillis());
+		}
+		return timeout;
+	}
+
+	/*
+	 * Whether the LP for the candidate place is feasible. With a neighborhood
+	 * size, the LP is first restricted to the neighborhood of the candidate,
+	 * see BerthelotParameters.setNeighborhoodSize. If that LP is infeasible,
+	 * the LP for the whole net is only solved if completeness is asked for.
+	 */
+	private boolean isFeasible(BerthelotModel model, int candidate, boolean[] redundant,
+			BerthelotParameters parameters, ExecutorService solver, long deadline) {
+		if (parameters.getNeighborhoodSize() > 0) {
+			parameters.displayMessage("[BerthelotAlgorithm] Create engine for neighborhood");
+			long start = System.nanoTime();
+			LPEngine engine = model.createEngine(candidate, redundant,
+					model.getNeighborhood(candidate, redundant, parameters.getNeighborhoodSize()), parameters);
+			built(System.nanoTime() - start);
+			parameters.displayMessage("[BerthelotAlgorithm] Solve");
+			start = System.nanoTime();
+			boolean feasible = isFeasible(engine, solver, timeout(parameters, deadline), parameters);
+			solved(System.nanoTime() - start);
+			if (feasible) {
+				return true;
+			}
+			if (!parameters.isNeighborhoodComplete()) {
+				return false;
+			}
+		}
+		parameters.displayMessage("[BerthelotAlgorithm] Create engine");
+		long start = System.nanoTime();
+		LPEngine engine = model.createEngine(candidate, redundant, parameters);
+		built(System.nanoTime() - start);
+
+		//		engine.print();
+
+		parameters.displayMessage("[BerthelotAlgorithm] Solve");
+		start = System.nanoTime();
+		boolean feasible = isFeasible(engine, solver, timeout(parameters, deadline), parameters);
+		solved(System.nanoTime() - start);
+		return feasible;
+	}
+
+	/*
+	 * Called once the net has been cloned and the constraint system has been
+	 * built, with the time that took in nanoseconds. Does nothing, subclasses
+	 * (like benchmarks) may override it to time the phases of a run.
+	 */
+	protected void setUp(long time) {
+	}
+
+	/*
+	 * Called after an LP has been built for a candidate place, with the time
+	 * that took in nanoseconds. With several threads, this may be called
+	 * concurrently. Does nothing, see setUp.
+	 */
+	protected void built(long time) {
+	}
+
+	/*
+	 * Called after an LP has been solved, with the time that took (including
+	 * waiting for a solver thread) in nanoseconds. With several threads, this
+	 * may be called concurrently. Does nothing, see setUp.
+	 */
+	protected void solved(long time) {
+	}
+
+	/*
+	 * The states of an LP solved on a solver thread.
+	 */
+	private static final int PENDING = 0;
+	private static final int SOLVING = 1;
+	private static final int SOLVED = 2;
+	private static final int ABANDONED = 3;
+
+	/*
+	 * Whether the given engine is feasible. The engine is released once it
+	 * has been solved. If a solver is given, the engine is solved on it, and
+	 * considered infeasible if it takes longer than the given timeout. The
+	 * solver thread is then interrupted, but the engine may not respond to
+	 * that. Such a thread is stuck until the engine returns, after which it
+	 * releases the engine. Solver threads are daemon threads, so stuck threads
+	 * do not keep the JVM alive.
+	 */
+	private static boolean isFeasible(final LPEngine engine, ExecutorService solver, long timeout,
+			BerthelotParameters parameters) {
+		if (solver == null) {
+			try {
+				return engine.isFeasible();
+			} finally {
+				release(engine);
+			}
+		}
+		if (timeout <= 0) {
+			release(engine);
+			return false;
+		}
+		if (stuckSolvers.get() >= MAX_STUCK_SOLVERS) {
+			release(engine);
+			parameters.displayWarning(
+					"[BerthelotAlgorithm] Too many LPs still running after a timeout, keeping the place");
+			return false;
+		}
+		final AtomicInteger state = new AtomicInteger(PENDING);
+		Future<Boolean> result = solver.submit(new Callable<Boolean>() {
+
+			public Boolean call() throws Exception {
+				if (!state.compareAndSet(PENDING, SOLVING)) {
+					/*
+					 * Abandoned before it started, and already released.
+					 */
+					return false;
+				}
+				try {
+					return engine.isFeasible();
+				} finally {
+					release(engine);
+					if (!state.compareAndSet(SOLVING, SOLVED)) {
+						stuckSolvers.decrementAndGet();
+					}
+				}
+			}
+		});
+		try {
+			return get(result, timeout);
+		} catch (TimeoutException e) {
+			abandon(result, engine, state);
+			parameters.displayWarning("[BerthelotAlgorithm] LP timed out, keeping the place");
+			return false;
+		} catch (InterruptedException e) {
+			abandon(result, engine, state);
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+	}
+
+	/*
+	 * Stops waiting for the given LP. If it has not started yet, it never
+	 * will, and its engine is released here. If it is being solved, its
+	 * thread is interrupted and counted as stuck until the engine returns.
+	 */
+	private static void abandon(Future<Boolean> result, LPEngine engine, AtomicInteger state) {
+		if (state.compareAndSet(PENDING, ABANDONED)) {
+			release(engine);
+		} else if (state.compareAndSet(SOLVING, ABANDONED)) {
+			stuckSolvers.incrementAndGet();
+		}
+		result.cancel(true);
+	}
+
+	/*
+	 * Releases the native resources of the given engine, if it has any. The
+	 * engines that keep their model in native memory free it in a destroy
+	 * method, which is not part of the LPEngine interface, hence it is looked
+	 * up by name.
+	 */
+	private static void release(LPEngine engine) {
+		try {
+			engine.getClass().getMethod("destroy").invoke(engine);
+		} catch (NoSuchMethodException e) {
+			/*
+			 * Nothing to release.
+			 */
+		} catch (Exception e) {
+			/*
+			 * The engine is not used afterwards anyway.
+			 */
+		}
+	}
+
+	private static class SolverThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "BerthelotSolver");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/*
+	 * The result of the given check, rethrowing any failure.
+	 */
+	private static boolean get(Future<Boolean> result) throws InterruptedException {
+		try {
+			return get(result, Long.MAX_VALUE);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * As above, but waits at most the given number of milliseconds.
+	 */
+	private static boolean get(Future<Boolean> result, long timeout) throws InterruptedException, TimeoutException {
+		try {
+			return timeout == Long.MAX_VALUE ? result.get() : result.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
 	private boolean fastCheckFails(Petrinet net, Place place) {
 		for (PetrinetEdge<?, ?> outEdge : net.getOutEdges(place)) {
 			if (outEdge instanceof Arc) {
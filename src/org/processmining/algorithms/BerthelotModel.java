@@ -0,0 +1,527 @@
+package org.processmining.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.processmining.lpengines.factories.LPEngineFactory;
+import org.processmining.lpengines.interfaces.LPEngine;
+import org.processmining.lpengines.interfaces.LPEngine.Operator;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.parameters.BerthelotParameters;
+
+/**
+ * The constraint system for checking whether places are structurally
+ * redundant. The system is the same for every candidate place, except for the
+ * sign of the candidate's column and the columns of the places already found
+ * redundant. Therefore, the coefficients are computed once, indexed by place
+ * and transition, and every candidate only selects and signs them. The
+ * coefficients are stored sparsely, per transition only for the places
+ * connected to it, so their size is linear in the number of arcs. Likewise,
+ * the constraints only contain the non-zero coefficients.
+ */
+class BerthelotModel {
+
+	private final int placeCount;
+	private final int transitionCount;
+	/*
+	 * The marked places in the initial marking, in increasing order of place
+	 * id, with their numbers of tokens.
+	 */
+	private final int[] markedPlace;
+	private final int[] markedTokens;
+	/*
+	 * Coefficients in compressed rows: the row of transition t consists of
+	 * entries rowStart[t] to rowStart[t + 1] - 1, one for every place
+	 * connected to t, in increasing order of place id. Per entry, rowPlace
+	 * holds the place p, rowPre the weight of the arc from p to t: W(p,t), and
+	 * rowEffect the net effect of t on p: W(t,p) - W(p,t).
+	 */
+	private final int[] rowStart;
+	private final int[] rowPlace;
+	private final int[] rowPre;
+	private final int[] rowEffect;
+	/*
+	 * The same entries in compressed columns: the column of place p consists
+	 * of entries columnStart[p] to columnStart[p + 1] - 1, one for every
+	 * transition connected to p, in increasing order of transition id. Per
+	 * entry, columnTransition holds the transition t, and columnEntry the
+	 * index of the entry for p in the row of t.
+	 */
+	private final int[] columnStart;
+	private final int[] columnTransition;
+	private final int[] columnEntry;
+
+	/**
+	 * Computes the coefficients for the given net.
+	 *
+	 * @param net
+	 *            The net.
+	 * @param places
+	 *            The places of the net. Place ids are positions in this list.
+	 * @param transitions
+	 *            The transitions of the net.
+	 * @param initialMarking
+	 *            The initial marking of the net.
+	 */
+	BerthelotModel(Petrinet net, List<Place> places, List<Transition> transitions, Marking initialMarking) {
+		placeCount = places.size();
+		transitionCount = transitions.size();
+		Map<Place, Integer> pMap = new HashMap<Place, Integer>();
+		for (Place place : places) {
+			pMap.put(place, pMap.size());
+		}
+		int marked = 0;
+		for (int p = 0; p < placeCount; p++) {
+			if (initialMarking.occurrences(places.get(p)) > 0) {
+				marked++;
+			}
+		}
+		markedPlace = new int[marked];
+		markedTokens = new int[marked];
+		marked = 0;
+		for (int p = 0; p < placeCount; p++) {
+			int tokens = initialMarking.occurrences(places.get(p));
+			if (tokens > 0) {
+				markedPlace[marked] = p;
+				markedTokens[marked] = tokens;
+				marked++;
+			}
+		}
+		rowStart = new int[transitionCount + 1];
+		int[] rowPlace = new int[0];
+		int[] rowPre = new int[0];
+		int[] rowEffect = new int[0];
+		int count = 0;
+		for (int t = 0; t < transitionCount; t++) {
+			/*
+			 * The pre and post weights per place connected to t.
+			 */
+			Map<Integer, int[]> weights = new HashMap<Integer, int[]>();
+			for (PetrinetEdge<?, ?> edge : net.getInEdges(transitions.get(t))) {
+				if (edge instanceof Arc) {
+					weights(weights, pMap.get(edge.getSource()))[0] += ((Arc) edge).getWeight();
+				}
+			}
+			for (PetrinetEdge<?, ?> edge : net.getOutEdges(transitions.get(t))) {
+				if (edge instanceof Arc) {
+					weights(weights, pMap.get(edge.getTarget()))[1] += ((Arc) edge).getWeight();
+				}
+			}
+			Integer[] connected = weights.keySet().toArray(new Integer[weights.size()]);
+			Arrays.sort(connected);
+			if (count + connected.length > rowPlace.length) {
+				int length = Math.max(2 * rowPlace.length, count + connected.length);
+				rowPlace = Arrays.copyOf(rowPlace, length);
+				rowPre = Arrays.copyOf(rowPre, length);
+				rowEffect = Arrays.copyOf(rowEffect, length);
+			}
+			for (Integer p : connected) {
+				int[] weight = weights.get(p);
+				rowPlace[count] = p;
+				rowPre[count] = weight[0];
+				rowEffect[count] = weight[1] - weight[0];
+				count++;
+			}
+			rowStart[t + 1] = count;
+		}
+		this.rowPlace = Arrays.copyOf(rowPlace, count);
+		this.rowPre = Arrays.copyOf(rowPre, count);
+		this.rowEffect = Arrays.copyOf(rowEffect, count);
+
+		columnStart = new int[placeCount + 1];
+		for (int i = 0; i < count; i++) {
+			columnStart[this.rowPlace[i] + 1]++;
+		}
+		for (int p = 0; p < placeCount; p++) {
+			columnStart[p + 1] += columnStart[p];
+		}
+		columnTransition = new int[count];
+		columnEntry = new int[count];
+		int[] next = Arrays.copyOf(columnStart, placeCount);
+		for (int t = 0; t < transitionCount; t++) {
+			for (int i = rowStart[t]; i < rowStart[t + 1]; i++) {
+				int j = next[this.rowPlace[i]]++;
+				columnTransition[j] = t;
+				columnEntry[j] = i;
+			}
+		}
+	}
+
+	private static int[] weights(Map<Integer, int[]> weights, Integer p) {
+		int[] weight = weights.get(p);
+		if (weight == null) {
+			weight = new int[2];
+			weights.put(p, weight);
+		}
+		return weight;
+	}
+
+	/**
+	 * Tries to find a solution to the constraints for the candidate place
+	 * without an LP engine, using cheap structural filters. Every filter
+	 * looks for a solution where the candidate place and a few selected
+	 * places have weight 1, and all other places weight 0:
+	 * <ul>
+	 * <li>A single place with an incidence column and initial marking that
+	 * are dominated by those of the candidate. This includes the places that
+	 * duplicate the candidate, that is, with identical incidence columns and
+	 * initial marking.</li>
+	 * <li>The places found by a greedy search: as long as some transition
+	 * decreases the marking of the candidate less than that of the selected
+	 * places (violating the third constraint), select a place whose marking
+	 * that transition decreases.</li>
+	 * </ul>
+	 * Any solution found is checked against all constraints.
+	 *
+	 * @param candidate
+	 *            The id of the candidate place.
+	 * @param redundant
+	 *            Per place id, whether the place was found redundant.
+	 * @return Whether a solution was found. If so, the candidate place is
+	 *         structurally redundant. If not, it may still be.
+	 */
+	boolean hasStructuralSolution(int candidate, boolean[] redundant) {
+		/*
+		 * Dominating or duplicate places share a transition with the
+		 * candidate.
+		 */
+		Set<Integer> neighbors = new LinkedHashSet<Integer>();
+		for (int j = columnStart[candidate]; j < columnStart[candidate + 1]; j++) {
+			int t = columnTransition[j];
+			for (int i = rowStart[t]; i < rowStart[t + 1]; i++) {
+				int q = rowPlace[i];
+				if (q != candidate && !redundant[q]) {
+					neighbors.add(q);
+				}
+			}
+		}
+		List<Integer> selected = new ArrayList<Integer>(1);
+		for (int q : neighbors) {
+			selected.add(q);
+			if (isSolution(candidate, selected)) {
+				return true;
+			}
+			selected.clear();
+		}
+		return greedySolution(candidate, redundant);
+	}
+
+	/*
+	 * The maximal number of places the greedy search selects.
+	 */
+	private static final int GREEDY_LIMIT = 16;
+
+	private boolean greedySolution(int candidate, boolean[] redundant) {
+		List<Integer> selected = new ArrayList<Integer>();
+		boolean[] isSelected = new boolean[0];
+		/*
+		 * Per transition, the effect on the candidate minus the effects on
+		 * the selected places.
+		 */
+		Map<Integer, Integer> effect = new HashMap<Integer, Integer>();
+		addColumn(effect, candidate, 1);
+		while (true) {
+			int violated = -1;
+			for (Map.Entry<Integer, Integer> entry : effect.entrySet()) {
+				if (entry.getValue() < 0 && (violated < 0 || entry.getKey() < violated)) {
+					violated = entry.getKey();
+				}
+			}
+			if (violated < 0) {
+				return isSolution(candidate, selected);
+			}
+			if (selected.size() == GREEDY_LIMIT) {
+				return false;
+			}
+			/*
+			 * Select the place with the fewest tokens (and lowest id) whose
+			 * marking the violated transition decreases.
+			 */
+			int best = -1;
+			for (int i = rowStart[violated]; i < rowStart[violated + 1]; i++) {
+				int q = rowPlace[i];
+				if (rowEffect[i] < 0 && q != candidate && !redundant[q]
+						&& (q >= isSelected.length || !isSelected[q])
+						&& (best < 0 || tokens(q) < tokens(best))) {
+					best = q;
+				}
+			}
+			if (best < 0) {
+				return false;
+			}
+			if (best >= isSelected.length) {
+				isSelected = Arrays.copyOf(isSelected, Math.max(best + 1, 2 * isSelected.length));
+			}
+			isSelected[best] = true;
+			selected.add(best);
+			addColumn(effect, best, -1);
+		}
+	}
+
+	/*
+	 * Adds the given column of effects, times the given factor, to the given
+	 * effects per transition.
+	 */
+	private void addColumn(Map<Integer, Integer> effect, int p, int factor) {
+		for (int j = columnStart[p]; j < columnStart[p + 1]; j++) {
+			Integer t = columnTransition[j];
+			Integer value = effect.get(t);
+			effect.put(t, (value == null ? 0 : value) + factor * rowEffect[columnEntry[j]]);
+		}
+	}
+
+	/*
+	 * Whether weight 1 for the candidate and the selected places, weight 0
+	 * for all other places, and the resulting bM0 satisfy all constraints. Only
+	 * transitions connected to these places need to be checked, as the
+	 * constraints for the other transitions hold trivially.
+	 */
+	private boolean isSolution(int candidate, List<Integer> selected) {
+		/*
+		 * V(p).M0(p) - Sum_{q in Q}{V(q).M0(q) - bM0 = 0, with bM0 >= 0.
+		 */
+		int bM0 = tokens(candidate);
+		for (int q : selected) {
+			bM0 -= tokens(q);
+		}
+		if (bM0 < 0) {
+			return false;
+		}
+		/*
+		 * Per transition, the pre and effect coefficient sums.
+		 */
+		Map<Integer, int[]> sums = new HashMap<Integer, int[]>();
+		addSums(sums, candidate, 1);
+		for (int q : selected) {
+			addSums(sums, q, -1);
+		}
+		for (int[] sum : sums.values()) {
+			/*
+			 * V(p).W(p,t) - Sum_{q in Q}{V(q).W(q.t) - bM0 <= 0, and
+			 * V(p).C(p,t) - Sum_{q in Q}{V(q).C(q,t) >= 0.
+			 */
+			if (sum[0] - bM0 > 0 || sum[1] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addSums(Map<Integer, int[]> sums, int p, int factor) {
+		for (int j = columnStart[p]; j < columnStart[p + 1]; j++) {
+			int[] sum = weights(sums, columnTransition[j]);
+			sum[0] += factor * rowPre[columnEntry[j]];
+			sum[1] += factor * rowEffect[columnEntry[j]];
+		}
+	}
+
+	/*
+	 * The number of tokens in the given place in the initial marking.
+	 */
+	private int tokens(int p) {
+		int i = Arrays.binarySearch(markedPlace, p);
+		return i < 0 ? 0 : markedTokens[i];
+	}
+
+	/**
+	 * Gets the neighborhood of the candidate place: the places that are
+	 * connected to it by a path of at most the given number of transitions,
+	 * through places not found redundant. The candidate itself is included.
+	 *
+	 * @param candidate
+	 *            The id of the candidate place.
+	 * @param redundant
+	 *            Per place id, whether the place was found redundant.
+	 * @param hops
+	 *            The number of transitions.
+	 * @return The ids of the places in the neighborhood, in increasing order.
+	 */
+	int[] getNeighborhood(int candidate, boolean[] redundant, int hops) {
+		Set<Integer> neighborhood = new TreeSet<Integer>();
+		neighborhood.add(candidate);
+		List<Integer> frontier = new ArrayList<Integer>();
+		frontier.add(candidate);
+		for (int hop = 0; hop < hops && !frontier.isEmpty(); hop++) {
+			List<Integer> next = new ArrayList<Integer>();
+			for (int p : frontier) {
+				for (int j = columnStart[p]; j < columnStart[p + 1]; j++) {
+					int t = columnTransition[j];
+					for (int i = rowStart[t]; i < rowStart[t + 1]; i++) {
+						int q = rowPlace[i];
+						if (!redundant[q] && neighborhood.add(q)) {
+							next.add(q);
+						}
+					}
+				}
+			}
+			frontier = next;
+		}
+		int[] places = new int[neighborhood.size()];
+		int i = 0;
+		for (int p : neighborhood) {
+			places[i++] = p;
+		}
+		return places;
+	}
+
+	/**
+	 * Creates an LP engine whose constraints are feasible if and only if the
+	 * candidate place is structurally redundant, given the places already
+	 * found redundant.
+	 *
+	 * @param candidate
+	 *            The id of the candidate place.
+	 * @param redundant
+	 *            Per place id, whether the place was found redundant.
+	 * @param parameters
+	 *            The parameters, used for the engine type and for messages.
+	 * @return The engine.
+	 */
+	LPEngine createEngine(int candidate, boolean[] redundant, BerthelotParameters parameters) {
+		return createEngine(candidate, redundant, null, parameters);
+	}
+
+	/**
+	 * As above, but restricted to the given neighborhood of the candidate
+	 * place, see getNeighborhood. All other places get weight 0, and only the
+	 * transitions connected to the neighborhood get constraints, as the
+	 * constraints for the other transitions then hold trivially. Hence, if
+	 * these constraints are feasible, the candidate place is structurally
+	 * redundant. If not, it may still be.
+	 *
+	 * @param candidate
+	 *            The id of the candidate place.
+	 * @param redundant
+	 *            Per place id, whether the place was found redundant.
+	 * @param neighborhood
+	 *            The ids of the places in the neighborhood, in increasing
+	 *            order, or null for all places.
+	 * @param parameters
+	 *            The parameters, used for the engine type and for messages.
+	 * @return The engine.
+	 */
+	LPEngine createEngine(int candidate, boolean[] redundant, int[] neighborhood, BerthelotParameters parameters) {
+		/*
+		 * Create LPEngine, with a variable for every place and one additional
+		 * variable for the initial marking.
+		 * 
+		 * The variables are continuous, as the continuous relaxation is
+		 * feasible if and only if the integer problem is. All constraints are
+		 * homogeneous, except V(p) >= 1 for the candidate, and all of them
+		 * still hold if a solution is multiplied by a factor of at least 1. A
+		 * feasible relaxation has a rational solution, which becomes an
+		 * integer solution when multiplied by the common denominator of its
+		 * values. Hence, the relaxation decides redundancy exactly, without
+		 * the cost of an integer programme.
+		 */
+		LPEngine engine = LPEngineFactory.createLPEngine(parameters.getEngineType(), 0, 0);
+		int[] column = new int[placeCount];
+		Arrays.fill(column, -1);
+		int[] transitions;
+		if (neighborhood == null) {
+			for (int p = 0; p < placeCount; p++) {
+				if (!redundant[p]) {
+					column[p] = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.CONTINUOUS);
+				}
+			}
+			transitions = new int[transitionCount];
+			for (int t = 0; t < transitionCount; t++) {
+				transitions[t] = t;
+			}
+		} else {
+			Set<Integer> connected = new TreeSet<Integer>();
+			for (int p : neighborhood) {
+				if (!redundant[p]) {
+					column[p] = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.CONTINUOUS);
+					for (int j = columnStart[p]; j < columnStart[p + 1]; j++) {
+						connected.add(columnTransition[j]);
+					}
+				}
+			}
+			transitions = new int[connected.size()];
+			int i = 0;
+			for (int t : connected) {
+				transitions[i++] = t;
+			}
+		}
+		int mIndex = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.CONTINUOUS);
+
+		/*
+		 * V(p).M0(p) - Sum_{q in Q}{V(q).M0(q) - bM0 = 0, see
+		 * BerthelotAlgorithm.
+		 */
+		parameters.displayMessage("[BerthelotAlgorithm] First constraint");
+		engine.addConstraint(row(markedPlace, markedTokens, 0, markedPlace.length, candidate, column, mIndex),
+				Operator.EQUAL, 0.0);
+
+		/*
+		 * For all t in T: V(p).W(p,t) - Sum_{q in Q}{V(q).W(q.t) - bM0 <= 0
+		 */
+		parameters.displayMessage("[BerthelotAlgorithm] Second constraint");
+		for (int t : transitions) {
+			engine.addConstraint(row(rowPlace, rowPre, rowStart[t], rowStart[t + 1], candidate, column, mIndex),
+					Operator.LESS_EQUAL, 0.0);
+		}
+
+		/*
+		 * For all t in T: V(p).C(p,t) - Sum_{q in Q}{V(q).C(q,t) >= 0
+		 */
+		parameters.displayMessage("[BerthelotAlgorithm] Third constraint");
+		for (int t : transitions) {
+			engine.addConstraint(row(rowPlace, rowEffect, rowStart[t], rowStart[t + 1], candidate, column, -1),
+					Operator.GREATER_EQUAL, 0.0);
+		}
+
+		/*
+		 * Places cannot have a non-negative solution, and candidatePlace
+		 * should have a positive solution.
+		 */
+		parameters.displayMessage("[BerthelotAlgorithm] Fourth constraint");
+		for (int p = 0; p < placeCount; p++) {
+			if (column[p] >= 0) {
+				Map<Integer, Double> constraint = new HashMap<Integer, Double>();
+				constraint.put(column[p], 1.0);
+				engine.addConstraint(constraint, Operator.GREATER_EQUAL, p == candidate ? 1.0 : 0.0);
+			}
+		}
+		/*
+		 * bM0 should be at least 0.
+		 */
+		Map<Integer, Double> constraint = new HashMap<Integer, Double>();
+		constraint.put(mIndex, 1.0);
+		engine.addConstraint(constraint, Operator.GREATER_EQUAL, 0.0);
+		return engine;
+	}
+
+	/*
+	 * The constraint with the given coefficients for the places in entries
+	 * from to to - 1, positive for the candidate and negative for the other
+	 * places, skipping places without a column and zero coefficients. If the
+	 * given marking index is not negative, bM0 is added with -1.
+	 */
+	private static Map<Integer, Double> row(int[] places, int[] coefficients, int from, int to, int candidate,
+			int[] column, int mIndex) {
+		Map<Integer, Double> constraint = new HashMap<Integer, Double>(2 * (to - from + 1));
+		for (int i = from; i < to; i++) {
+			int p = places[i];
+			if (column[p] >= 0 && coefficients[i] != 0) {
+				constraint.put(column[p], (p == candidate ? 1.0 : -1.0) * coefficients[i]);
+			}
+		}
+		if (mIndex >= 0) {
+			constraint.put(mIndex, -1.0);
+		}
+		return constraint;
+	}
+}
@@ -4,6 +4,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.processmining.basicutils.parameters.impl.PluginParametersImpl;
+import org.processmining.lpengines.interfaces.LPEngine.EngineType;
 import org.processmining.models.semantics.petrinet.Marking;
 
 public class BerthelotParameters extends PluginParametersImpl {
@@ -12,6 +13,12 @@ public class BerthelotParameters extends PluginParametersImpl {
 	private Set<Marking> finalMarkings;
 	private Marking initialBerthelotMarking;
 	private Set<Marking> finalBerthelotMarkings;
+	private int numberOfThreads;
+	private long timeout;
+	private long timeBudget;
+	private EngineType engineType;
+	private int neighborhoodSize;
+	private boolean neighborhoodComplete;
 	
 	public BerthelotParameters() {
 		super();
@@ -19,6 +26,12 @@ public class BerthelotParameters extends PluginParametersImpl {
 		setFinalMarkings(new HashSet<Marking>());
 		setInitialBerthelotMarking(null);
 		setFinalBerthelotMarkings(null);
+		setNumberOfThreads(1);
+		setTimeout(0);
+		setTimeBudget(0);
+		setEngineType(EngineType.LPSOLVE);
+		setNeighborhoodSize(0);
+		setNeighborhoodComplete(false);
 	}
 	
 	public BerthelotParameters(BerthelotParameters parameters) {
@@ -27,6 +40,12 @@ public class BerthelotParameters extends PluginParametersImpl {
 		setFinalMarkings(parameters.getFinalMarkings());
 		setInitialBerthelotMarking(parameters.getInitialBerthelotMarking());
 		setFinalBerthelotMarkings(parameters.getFinalBerthelotMarkings());
+		setNumberOfThreads(parameters.getNumberOfThreads());
+		setTimeout(parameters.getTimeout());
+		setTimeBudget(parameters.getTimeBudget());
+		setEngineType(parameters.getEngineType());
+		setNeighborhoodSize(parameters.getNeighborhoodSize());
+		setNeighborhoodComplete(parameters.isNeighborhoodComplete());
 	}
 	
 	public Marking getInitialMarking() {
@@ -60,4 +79,102 @@ public class BerthelotParameters extends PluginParametersImpl {
 	public void setFinalBerthelotMarkings(Set<Marking> finalBerthelotMarkings) {
 		this.finalBerthelotMarkings = finalBerthelotMarkings;
 	}
+
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	/**
+	 * Sets the number of threads to check candidate places on. With more than
+	 * one thread, candidates are checked concurrently, each with its own LP
+	 * engine. The removed places do not depend on the number of threads.
+	 * 
+	 * @param numberOfThreads
+	 *            The number of threads, 1 (the default) to check sequentially.
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the time a single LP may take. A place whose LP takes longer is
+	 * considered not redundant, and is kept. An engine that does not stop when
+	 * interrupted keeps its thread until it returns. While a few such threads
+	 * are stuck, further places are kept without solving their LPs.
+	 * 
+	 * @param timeout
+	 *            The timeout in milliseconds, 0 (the default) for none.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the time all checks together may take. Once it has passed, the
+	 * remaining places are kept, and only the places found redundant so far
+	 * are removed.
+	 * 
+	 * @param timeBudget
+	 *            The time budget in milliseconds, 0 (the default) for none.
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	public EngineType getEngineType() {
+		return engineType;
+	}
+
+	/**
+	 * Sets the LP engine to check places with. Engines other than LPSOLVE
+	 * need to be installed (and licensed) separately.
+	 * 
+	 * @param engineType
+	 *            The engine type, LPSOLVE by default.
+	 */
+	public void setEngineType(EngineType engineType) {
+		this.engineType = engineType;
+	}
+
+	public int getNeighborhoodSize() {
+		return neighborhoodSize;
+	}
+
+	/**
+	 * Sets the size of the neighborhood to check places in. With a size of n,
+	 * a place is first checked using only the places that are connected to it
+	 * by a path of at most n transitions. If the place is redundant within its
+	 * neighborhood, it is redundant in the whole net.
+	 * 
+	 * @param neighborhoodSize
+	 *            The number of transitions, 0 (the default) to check every
+	 *            place in the whole net only.
+	 */
+	public void setNeighborhoodSize(int neighborhoodSize) {
+		this.neighborhoodSize = neighborhoodSize;
+	}
+
+	public boolean isNeighborhoodComplete() {
+		return neighborhoodComplete;
+	}
+
+	/**
+	 * Sets whether a place that is not redundant within its neighborhood is
+	 * checked in the whole net as well. If not, such a place is kept, which is
+	 * faster, but may keep some redundant places.
+	 * 
+	 * @param neighborhoodComplete
+	 *            Whether to check the whole net as well, false by default.
+	 */
+	public void setNeighborhoodComplete(boolean neighborhoodComplete) {
+		this.neighborhoodComplete = neighborhoodComplete;
+	}
 }
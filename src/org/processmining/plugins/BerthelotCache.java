@@ -0,0 +1,232 @@
+package org.processmining.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.parameters.BerthelotParameters;
+
+/**
+ * Bounded cache of Berthelot results, keyed by the content of the net and the
+ * markings, see Key. If the cache is full, the least recently used result is
+ * evicted.
+ */
+class BerthelotCache {
+
+	/**
+	 * The content of a net with an initial marking and final markings, and the
+	 * parameters that affect the result. Places and transitions are numbered
+	 * in order of their labels (and by invisibility for transitions), ties in
+	 * the order of the net. Arcs and markings are encoded by these numbers.
+	 * Equal keys hence have isomorphic nets and markings, while isomorphic
+	 * nets may still have different keys.
+	 */
+	static class Key {
+
+		private final String[] labels;
+		private final int[] content;
+		private final int hashCode;
+
+		Key(Petrinet net, BerthelotParameters parameters) {
+			List<Place> places = new ArrayList<Place>(net.getPlaces());
+			List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
+			Collections.sort(places, new Comparator<Place>() {
+
+				public int compare(Place place1, Place place2) {
+					return place1.getLabel().compareTo(place2.getLabel());
+				}
+			});
+			Collections.sort(transitions, new Comparator<Transition>() {
+
+				public int compare(Transition transition1, Transition transition2) {
+					int c = transition1.getLabel().compareTo(transition2.getLabel());
+					return c != 0 ? c : Boolean.compare(transition1.isInvisible(), transition2.isInvisible());
+				}
+			});
+			labels = new String[places.size() + transitions.size()];
+			Map<PetrinetNode, Integer> index = new HashMap<PetrinetNode, Integer>();
+			for (Place place : places) {
+				labels[index.size()] = place.getLabel();
+				index.put(place, index.size());
+			}
+			IntList content = new IntList();
+			content.add(places.size());
+			content.add(transitions.size());
+			for (Transition transition : transitions) {
+				labels[index.size()] = transition.getLabel();
+				content.add(transition.isInvisible() ? 1 : 0);
+				index.put(transition, index.size());
+			}
+			/*
+			 * Arcs as source, target, and weight, sorted.
+			 */
+			List<int[]> arcs = new ArrayList<int[]>();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+				if (edge instanceof Arc) {
+					arcs.add(new int[] { index.get(edge.getSource()), index.get(edge.getTarget()),
+							((Arc) edge).getWeight() });
+				}
+			}
+			Collections.sort(arcs, LEXICOGRAPHIC);
+			content.add(arcs.size());
+			for (int[] arc : arcs) {
+				content.addAll(arc);
+			}
+			content.addAll(encode(parameters.getInitialMarking(), index));
+			List<int[]> finalMarkings = new ArrayList<int[]>();
+			for (Marking finalMarking : parameters.getFinalMarkings()) {
+				finalMarkings.add(encode(finalMarking, index));
+			}
+			Collections.sort(finalMarkings, LEXICOGRAPHIC);
+			content.add(finalMarkings.size());
+			for (int[] finalMarking : finalMarkings) {
+				content.addAll(finalMarking);
+			}
+			content.add(parameters.getNeighborhoodSize());
+			content.add(parameters.isNeighborhoodComplete() ? 1 : 0);
+			this.content = content.toArray();
+			hashCode = 31 * Arrays.hashCode(labels) + Arrays.hashCode(this.content);
+		}
+
+		/*
+		 * The given marking as its size followed by place and number of tokens
+		 * pairs, sorted by place. Places not in the net are skipped.
+		 */
+		private static int[] encode(Marking marking, Map<PetrinetNode, Integer> index) {
+			List<int[]> tokens = new ArrayList<int[]>();
+			for (Place place : marking.baseSet()) {
+				Integer p = index.get(place);
+				if (p != null) {
+					tokens.add(new int[] { p, marking.occurrences(place) });
+				}
+			}
+			Collections.sort(tokens, LEXICOGRAPHIC);
+			IntList encoded = new IntList();
+			encoded.add(tokens.size());
+			for (int[] token : tokens) {
+				encoded.addAll(token);
+			}
+			return encoded.toArray();
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			return hashCode == key.hashCode && Arrays.equals(content, key.content)
+					&& Arrays.equals(labels, key.labels);
+		}
+	}
+
+	/**
+	 * A cached result: the reduced net with its initial and final markings.
+	 * The cache keeps its own copy, and every hit gets a copy of that.
+	 */
+	static class Result {
+
+		private final Petrinet reducedNet;
+		private final Marking initialMarking;
+		private final Set<Marking> finalMarkings;
+
+		Result(Petrinet reducedNet, Marking initialMarking, Set<Marking> finalMarkings) {
+			this.reducedNet = reducedNet;
+			this.initialMarking = initialMarking;
+			this.finalMarkings = finalMarkings;
+		}
+
+		Petrinet getReducedNet() {
+			return reducedNet;
+		}
+
+		Marking getInitialMarking() {
+			return initialMarking;
+		}
+
+		Set<Marking> getFinalMarkings() {
+			return finalMarkings;
+		}
+	}
+
+	private static final Comparator<int[]> LEXICOGRAPHIC = new Comparator<int[]>() {
+
+		public int compare(int[] array1, int[] array2) {
+			for (int i = 0; i < array1.length && i < array2.length; i++) {
+				if (array1[i] != array2[i]) {
+					return array1[i] < array2[i] ? -1 : 1;
+				}
+			}
+			return array1.length - array2.length;
+		}
+	};
+
+	/*
+	 * Growable array of ints.
+	 */
+	private static class IntList {
+
+		private int[] values = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		void addAll(int[] values) {
+			for (int value : values) {
+				add(value);
+			}
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	private final Map<Key, Result> results;
+
+	/**
+	 * Creates a cache for at most the given number of results.
+	 *
+	 * @param maxSize
+	 *            The maximal number of results.
+	 */
+	BerthelotCache(final int maxSize) {
+		results = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	synchronized Result get(Key key) {
+		return results.get(key);
+	}
+
+	synchronized void put(Key key, Result result) {
+		results.put(key, result);
+	}
+}
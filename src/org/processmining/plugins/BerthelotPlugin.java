@@ -1,8 +1,14 @@
 package org.processmining.plugins;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.processmining.algorithms.BerthelotAlgorithm;
 import org.processmining.connections.BerthelotConnection;
@@ -15,8 +21,11 @@ import org.processmining.help.BerthelotHelp;
 import org.processmining.models.connections.petrinets.behavioral.FinalMarkingConnection;
 import org.processmining.models.connections.petrinets.behavioral.InitialMarkingConnection;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.parameters.BerthelotParameters;
+import org.processmining.plugins.petrinet.reduction.MurataUtils;
 
 @Plugin(name = "Remove Structural Redundant Places from Petri Net", parameterLabels = { "Petri Net", "Parameters" }, returnLabels = { "Petri Net" }, returnTypes = { Petrinet.class }, help = BerthelotHelp.TEXT)
 public class BerthelotPlugin extends BerthelotAlgorithm {
@@ -64,27 +73,116 @@ public class BerthelotPlugin extends BerthelotAlgorithm {
 		return run(context, net, parameters);
 	}
 
+	/**
+	 * Removes the structural redundant places on the given executor.
+	 * Cancelling the returned future stops the removal before the next place
+	 * is checked.
+	 * 
+	 * @param context
+	 *            The context, may be null. The removal runs on another thread,
+	 *            so the context should allow for that.
+	 * @param net
+	 *            The net.
+	 * @param parameters
+	 *            The parameters.
+	 * @param executor
+	 *            The executor to run the removal on.
+	 * @return The future reduced net.
+	 */
+	public CompletableFuture<Petrinet> runAsync(final PluginContext context, final Petrinet net,
+			final BerthelotParameters parameters, Executor executor) {
+		final CompletableFuture<Petrinet> future = new CompletableFuture<Petrinet>();
+		try {
+			executor.execute(new Runnable() {
+
+				public void run() {
+					if (future.isDone()) {
+						return;
+					}
+					try {
+						future.complete(runConnection(context, net, parameters, future));
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Removes the structural redundant places on the default executor of the
+	 * Murata reduction, see MurataUtils.getDefaultExecutor.
+	 */
+	public CompletableFuture<Petrinet> runAsync(final PluginContext context, final Petrinet net,
+			final BerthelotParameters parameters) {
+		return runAsync(context, net, parameters, MurataUtils.getDefaultExecutor());
+	}
+
 	private Petrinet runConnection(PluginContext context, Petrinet net,
 			BerthelotParameters parameters) {
+		return runConnection(context, net, parameters, null);
+	}
+
+	/*
+	 * Results of earlier runs, keyed by the content of the net and the
+	 * markings.
+	 */
+	private static final BerthelotCache CACHE = new BerthelotCache(16);
+
+	private Petrinet runConnection(PluginContext context, Petrinet net,
+			BerthelotParameters parameters, Future<?> future) {
+		BerthelotCache.Key key = null;
 		if (parameters.isTryConnections()) {
-			Collection<BerthelotConnection> connections;
-			try {
-				connections = context.getConnectionManager().getConnections(
-						BerthelotConnection.class, context, net);
-				for (BerthelotConnection connection : connections) {
-					if (connection.getObjectWithRole(BerthelotConnection.NET).equals(net)
-							&& connection.getParameters().equals(parameters)) {
-						return connection.getObjectWithRole(BerthelotConnection.REDUCEDNET);
+			key = new BerthelotCache.Key(net, parameters);
+			BerthelotCache.Result result = CACHE.get(key);
+			if (result != null) {
+				/*
+				 * Every hit gets its own copy, so that callers cannot change
+				 * the cached result or each other's results.
+				 */
+				result = copy(result.getReducedNet(), result.getInitialMarking(), result.getFinalMarkings());
+				parameters.setInitialBerthelotMarking(result.getInitialMarking());
+				parameters.setFinalBerthelotMarkings(result.getFinalMarkings());
+				if (context != null) {
+					context.getConnectionManager().addConnection(
+							new InitialMarkingConnection(result.getReducedNet(), result.getInitialMarking()));
+					for (Marking finalMarking : result.getFinalMarkings()) {
+						context.getConnectionManager().addConnection(
+								new FinalMarkingConnection(result.getReducedNet(), finalMarking));
 					}
+					context.getConnectionManager().addConnection(
+							new BerthelotConnection(net, result.getReducedNet(), parameters));
 				}
-			} catch (ConnectionCannotBeObtained e) {
+				return result.getReducedNet();
 			}
 		}
-		Petrinet reducedNet = apply(context, net, parameters);
-		if (parameters.isTryConnections()) {
+		Petrinet reducedNet = apply(context, net, parameters, future);
+		/*
+		 * With a timeout or a time budget, or if cancelled, the net may be
+		 * only partially reduced. Such a result is not cached.
+		 */
+		if (key != null && parameters.getTimeout() <= 0 && parameters.getTimeBudget() <= 0
+				&& (context == null || !context.getProgress().isCancelled())) {
+			CACHE.put(key, copy(reducedNet, parameters.getInitialBerthelotMarking(),
+					parameters.getFinalBerthelotMarkings()));
+		}
+		if (parameters.isTryConnections() && context != null) {
 			context.getConnectionManager().addConnection(
 					new BerthelotConnection(net, reducedNet, parameters));
 		}
 		return reducedNet;
 	}
+
+	/*
+	 * A copy of the given reduced net with the given markings mapped onto the
+	 * copy.
+	 */
+	private BerthelotCache.Result copy(Petrinet reducedNet, Marking initialMarking, Set<Marking> finalMarkings) {
+		Map<Place, Place> placeMap = new HashMap<Place, Place>();
+		Petrinet copiedNet = cloneNet(reducedNet, placeMap, new HashMap<Transition, Transition>());
+		return new BerthelotCache.Result(copiedNet, apply(initialMarking, placeMap), apply(finalMarkings, placeMap));
+	}
 }
@@ -5,8 +5,17 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.swing.JOptionPane;
 
@@ -42,6 +51,12 @@ import org.processmining.models.semantics.petrinet.Marking;
 				Marking.class }, userAccessible = true, help = MurataHelp.TEXT)
 public class Murata {
 
+	/*
+	 * The maximal fraction of the net whose reductions rerun may undo. If more
+	 * is affected, rerun reduces the edited net from scratch.
+	 */
+	private static final double MAX_REGION = 0.5;
+
 	/**
 	 * Apply the Murata reduction rules until no further reductions are
 	 * possible.
@@ -146,6 +161,19 @@ public class Murata {
 
 	public Object[] simplify(final PluginContext context, final Petrinet net, final Marking marking,
 			MurataParameters parameters) throws ConnectionCannotBeObtained {
+		MurataOutput output = simplifyOutput(context, net, marking, parameters);
+		Object objects[] = new Object[2];
+		objects[0] = output.getNet();
+		objects[1] = output.getMarking();
+		return objects;
+	}
+
+	/**
+	 * Simplify the given net for replay, see above, and compute the lookup
+	 * tables for replaying on the simplified net.
+	 */
+	public MurataOutput simplifyOutput(final PluginContext context, final Petrinet net, final Marking marking,
+			MurataParameters parameters) throws ConnectionCannotBeObtained {
 		/*
 		 * Create the set of sacred nodes. By default, every visible transition
 		 * will be sacred.
@@ -155,10 +183,8 @@ public class Murata {
 		input.allowRule(MurataInput.CSM);
 		input.allowRule(MurataInput.ASM);
 		MurataOutput output = run(context, input, parameters);
-		Object objects[] = new Object[2];
-		objects[0] = output.getNet();
-		objects[1] = output.getMarking();
-		return objects;
+		output.setReplayIndex(new MurataReplayIndex(output.getNet()));
+		return output;
 	}
 
 	@UITopiaVariant(affiliation = UITopiaVariant.EHV, author = "H.M.W Verbeek", email = "h.m.w.verbeek@tue.nl", pack = "Murata")
@@ -215,6 +241,55 @@ public class Murata {
 
 	public MurataOutput run(final PluginContext context, final MurataInput input, MurataParameters parameters)
 			throws ConnectionCannotBeObtained {
+		return run(context, input, parameters, null);
+	}
+
+	/**
+	 * Apply the Murata reduction rules on the given executor. Cancelling the
+	 * returned future stops the reduction after the current reduction step.
+	 * 
+	 * @param context
+	 *            The context, may be null. The reduction runs on another
+	 *            thread, so the context should allow for that.
+	 * @param input
+	 *            The input.
+	 * @param parameters
+	 *            The parameters.
+	 * @param executor
+	 *            The executor to run the reduction on.
+	 * @return The future output.
+	 */
+	public CompletableFuture<MurataOutput> runAsync(final PluginContext context, final MurataInput input,
+			final MurataParameters parameters, Executor executor) {
+		final CompletableFuture<MurataOutput> future = new CompletableFuture<MurataOutput>();
+		submit(future, executor, new Callable<MurataOutput>() {
+
+			public MurataOutput call() throws Exception {
+				return run(context, input, parameters, future);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Apply the Murata reduction rules on the default executor, see
+	 * MurataUtils.getDefaultExecutor.
+	 */
+	public CompletableFuture<MurataOutput> runAsync(final PluginContext context, final MurataInput input,
+			final MurataParameters parameters) {
+		return runAsync(context, input, parameters, MurataUtils.getDefaultExecutor());
+	}
+
+	/**
+	 * Apply the Murata reduction rules on the default executor, see
+	 * MurataUtils.getDefaultExecutor.
+	 */
+	public CompletableFuture<MurataOutput> runAsync(final PluginContext context, final MurataInput input) {
+		return runAsync(context, input, new MurataParameters());
+	}
+
+	private MurataOutput run(final PluginContext context, final MurataInput input, MurataParameters parameters,
+			Future<?> future) throws ConnectionCannotBeObtained {
 		/*
 		 * See if a proper connection exists between the net and the marking.
 		 */
@@ -234,7 +309,7 @@ public class Murata {
 		HashMap<Place, Place> placeMap = new HashMap<Place, Place>();
 		final Petrinet net = copyPetrinet(input.getNet(), transitionMap, placeMap);
 		Marking marking = copyMarking(input.getMarking(), placeMap);
-		if (marking.isEmpty() && !input.getMarking().isEmpty()) {
+		if (marking.isEmpty() && !input.getMarking().isEmpty() && context != null) {
 			context.log("Petri net and marking are not related. Assuming empty initial marking.", MessageLevel.WARNING);
 			if (context instanceof UIPluginContext) {
 				JOptionPane.showMessageDialog(null,
@@ -261,9 +336,307 @@ public class Murata {
 		}
 
 		/*
-		 * Third, collect all applicable rules.
+		 * Third, apply the reduction rules.
+		 */
+		reduce(context, input, parameters, net, marking, sacredNodes, transitionMap, placeMap, output.getLog(),
+				future);
+
+		/*
+		 * Fourth, create an update for the initial marking for the reduced net,
+		 * and connect that update with the reduced net. Also, provide
+		 * transition and place connections.
+		 */
+
+		if (context != null) {
+			// register the initial marking of the reduced net
+			context.addConnection(new InitialMarkingConnection(net, marking));
+
+			// register the mapping between Petrinets.
+			context.addConnection(new PetrinetGraphConnection(input.getNet(), net, transitionMap, placeMap));
+		}
+
+		// Connection markingConnection = new Connection(
+		// ResetInhibitorNet.MARKINGCONNECTION,
+		// new Connection.WeakTuple("Places of " + net.getLabel(), net),
+		// new Connection.WeakTuple("Marking of " + net.getLabel(), marking));
+		// context.addConnection(markingConnection);
+		// Connection transitionConnection = new Connection(
+		// new Connection.StrongTuple("Transition mapping", transitionMap),
+		// new Connection.WeakTuple("Transitions of " +
+		// input.getNet().getLabel(), input.getNet()),
+		// new Connection.WeakTuple("Transitions of " + net.getLabel(), net));
+		// context.addConnection(transitionConnection);
+		// Connection placeConnection = new Connection(
+		// new Connection.StrongTuple("Place mapping", placeMap),
+		// new Connection.WeakTuple("Places of " + input.getNet().getLabel(),
+		// input.getNet()),
+		// new Connection.WeakTuple("Places of " + net.getLabel(), net));
+		// context.addConnection(placeConnection);
+		// context.getFutureResult(1).setLabel("Marking of "+ net.getLabel());
+
+		output.setTransitionMapping(transitionMap);
+		output.setPlaceMapping(placeMap);
+
+		/*
+		 * Fifth, return the created net and marking.
+		 */
+		return output;
+	}
+
+	/**
+	 * Update a previous reduction after the original net has been edited.
+	 * Only the reductions affected by the edits are undone, after which the
+	 * reduction rules are applied again. If the edits affect too large a part
+	 * of the net, the edited net is reduced from scratch instead.
+	 * 
+	 * @param context
+	 *            The context, may be null.
+	 * @param input
+	 *            The input with the edited net, which should be the net of the
+	 *            delta. Its sacred nodes and allowed rules should be the same
+	 *            as for the previous reduction, except for touched nodes.
+	 * @param previous
+	 *            The output of reducing the net before it was edited.
+	 * @param delta
+	 *            The edits made to the net since the previous reduction.
+	 * @param parameters
+	 *            The parameters, which should be the same as for the previous
+	 *            reduction.
+	 * @return The output of reducing the edited net.
+	 */
+	public MurataOutput rerun(final PluginContext context, final MurataInput input, MurataOutput previous,
+			MurataDelta delta, MurataParameters parameters) throws ConnectionCannotBeObtained {
+		return rerun(context, input, previous, delta, parameters, null);
+	}
+
+	/**
+	 * Update a previous reduction on the given executor, see rerun. Cancelling
+	 * the returned future stops the reduction after the current reduction
+	 * step.
+	 */
+	public CompletableFuture<MurataOutput> rerunAsync(final PluginContext context, final MurataInput input,
+			final MurataOutput previous, final MurataDelta delta, final MurataParameters parameters,
+			Executor executor) {
+		final CompletableFuture<MurataOutput> future = new CompletableFuture<MurataOutput>();
+		submit(future, executor, new Callable<MurataOutput>() {
+
+			public MurataOutput call() throws Exception {
+				return rerun(context, input, previous, delta, parameters, future);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Update a previous reduction on the default executor, see
+	 * MurataUtils.getDefaultExecutor and rerun.
+	 */
+	public CompletableFuture<MurataOutput> rerunAsync(final PluginContext context, final MurataInput input,
+			final MurataOutput previous, final MurataDelta delta, final MurataParameters parameters) {
+		return rerunAsync(context, input, previous, delta, parameters, MurataUtils.getDefaultExecutor());
+	}
+
+	private MurataOutput rerun(final PluginContext context, final MurataInput input, MurataOutput previous,
+			MurataDelta delta, MurataParameters parameters, Future<?> future) throws ConnectionCannotBeObtained {
+		if (input.getNet() != delta.getNet()) {
+			throw new IllegalArgumentException("The delta is not for the net of the input.");
+		}
+		MurataIncremental incremental = null;
+		if (previous.getTransitionMapping() != null && previous.getPlaceMapping() != null) {
+			incremental = MurataIncremental.undo(input, previous, delta, MAX_REGION);
+		}
+		if (incremental == null) {
+			return run(context, input, parameters, future);
+		}
+		Petrinet net = incremental.getNet();
+		Marking marking = incremental.getMarking();
+		HashMap<Transition, Transition> transitionMap = incremental.getTransitionMap();
+		HashMap<Place, Place> placeMap = incremental.getPlaceMap();
+		MurataOutput output = new MurataOutput(net, marking);
+		reduce(context, input, parameters, net, marking, incremental.getSacredNodes(), transitionMap, placeMap,
+				output.getLog(), future);
+		if (context != null) {
+			context.addConnection(new InitialMarkingConnection(net, marking));
+			context.addConnection(new PetrinetGraphConnection(input.getNet(), net, transitionMap, placeMap));
+		}
+		output.setTransitionMapping(transitionMap);
+		output.setPlaceMapping(placeMap);
+		return output;
+	}
+
+	/**
+	 * Computes a base reduction to be shared by many views on the same net.
+	 * The given input should hold every node that is sacred in at least one
+	 * view, and only rules that are allowed in every view. Every view is then
+	 * reduced from the base by runView, which only needs to reduce the parts
+	 * of the base that are not sacred in that view.
+	 * 
+	 * @param context
+	 *            The context, may be null.
+	 * @param input
+	 *            The input for the base reduction.
+	 * @param parameters
+	 *            The parameters, which should be the same for every view.
+	 * @return The base reduction.
+	 */
+	public MurataBase runBase(final PluginContext context, final MurataInput input, MurataParameters parameters)
+			throws ConnectionCannotBeObtained {
+		return new MurataBase(input, run(context, input, parameters));
+	}
+
+	/**
+	 * Reduces the net under the given view, starting from the given base
+	 * reduction. The result maps the nodes of the original net onto the nodes
+	 * of the view's reduced net, and its log contains the reductions of the
+	 * base followed by those of the view.
+	 * 
+	 * @param context
+	 *            The context, may be null.
+	 * @param base
+	 *            The base reduction.
+	 * @param view
+	 *            The input for the view, on the same net as the base. Its
+	 *            sacred nodes should be sacred in the base, and the rules
+	 *            allowed in the base should be allowed in the view.
+	 * @param parameters
+	 *            The parameters, which should be the same as for the base.
+	 * @return The output of reducing the net under the view.
+	 */
+	public MurataOutput runView(final PluginContext context, MurataBase base, MurataInput view,
+			MurataParameters parameters) throws ConnectionCannotBeObtained {
+		MurataInput baseInput = base.getInput();
+		MurataOutput baseOutput = base.getOutput();
+		if (view.getNet() != baseInput.getNet()) {
+			throw new IllegalArgumentException("The view is not for the net of the base.");
+		}
+		for (int rule = MurataInput.FST; rule <= MurataInput.EXT; rule <<= 1) {
+			if (baseInput.isAllowedRule(rule) && !view.isAllowedRule(rule)) {
+				throw new IllegalArgumentException("The base allows a rule the view does not allow.");
+			}
+		}
+		/*
+		 * Mark the images of the view's sacred nodes as sacred in the base
+		 * net.
+		 */
+		Map<Transition, Transition> baseTransitionMap = baseOutput.getTransitionMapping();
+		Map<Place, Place> basePlaceMap = baseOutput.getPlaceMapping();
+		MurataInput viewInput = new MurataInput(baseOutput.getNet(), baseOutput.getMarking());
+		viewInput.disallowRule(~0);
+		viewInput.allowRule(allowedRules(view));
+		for (Transition transition : view.getNet().getTransitions()) {
+			if (view.isSacred(transition)) {
+				if (!baseInput.isSacred(transition)) {
+					throw new IllegalArgumentException("The view has a sacred node that is not sacred in the base.");
+				}
+				viewInput.addSacred(baseTransitionMap.get(transition));
+			}
+		}
+		for (Place place : view.getNet().getPlaces()) {
+			if (view.isSacred(place)) {
+				if (!baseInput.isSacred(place)) {
+					throw new IllegalArgumentException("The view has a sacred node that is not sacred in the base.");
+				}
+				viewInput.addSacred(basePlaceMap.get(place));
+			}
+		}
+		MurataOutput viewOutput = run(context, viewInput, parameters);
+		/*
+		 * Compose the mappings. Only images that are nodes of the view's
+		 * reduced net are kept, like a regular reduction drops the nodes it
+		 * eliminates from its mappings.
+		 */
+		HashMap<Transition, Transition> transitionMap = compose(baseTransitionMap,
+				viewOutput.getTransitionMapping(), new HashSet<Transition>(viewOutput.getNet().getTransitions()));
+		HashMap<Place, Place> placeMap = compose(basePlaceMap, viewOutput.getPlaceMapping(),
+				new HashSet<Place>(viewOutput.getNet().getPlaces()));
+		MurataOutput output = new MurataOutput(viewOutput.getNet(), viewOutput.getMarking());
+		output.getLog().addAll(baseOutput.getLog());
+		output.getLog().addAll(viewOutput.getLog());
+		if (context != null) {
+			context.addConnection(
+					new PetrinetGraphConnection(view.getNet(), output.getNet(), transitionMap, placeMap));
+		}
+		output.setTransitionMapping(transitionMap);
+		output.setPlaceMapping(placeMap);
+		return output;
+	}
+
+	/*
+	 * Composes the given mappings, keeping only the images in the given nodes.
+	 */
+	private static <N> HashMap<N, N> compose(Map<N, N> firstMap, Map<N, N> secondMap, Set<N> nodes) {
+		HashMap<N, N> map = new HashMap<N, N>();
+		for (Map.Entry<N, N> entry : firstMap.entrySet()) {
+			N image = secondMap.get(entry.getValue());
+			if (image != null && nodes.contains(image)) {
+				map.put(entry.getKey(), image);
+			}
+		}
+		return map;
+	}
+
+	/*
+	 * The mask of rules allowed by the given input.
+	 */
+	private static int allowedRules(MurataInput input) {
+		int allowedRules = 0;
+		for (int rule = MurataInput.FST; rule <= MurataInput.EXT; rule <<= 1) {
+			if (input.isAllowedRule(rule)) {
+				allowedRules |= rule;
+			}
+		}
+		return allowedRules;
+	}
+
+	/*
+	 * Runs the given task on the given executor, and completes the given future
+	 * with its outcome. If the future has been cancelled before the task
+	 * starts, the task is skipped.
+	 */
+	private static <T> void submit(final CompletableFuture<T> future, Executor executor, final Callable<T> task) {
+		try {
+			executor.execute(new Runnable() {
+
+				public void run() {
+					if (future.isDone()) {
+						return;
+					}
+					try {
+						future.complete(task.call());
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Apply the allowed reduction rules to the given net until no further
+	 * reductions are possible. The net, its marking, and the maps are updated
+	 * in place, and the reductions are added to the given log. If the given
+	 * future (which may be null) gets cancelled, the reduction stops and a
+	 * CancellationException is thrown.
+	 */
+	private void reduce(final PluginContext context, final MurataInput input, MurataParameters parameters,
+			Petrinet net, Marking marking, Set<PetrinetNode> sacredNodes, HashMap<Transition, Transition> transitionMap,
+			HashMap<Place, Place> placeMap, List<String> outputLog, Future<?> future) {
+		/*
+		 * While reducing, keep the marking as a token count per place id. The
+		 * marking of the output is updated once reduction has finished.
+		 */
+		MurataMarking murataMarking = new MurataMarking(net, marking, parameters.isOffHeap());
+		/*
+		 * The rules queue their mutations of the net in a batch, which is
+		 * applied after every successful reduction.
 		 */
-		Collection<MurataRule> reductionRules = new ArrayList<MurataRule>();
+		MurataBatch batch = new MurataBatch(net);
+		/*
+		 * First, collect all applicable rules.
+		 */
+		List<MurataRule> reductionRules = new ArrayList<MurataRule>();
 		if (input.isAllowedRule(MurataInput.FST)) {
 			reductionRules.add(new MurataFST());
 		}
@@ -288,6 +661,11 @@ public class Murata {
 		if (input.isAllowedRule(MurataInput.ASM)) {
 			reductionRules.add(new MurataASM());
 		}
+		if (input.isAllowedRule(MurataInput.EXT)) {
+			for (MurataRule reductionRule : ServiceLoader.load(MurataRule.class)) {
+				reductionRules.add(reductionRule);
+			}
+		}
 
 		/**
 		 * It is not clear how many reductions will take place. However, every
@@ -304,95 +682,196 @@ public class Murata {
 			context.getProgress().setIndeterminate(false);
 		}
 		/*
-		 * Fourth, apply the reductions rules until no rule can be applied any
+		 * Second, apply the reductions rules until no rule can be applied any
 		 * more.
 		 */
-		String log;
-		do {
-			log = null;
-			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-			for (PetrinetNode node : net.getNodes()) {
-				inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-				outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			}
-			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-				outputEdges.get(edge.getSource()).add(edge);
-				inputEdges.get(edge.getTarget()).add(edge);
-			}
-
+		MurataAdjacency adjacency = new MurataAdjacency(net, parameters.isOffHeap());
+		try {
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
+			Set<PetrinetNode> changedNodes = new LinkedHashSet<PetrinetNode>();
+			Set<PetrinetNode> removedNodes = new HashSet<PetrinetNode>();
+			String log;
+			/*
+			 * The nodes at which every local rule still needs to be tried,
+			 * initially all nodes. Global rules are tried on the whole net, and
+			 * so are all rules unless reduction is local. After every
+			 * reduction, start again with the first rule.
+			 */
+			List<Set<PetrinetNode>> candidates = new ArrayList<Set<PetrinetNode>>();
 			for (MurataRule reductionRule : reductionRules) {
-				if (log == null) {
-					log = reductionRule.reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges,
-							outputEdges, parameters);
+				if (!parameters.isLocalReduction() || reductionRule.getTrigger() == null) {
+					candidates.add(null);
+				} else {
+					Set<PetrinetNode> ruleCandidates = new LinkedHashSet<PetrinetNode>();
+					for (PetrinetNode node : net.getPlaces()) {
+						if (reductionRule.getTrigger().isKind(node)) {
+							ruleCandidates.add(node);
+						}
+					}
+					for (PetrinetNode node : net.getTransitions()) {
+						if (reductionRule.getTrigger().isKind(node)) {
+							ruleCandidates.add(node);
+						}
+					}
+					candidates.add(ruleCandidates);
 				}
 			}
-			if (log != null) {
-				/**
-				 * Increment progress indicator for every place/transition
-				 * removed.
-				 */
-				int newSize = net.getPlaces().size() + net.getTransitions().size();
-				System.out.println("[Murata] new net size: " + newSize);
-				while (size > newSize) {
-					if (context != null) {
-						context.getProgress().inc();
+			do {
+				if (future != null && future.isCancelled()) {
+					throw new CancellationException();
+				}
+				log = null;
+				for (int i = 0; log == null && i < reductionRules.size(); i++) {
+					MurataRule reductionRule = reductionRules.get(i);
+					if (candidates.get(i) == null) {
+						log = reductionRule.reduce(net, sacredNodes, transitionMap, placeMap, murataMarking,
+								inputEdges, outputEdges, batch, parameters);
+						continue;
+					}
+					MurataTrigger trigger = reductionRule.getTrigger();
+					Iterator<PetrinetNode> iterator = candidates.get(i).iterator();
+					while (log == null && iterator.hasNext()) {
+						PetrinetNode node = iterator.next();
+						iterator.remove();
+						if (adjacency.contains(node)
+								&& trigger.matches(node, inputEdges.get(node).size(), outputEdges.get(node).size())) {
+							log = reductionRule.tryAt(node, sacredNodes, transitionMap, placeMap, murataMarking,
+									inputEdges, outputEdges, batch, parameters);
+							if (log != null) {
+								/*
+								 * The rule may apply at this node again.
+								 */
+								changedNodes.add(node);
+							}
+						}
 					}
-					size--;
 				}
-				output.getLog().add(log);
+				if (log != null) {
+					if (batch.isEmpty()) {
+						/*
+						 * The rule has not used the batch, and may have mutated
+						 * the net directly. Start afresh.
+						 */
+						adjacency.release();
+						adjacency = new MurataAdjacency(net, parameters.isOffHeap());
+						inputEdges = adjacency.getInputEdges();
+						outputEdges = adjacency.getOutputEdges();
+						changedNodes.addAll(net.getNodes());
+					} else {
+						batch.apply(changedNodes, removedNodes);
+						adjacency.update(changedNodes, removedNodes);
+					}
+					murataMarking.collectTouched(changedNodes);
+					addCandidates(reductionRules, candidates, changedNodes, adjacency);
+					changedNodes.clear();
+					removedNodes.clear();
+					size = updateProgress(context, net, size);
+					outputLog.add(log);
+				}
+			} while (log != null);
+			finishReduction(context, net, murataMarking, marking, size);
+		} finally {
+			/*
+			 * Return the off-heap buffers, if any, for reuse.
+			 */
+			adjacency.release();
+			murataMarking.release();
+		}
+	}
+
+	/*
+	 * Increments the progress indicator for every place/transition removed
+	 * since the given size was taken, and returns the new size.
+	 */
+	private int updateProgress(PluginContext context, Petrinet net, int size) {
+		int newSize = net.getPlaces().size() + net.getTransitions().size();
+		while (size > newSize) {
+			if (context != null) {
+				context.getProgress().inc();
 			}
-		} while (log != null);
-		/**
-		 * Flush the progress indicator.
-		 */
+			size--;
+		}
+		return size;
+	}
+
+	/*
+	 * Flushes the progress indicator, and updates the labels and the marking
+	 * once reduction has finished.
+	 */
+	private void finishReduction(PluginContext context, Petrinet net, MurataMarking murataMarking, Marking marking,
+			int size) {
 		while (size > 0) {
 			if (context != null) {
 				context.getProgress().inc();
 			}
 			size--;
 		}
-
 		/*
-		 * Fourth, create an update for the initial marking for the reduced net,
-		 * and connect that update with the reduced net. Also, provide
-		 * transition and place connections.
+		 * Labels of arcs and places are not updated while reducing. Update them
+		 * once for the remaining arcs and places.
 		 */
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+	}
 
-		if (context != null) {
-			// register the initial marking of the reduced net
-			context.addConnection(new InitialMarkingConnection(net, marking));
-
-			// register the mapping between Petrinets.
-			context.addConnection(new PetrinetGraphConnection(input.getNet(), net, transitionMap, placeMap));
+	/*
+	 * Adds the nodes within the locality of the given changed nodes to the
+	 * candidates of every local rule.
+	 */
+	private void addCandidates(List<MurataRule> reductionRules, List<Set<PetrinetNode>> candidates,
+			Collection<PetrinetNode> changedNodes, MurataAdjacency adjacency) {
+		Map<Integer, Set<PetrinetNode>> neighborhoods = new HashMap<Integer, Set<PetrinetNode>>();
+		for (int i = 0; i < reductionRules.size(); i++) {
+			if (candidates.get(i) == null) {
+				continue;
+			}
+			int locality = reductionRules.get(i).getLocality();
+			Set<PetrinetNode> neighborhood = neighborhoods.get(locality);
+			if (neighborhood == null) {
+				neighborhood = getNeighborhood(changedNodes, locality, adjacency);
+				neighborhoods.put(locality, neighborhood);
+			}
+			MurataTrigger trigger = reductionRules.get(i).getTrigger();
+			for (PetrinetNode node : neighborhood) {
+				if (trigger.isKind(node)) {
+					candidates.get(i).add(node);
+				}
+			}
 		}
+	}
 
-		// Connection markingConnection = new Connection(
-		// ResetInhibitorNet.MARKINGCONNECTION,
-		// new Connection.WeakTuple("Places of " + net.getLabel(), net),
-		// new Connection.WeakTuple("Marking of " + net.getLabel(), marking));
-		// context.addConnection(markingConnection);
-		// Connection transitionConnection = new Connection(
-		// new Connection.StrongTuple("Transition mapping", transitionMap),
-		// new Connection.WeakTuple("Transitions of " +
-		// input.getNet().getLabel(), input.getNet()),
-		// new Connection.WeakTuple("Transitions of " + net.getLabel(), net));
-		// context.addConnection(transitionConnection);
-		// Connection placeConnection = new Connection(
-		// new Connection.StrongTuple("Place mapping", placeMap),
-		// new Connection.WeakTuple("Places of " + input.getNet().getLabel(),
-		// input.getNet()),
-		// new Connection.WeakTuple("Places of " + net.getLabel(), net));
-		// context.addConnection(placeConnection);
-		// context.getFutureResult(1).setLabel("Marking of "+ net.getLabel());
-
-		output.setTransitionMapping(transitionMap);
-		output.setPlaceMapping(placeMap);
-
-		/*
-		 * Fifth, return the created net and marking.
-		 */
-		return output;
+	/*
+	 * The nodes at most the given distance away from the given nodes.
+	 */
+	private Set<PetrinetNode> getNeighborhood(Collection<PetrinetNode> nodes, int distance,
+			MurataAdjacency adjacency) {
+		Set<PetrinetNode> neighborhood = new LinkedHashSet<PetrinetNode>();
+		List<PetrinetNode> frontier = new ArrayList<PetrinetNode>();
+		for (PetrinetNode node : nodes) {
+			if (adjacency.contains(node) && neighborhood.add(node)) {
+				frontier.add(node);
+			}
+		}
+		for (int d = 0; d < distance && !frontier.isEmpty(); d++) {
+			List<PetrinetNode> nextFrontier = new ArrayList<PetrinetNode>();
+			for (PetrinetNode node : frontier) {
+				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : adjacency.getInputEdges()
+						.get(node)) {
+					if (neighborhood.add(edge.getSource())) {
+						nextFrontier.add(edge.getSource());
+					}
+				}
+				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : adjacency.getOutputEdges()
+						.get(node)) {
+					if (neighborhood.add(edge.getTarget())) {
+						nextFrontier.add(edge.getTarget());
+					}
+				}
+			}
+			frontier = nextFrontier;
+		}
+		return neighborhood;
 	}
 
 	/**
@@ -519,7 +998,7 @@ public class Murata {
 			Arc arc = (Arc) edge;
 			PetrinetNode sourceNode = nodeMap.get(arc.getSource());
 			PetrinetNode targetNode = nodeMap.get(arc.getTarget());
-			MurataUtils.addArc(netCopy, sourceNode, targetNode, arc.getWeight());
+			MurataUtils.addArc(netCopy, sourceNode, targetNode, arc.getWeight(), false);
 		}
 		/*
 		 * Return the copy.
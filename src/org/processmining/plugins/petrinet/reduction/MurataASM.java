@@ -24,16 +24,9 @@ public class MurataASM extends MurataRule {
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges,
 				new MurataParameters());
 	}
@@ -43,6 +36,21 @@ public class MurataASM extends MurataRule {
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 		//		System.out.println("[MurataASM] Start");
 		for (Transition transition : net.getTransitions()) {
 			if (sacredNodes.contains(transition)) {
@@ -62,7 +70,7 @@ public class MurataASM extends MurataRule {
 			Place targetPlace = (Place) outputEdges.get(transition).iterator().next().getTarget();
 			Set<Place> places = new HashSet<Place>();
 			places.add(sourcePlace);
-			String result = reduce(net, transitionMap, sourcePlace, places, sourcePlace, targetPlace, transition,
+			String result = reduce(batch, transitionMap, sourcePlace, places, sourcePlace, targetPlace, transition,
 					inputEdges, outputEdges);
 			places.remove(sourcePlace);
 			if (result != null) {
@@ -74,12 +82,12 @@ public class MurataASM extends MurataRule {
 		return null;
 	}
 
-	private String reduce(Petrinet net, HashMap<Transition, Transition> transitionMap, Place currentPlace,
+	private String reduce(MurataBatch batch, HashMap<Transition, Transition> transitionMap, Place currentPlace,
 			Set<Place> places, Place firstPlace, Place lastPlace,
 			Transition silentTransition,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges) {
-		for (PetrinetEdge<?, ?> edge : net.getOutEdges(currentPlace)) {
+		for (PetrinetEdge<?, ?> edge : batch.getNet().getOutEdges(currentPlace)) {
 			if (!(edge instanceof Arc)) {
 				continue;
 			}
@@ -99,12 +107,12 @@ public class MurataASM extends MurataRule {
 			}
 			if (place == lastPlace) {
 				if (currentPlace != firstPlace) {
-					return reduce(net, transitionMap, silentTransition, inputEdges, outputEdges);
+					return reduce(batch, transitionMap, silentTransition, inputEdges, outputEdges);
 				}
 				continue;
 			}
 			places.add(place);
-			String result = reduce(net, transitionMap, place, places, firstPlace, lastPlace, silentTransition,
+			String result = reduce(batch, transitionMap, place, places, firstPlace, lastPlace, silentTransition,
 					inputEdges, outputEdges);
 			places.remove(place);
 			if (result != null) {
@@ -114,7 +122,8 @@ public class MurataASM extends MurataRule {
 		return null;
 	}
 
-	private String reduce(Petrinet net, HashMap<Transition, Transition> transitionMap, Transition removeTransition,
+	private String reduce(MurataBatch batch, HashMap<Transition, Transition> transitionMap,
+			Transition removeTransition,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges) {
 		Set<Transition> removeTransitions = new HashSet<Transition>();
@@ -127,9 +136,9 @@ public class MurataASM extends MurataRule {
 		for (Transition transition : removeTransitions) {
 			transitionMap.remove(transition);
 		}
-		net.removeEdge(inputEdges.get(removeTransition).iterator().next());
-		net.removeEdge(outputEdges.get(removeTransition).iterator().next());
-		net.removeTransition(removeTransition);
+		batch.removeEdge(inputEdges.get(removeTransition).iterator().next());
+		batch.removeEdge(outputEdges.get(removeTransition).iterator().next());
+		batch.removeTransition(removeTransition);
 		return "<asm transition=\"" + removeTransition.getLabel() + "\"/>";
 	}
 }
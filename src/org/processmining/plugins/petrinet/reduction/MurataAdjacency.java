@@ -0,0 +1,286 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.nio.IntBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+
+/**
+ * Input and output edges of every node of a Petri net, as used by the
+ * reduction rules. Most nodes have only one or two input edges and one or two
+ * output edges. Therefore, the first two edges of a node are kept in slots,
+ * and only nodes with more edges get an array for the remaining edges. This
+ * avoids a hash set per node and direction.
+ * <p>
+ * The edges are offered as maps from nodes to sets of edges. These maps and
+ * sets are read-only views. They do not reflect later changes to the net,
+ * unless these changes are passed to update. The edge counts may be kept off
+ * heap, see MurataParameters, in which case the adjacency should be released
+ * when no longer needed. The edges themselves and the map from nodes to node
+ * ids stay on the heap.
+ */
+public class MurataAdjacency {
+
+	private final Petrinet net;
+	/*
+	 * Map from nodes to node ids.
+	 */
+	private final Map<PetrinetNode, Integer> index;
+	private final Edges inputEdges;
+	private final Edges outputEdges;
+
+	/**
+	 * Constructs the input and output edges of every node of the given net.
+	 *
+	 * @param net
+	 *            The net.
+	 */
+	public MurataAdjacency(Petrinet net) {
+		this(net, false);
+	}
+
+	/**
+	 * Constructs the input and output edges of every node of the given net.
+	 *
+	 * @param net
+	 *            The net.
+	 * @param offHeap
+	 *            Whether to keep the edge counts outside the Java heap.
+	 */
+	public MurataAdjacency(Petrinet net, boolean offHeap) {
+		this.net = net;
+		Set<PetrinetNode> nodes = net.getNodes();
+		index = new HashMap<PetrinetNode, Integer>(2 * nodes.size());
+		for (PetrinetNode node : nodes) {
+			index.put(node, index.size());
+		}
+		inputEdges = new Edges(index.size(), offHeap);
+		outputEdges = new Edges(index.size(), offHeap);
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+			outputEdges.add(index.get(edge.getSource()), edge);
+			inputEdges.add(index.get(edge.getTarget()), edge);
+		}
+	}
+
+	/**
+	 * Gets the input edges of every node.
+	 *
+	 * @return Map from nodes to their input edges.
+	 */
+	public Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> getInputEdges() {
+		return inputEdges;
+	}
+
+	/**
+	 * Gets the output edges of every node.
+	 *
+	 * @return Map from nodes to their output edges.
+	 */
+	public Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> getOutputEdges() {
+		return outputEdges;
+	}
+
+	/**
+	 * Updates the edges after the net has changed. Nodes cannot be added.
+	 *
+	 * @param changedNodes
+	 *            The nodes whose edges have changed.
+	 * @param removedNodes
+	 *            The nodes that have been removed from the net.
+	 */
+	public void update(Collection<PetrinetNode> changedNodes, Collection<PetrinetNode> removedNodes) {
+		for (PetrinetNode node : removedNodes) {
+			Integer id = index.remove(node);
+			if (id != null) {
+				inputEdges.reset(id);
+				outputEdges.reset(id);
+			}
+		}
+		for (PetrinetNode node : changedNodes) {
+			Integer id = index.get(node);
+			if (id == null) {
+				continue;
+			}
+			inputEdges.reset(id);
+			outputEdges.reset(id);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getInEdges(node)) {
+				inputEdges.add(id, edge);
+			}
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getOutEdges(node)) {
+				outputEdges.add(id, edge);
+			}
+		}
+	}
+
+	/**
+	 * Releases the edge counts, see MurataUtils.releaseIntBuffer. The
+	 * adjacency, including the maps and sets it offered, should not be used
+	 * afterwards.
+	 */
+	public void release() {
+		MurataUtils.releaseIntBuffer(inputEdges.degree);
+		MurataUtils.releaseIntBuffer(outputEdges.degree);
+	}
+
+	/**
+	 * Checks whether the given node is (still) part of the net.
+	 *
+	 * @param node
+	 *            The given node.
+	 * @return Whether the node is part of the net.
+	 */
+	public boolean contains(PetrinetNode node) {
+		return index.containsKey(node);
+	}
+
+	/*
+	 * The edges in one direction, per node id.
+	 */
+	private class Edges extends AbstractMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> {
+
+		/*
+		 * First and second edge per node id.
+		 */
+		private final PetrinetEdge<?, ?>[] first;
+		private final PetrinetEdge<?, ?>[] second;
+		/*
+		 * Remaining edges per node id, null for most nodes.
+		 */
+		private final PetrinetEdge<?, ?>[][] remaining;
+		/*
+		 * Number of edges per node id.
+		 */
+		private final IntBuffer degree;
+
+		private Edges(int size, boolean offHeap) {
+			first = new PetrinetEdge<?, ?>[size];
+			second = new PetrinetEdge<?, ?>[size];
+			remaining = new PetrinetEdge<?, ?>[size][];
+			degree = MurataUtils.newIntBuffer(size, offHeap);
+		}
+
+		private void add(int node, PetrinetEdge<?, ?> edge) {
+			int d = degree.get(node);
+			degree.put(node, d + 1);
+			if (d == 0) {
+				first[node] = edge;
+			} else if (d == 1) {
+				second[node] = edge;
+			} else {
+				PetrinetEdge<?, ?>[] edges = remaining[node];
+				if (edges == null) {
+					edges = new PetrinetEdge<?, ?>[2];
+				} else if (d - 2 == edges.length) {
+					PetrinetEdge<?, ?>[] grown = new PetrinetEdge<?, ?>[2 * edges.length];
+					System.arraycopy(edges, 0, grown, 0, edges.length);
+					edges = grown;
+				}
+				edges[d - 2] = edge;
+				remaining[node] = edges;
+			}
+		}
+
+		private void reset(int node) {
+			first[node] = null;
+			second[node] = null;
+			remaining[node] = null;
+			degree.put(node, 0);
+		}
+
+		private PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> get(int node, int i) {
+			return (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>) (i == 0 ? first[node]
+					: (i == 1 ? second[node] : remaining[node][i - 2]));
+		}
+
+		public Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> get(Object node) {
+			Integer id = index.get(node);
+			return id == null ? null : new EdgeSet(this, id);
+		}
+
+		public boolean containsKey(Object node) {
+			return index.containsKey(node);
+		}
+
+		public int size() {
+			return index.size();
+		}
+
+		public Set<Map.Entry<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>> entrySet() {
+			return new AbstractSet<Map.Entry<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>>() {
+
+				public Iterator<Map.Entry<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>> iterator() {
+					final Iterator<Map.Entry<PetrinetNode, Integer>> iterator = index.entrySet().iterator();
+					return new Iterator<Map.Entry<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>>() {
+
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						public Map.Entry<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> next() {
+							Map.Entry<PetrinetNode, Integer> entry = iterator.next();
+							return new AbstractMap.SimpleImmutableEntry<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>(
+									entry.getKey(), new EdgeSet(Edges.this, entry.getValue()));
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				public int size() {
+					return index.size();
+				}
+			};
+		}
+	}
+
+	/*
+	 * The edges of a single node in a single direction.
+	 */
+	private static class EdgeSet extends AbstractSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> {
+
+		private final Edges edges;
+		private final int node;
+
+		private EdgeSet(Edges edges, int node) {
+			this.edges = edges;
+			this.node = node;
+		}
+
+		public int size() {
+			return edges.degree.get(node);
+		}
+
+		public Iterator<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> iterator() {
+			return new Iterator<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>() {
+
+				private int i = 0;
+
+				public boolean hasNext() {
+					return i < edges.degree.get(node);
+				}
+
+				public PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> next() {
+					if (i >= edges.degree.get(node)) {
+						throw new NoSuchElementException();
+					}
+					return edges.get(node, i++);
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package org.processmining.plugins.petrinet.reduction;
+
+/**
+ * Base reduction shared by many views on the same net, see Murata.runBase and
+ * Murata.runView. The base input holds the nodes that are sacred in at least
+ * one view, and the rules that are allowed in every view. The base output is
+ * the net reduced accordingly, which is not changed by reducing views.
+ */
+public class MurataBase {
+
+	private final MurataInput input;
+	private final MurataOutput output;
+
+	MurataBase(MurataInput input, MurataOutput output) {
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Gets the input of the base reduction.
+	 *
+	 * @return The input.
+	 */
+	public MurataInput getInput() {
+		return input;
+	}
+
+	/**
+	 * Gets the output of the base reduction.
+	 *
+	 * @return The output.
+	 */
+	public MurataOutput getOutput() {
+		return output;
+	}
+}
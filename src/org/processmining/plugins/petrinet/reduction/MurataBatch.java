@@ -0,0 +1,224 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+
+/**
+ * Batch of mutations on a Petri net under reduction. The reduction rules queue
+ * their mutations in the batch instead of applying them to the net directly.
+ * The batch is applied in bulk after the rule has been applied.
+ *
+ * Queued mutations are consolidated: every node and edge is removed at most
+ * once, arcs from or to a removed node are not added (nor removed) at all, and
+ * arcs with the same source and target are added as a single arc with the sum
+ * of the weights. As a result, the net receives as few mutations (and fires as
+ * few change events) as possible.
+ */
+public class MurataBatch {
+	/*
+	 * The net under reduction.
+	 */
+	private final Petrinet net;
+	/*
+	 * Edges to remove.
+	 */
+	private final Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> removeEdges;
+	/*
+	 * Arcs to add, from source to target to weight.
+	 */
+	private final Map<PetrinetNode, Map<PetrinetNode, Integer>> addArcs;
+	/*
+	 * Transitions to remove.
+	 */
+	private final Set<Transition> removeTransitions;
+	/*
+	 * Places to remove.
+	 */
+	private final Set<Place> removePlaces;
+
+	/**
+	 * Constructs an empty batch for the given net.
+	 *
+	 * @param net
+	 *            The net under reduction.
+	 */
+	public MurataBatch(Petrinet net) {
+		this.net = net;
+		removeEdges = new LinkedHashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>();
+		addArcs = new LinkedHashMap<PetrinetNode, Map<PetrinetNode, Integer>>();
+		removeTransitions = new LinkedHashSet<Transition>();
+		removePlaces = new LinkedHashSet<Place>();
+	}
+
+	/**
+	 * Gets the net this batch applies to.
+	 *
+	 * @return The net under reduction.
+	 */
+	public Petrinet getNet() {
+		return net;
+	}
+
+	/**
+	 * Queues the removal of the given edge.
+	 *
+	 * @param edge
+	 *            The edge to remove.
+	 */
+	public void removeEdge(PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge) {
+		removeEdges.add(edge);
+	}
+
+	/**
+	 * Queues the addition of an arc with given source, target, and weight. If
+	 * an arc from source to target already exists (or has already been
+	 * queued), the weight is added to the weight of that arc instead, see
+	 * MurataUtils.addArc.
+	 *
+	 * @param source
+	 *            The given source.
+	 * @param target
+	 *            The given target.
+	 * @param weight
+	 *            The given weight.
+	 */
+	public void addArc(PetrinetNode source, PetrinetNode target, int weight) {
+		Map<PetrinetNode, Integer> targets = addArcs.get(source);
+		if (targets == null) {
+			targets = new LinkedHashMap<PetrinetNode, Integer>();
+			addArcs.put(source, targets);
+		}
+		Integer queuedWeight = targets.get(target);
+		targets.put(target, queuedWeight == null ? weight : queuedWeight + weight);
+	}
+
+	/**
+	 * Queues the removal of the given transition, including its edges.
+	 *
+	 * @param transition
+	 *            The transition to remove.
+	 */
+	public void removeTransition(Transition transition) {
+		removeTransitions.add(transition);
+	}
+
+	/**
+	 * Queues the removal of the given place, including its edges.
+	 *
+	 * @param place
+	 *            The place to remove.
+	 */
+	public void removePlace(Place place) {
+		removePlaces.add(place);
+	}
+
+	/**
+	 * Checks whether the batch contains no mutations.
+	 *
+	 * @return Whether the batch is empty.
+	 */
+	public boolean isEmpty() {
+		return removeEdges.isEmpty() && addArcs.isEmpty() && removeTransitions.isEmpty() && removePlaces.isEmpty();
+	}
+
+	/**
+	 * Applies all queued mutations to the net and empties the batch. Edges are
+	 * removed first, then arcs are added, and finally transitions and places
+	 * are removed. This is the same order in which the rules used to mutate
+	 * the net.
+	 */
+	public void apply() {
+		apply(null, null);
+	}
+
+	/**
+	 * Applies all queued mutations to the net and empties the batch, see
+	 * above. Collects the nodes that remain in the net but gained or lost
+	 * edges, and the nodes that were removed.
+	 *
+	 * @param changedNodes
+	 *            The collection to add the changed nodes to, may be null.
+	 * @param removedNodes
+	 *            The collection to add the removed nodes to, may be null.
+	 */
+	public void apply(Collection<PetrinetNode> changedNodes, Collection<PetrinetNode> removedNodes) {
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : removeEdges) {
+			if (!isRemoved(edge.getSource()) && !isRemoved(edge.getTarget())) {
+				net.removeEdge(edge);
+				if (changedNodes != null) {
+					changedNodes.add(edge.getSource());
+					changedNodes.add(edge.getTarget());
+				}
+			}
+		}
+		for (Map.Entry<PetrinetNode, Map<PetrinetNode, Integer>> sourceEntry : addArcs.entrySet()) {
+			PetrinetNode source = sourceEntry.getKey();
+			if (isRemoved(source)) {
+				continue;
+			}
+			for (Map.Entry<PetrinetNode, Integer> targetEntry : sourceEntry.getValue().entrySet()) {
+				if (!isRemoved(targetEntry.getKey())) {
+					MurataUtils.addArc(net, source, targetEntry.getKey(), targetEntry.getValue(), false);
+					if (changedNodes != null) {
+						changedNodes.add(source);
+						changedNodes.add(targetEntry.getKey());
+					}
+				}
+			}
+		}
+		if (changedNodes != null) {
+			for (PetrinetNode node : removeTransitions) {
+				addNeighbors(node, changedNodes);
+			}
+			for (PetrinetNode node : removePlaces) {
+				addNeighbors(node, changedNodes);
+			}
+		}
+		for (Transition transition : removeTransitions) {
+			net.removeTransition(transition);
+		}
+		for (Place place : removePlaces) {
+			net.removePlace(place);
+		}
+		if (removedNodes != null) {
+			removedNodes.addAll(removeTransitions);
+			removedNodes.addAll(removePlaces);
+		}
+		removeEdges.clear();
+		addArcs.clear();
+		removeTransitions.clear();
+		removePlaces.clear();
+	}
+
+	/*
+	 * Adds the neighbors of the given node that are not queued for removal.
+	 */
+	private void addNeighbors(PetrinetNode node, Collection<PetrinetNode> nodes) {
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getInEdges(node)) {
+			if (!isRemoved(edge.getSource())) {
+				nodes.add(edge.getSource());
+			}
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getOutEdges(node)) {
+			if (!isRemoved(edge.getTarget())) {
+				nodes.add(edge.getTarget());
+			}
+		}
+	}
+
+	/*
+	 * Returns whether the given node is queued for removal.
+	 */
+	private boolean isRemoved(PetrinetNode node) {
+		return removeTransitions.contains(node) || removePlaces.contains(node);
+	}
+}
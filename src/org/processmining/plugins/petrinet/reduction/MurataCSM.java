@@ -23,31 +23,39 @@ public class MurataCSM extends MurataRule {
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, new MurataParameters());
 	}
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
-			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, 
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 		for (Place place : net.getPlaces()) {
 			Set<Place> places = new HashSet<Place>();
 			Set<Transition> transitions = new HashSet<Transition>();
 			if (sacredNodes.contains(place)) {
 				continue;
 			}
-			String result = reduce(net, sacredNodes, transitionMap, placeMap, marking, place, place, places,
+			String result = reduce(batch, sacredNodes, transitionMap, placeMap, marking, place, place, places,
 					transitions, inputEdges, outputEdges);
 			if (result != null) {
 				return result;
@@ -56,8 +64,8 @@ public class MurataCSM extends MurataRule {
 		return null;
 	}
 
-	private String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
-			Map<Transition, Transition> transitionMap, Map<Place, Place> placeMap, Marking marking,
+	private String reduce(MurataBatch batch, Collection<PetrinetNode> sacredNodes,
+			Map<Transition, Transition> transitionMap, Map<Place, Place> placeMap, MurataMarking marking,
 			Place firstPlace, Place lastPlace, Set<Place> places, Set<Transition> transitions,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges) {
@@ -93,14 +101,14 @@ public class MurataCSM extends MurataRule {
 			if (otherPlace == firstPlace) {
 				// We're round. Found a cycle of invisible transitions.
 				transitions.add(transition);
-				return reduce(net, transitionMap, placeMap, marking, firstPlace, places, transitions);
+				return reduce(batch, transitionMap, placeMap, marking, firstPlace, places, transitions);
 			}
 			if (places.contains(otherPlace)) {
 				continue;
 			}
 			places.add(otherPlace);
 			transitions.add(transition);
-			String result = reduce(net, sacredNodes, transitionMap, placeMap, marking, firstPlace, otherPlace, places,
+			String result = reduce(batch, sacredNodes, transitionMap, placeMap, marking, firstPlace, otherPlace, places,
 					transitions, inputEdges, outputEdges);
 			transitions.remove(transition);
 			places.remove(otherPlace);
@@ -111,8 +119,8 @@ public class MurataCSM extends MurataRule {
 		return null;
 	}
 
-	private String reduce(Petrinet net, Map<Transition, Transition> transitionMap, Map<Place, Place> placeMap,
-			Marking marking, Place firstPlace, Set<Place> places, Set<Transition> transitions) {
+	private String reduce(MurataBatch batch, Map<Transition, Transition> transitionMap, Map<Place, Place> placeMap,
+			MurataMarking marking, Place firstPlace, Set<Place> places, Set<Transition> transitions) {
 		Set<Transition> removeTransitions = new HashSet<Transition>();
 		for (Transition transition : transitionMap.keySet()) {
 			if (transitions.contains(transitionMap.get(transition))) {
@@ -133,13 +141,12 @@ public class MurataCSM extends MurataRule {
 		}
 		for (Place place : places) {
 			marking.add(firstPlace, marking.occurrences(place));
-			MurataUtils.updateLabel(firstPlace, marking);
 			MurataUtils.resetPlace(marking, place);
 		}
 		Set<PetrinetEdge<?, ?>> removeEdges = new HashSet<PetrinetEdge<?, ?>>();
 		Set<Transition> targetTransitions = new HashSet<Transition>();
 		Set<Transition> sourceTransitions = new HashSet<Transition>();
-		for (PetrinetEdge<?, ?> edge : net.getEdges()) {
+		for (PetrinetEdge<?, ?> edge : batch.getNet().getEdges()) {
 			if (!(edge instanceof Arc)) {
 				continue;
 			}
@@ -156,27 +163,27 @@ public class MurataCSM extends MurataRule {
 			}
 		}
 		for (PetrinetEdge<?, ?> edge : removeEdges) {
-			net.removeEdge(edge);
+			batch.removeEdge(edge);
 		}
 		for (Transition transition : targetTransitions) {
-			net.addArc(firstPlace, transition);
+			batch.addArc(firstPlace, transition, 1);
 		}
 		for (Transition transition : sourceTransitions) {
-			net.addArc(transition, firstPlace);
+			batch.addArc(transition, firstPlace, 1);
 		}
 		String result = "<csm place=\"" + firstPlace.getLabel() + "\" transitions=\"";
 		String sep = "{";
 		for (Transition transition : transitions) {
 			result += sep + transition.getLabel();
 			sep = ",";
-			net.removeTransition(transition);
+			batch.removeTransition(transition);
 		}
 		result += "}\" places=\"";
 		sep = "{";
 		for (Place place : places) {
 			result += sep + place.getLabel();
 			sep = ",";
-			net.removePlace(place);
+			batch.removePlace(place);
 		}
 		result += "}\"/>";
 		return result;
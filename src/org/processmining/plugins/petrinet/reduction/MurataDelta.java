@@ -0,0 +1,186 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+
+/**
+ * Edits to a Petri net that has been reduced before. The edits are applied to
+ * the net right away, and recorded, such that the reduced net can be updated
+ * for only the affected part of the net afterwards (see Murata.rerun).
+ * <p>
+ * Every node that is added, or whose arcs have changed, is recorded as
+ * touched. Changes that are not made through this class, like changing the
+ * label or the visibility of a transition, or changing whether a node is
+ * sacred, should be recorded by touching the node.
+ */
+public class MurataDelta {
+
+	/*
+	 * The net being edited.
+	 */
+	private final Petrinet net;
+	/*
+	 * The nodes added to the net, and the nodes that have been touched.
+	 */
+	private final Set<PetrinetNode> touchedNodes;
+	/*
+	 * The nodes removed from the net.
+	 */
+	private final List<PetrinetNode> removedNodes;
+
+	/**
+	 * Constructs an empty delta for the given net.
+	 *
+	 * @param net
+	 *            The net that has been reduced before, and that will be
+	 *            edited.
+	 */
+	public MurataDelta(Petrinet net) {
+		this.net = net;
+		touchedNodes = new HashSet<PetrinetNode>();
+		removedNodes = new ArrayList<PetrinetNode>();
+	}
+
+	/**
+	 * Gets the net being edited.
+	 *
+	 * @return The net being edited.
+	 */
+	public Petrinet getNet() {
+		return net;
+	}
+
+	/**
+	 * Adds a place to the net.
+	 *
+	 * @param label
+	 *            The label of the place.
+	 * @return The added place.
+	 */
+	public Place addPlace(String label) {
+		Place place = net.addPlace(label);
+		touchedNodes.add(place);
+		return place;
+	}
+
+	/**
+	 * Adds a transition to the net.
+	 *
+	 * @param label
+	 *            The label of the transition.
+	 * @param invisible
+	 *            Whether the transition is invisible.
+	 * @return The added transition.
+	 */
+	public Transition addTransition(String label, boolean invisible) {
+		Transition transition = net.addTransition(label);
+		transition.setInvisible(invisible);
+		touchedNodes.add(transition);
+		return transition;
+	}
+
+	/**
+	 * Adds an arc to the net. If the arc already exists, the weight is added
+	 * to the weight of the existing arc.
+	 *
+	 * @param source
+	 *            The source of the arc.
+	 * @param target
+	 *            The target of the arc.
+	 * @param weight
+	 *            The weight of the arc.
+	 */
+	public void addArc(PetrinetNode source, PetrinetNode target, int weight) {
+		MurataUtils.addArc(net, source, target, weight);
+		touchedNodes.add(source);
+		touchedNodes.add(target);
+	}
+
+	/**
+	 * Removes an arc from the net, if it exists.
+	 *
+	 * @param source
+	 *            The source of the arc.
+	 * @param target
+	 *            The target of the arc.
+	 */
+	public void removeArc(PetrinetNode source, PetrinetNode target) {
+		Arc arc = net.getArc(source, target);
+		if (arc != null) {
+			net.removeArc(source, target);
+			touchedNodes.add(source);
+			touchedNodes.add(target);
+		}
+	}
+
+	/**
+	 * Removes a node and its arcs from the net. The neighbors of the node are
+	 * touched.
+	 *
+	 * @param node
+	 *            The node to remove.
+	 */
+	public void removeNode(PetrinetNode node) {
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getInEdges(node)) {
+			touchedNodes.add(edge.getSource());
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getOutEdges(node)) {
+			touchedNodes.add(edge.getTarget());
+		}
+		if (node instanceof Place) {
+			net.removePlace((Place) node);
+		} else {
+			net.removeTransition((Transition) node);
+		}
+		touchedNodes.remove(node);
+		removedNodes.add(node);
+	}
+
+	/**
+	 * Records that a node has changed in a way that may affect the reduction,
+	 * like its label, its visibility, or whether it is sacred.
+	 *
+	 * @param node
+	 *            The changed node.
+	 */
+	public void touch(PetrinetNode node) {
+		touchedNodes.add(node);
+	}
+
+	/**
+	 * Gets the nodes that have been added or touched, and that are still in
+	 * the net.
+	 *
+	 * @return The added and touched nodes.
+	 */
+	public Set<PetrinetNode> getTouchedNodes() {
+		return touchedNodes;
+	}
+
+	/**
+	 * Gets the nodes that have been removed from the net.
+	 *
+	 * @return The removed nodes.
+	 */
+	public List<PetrinetNode> getRemovedNodes() {
+		return removedNodes;
+	}
+
+	/**
+	 * Checks whether nothing has been edited.
+	 *
+	 * @return Whether nothing has been edited.
+	 */
+	public boolean isEmpty() {
+		return touchedNodes.isEmpty() && removedNodes.isEmpty();
+	}
+}
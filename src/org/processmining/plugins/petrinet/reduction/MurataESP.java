@@ -16,6 +16,11 @@ import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataESP extends MurataRule {
 
+	/*
+	 * A self-loop place has one input and one output.
+	 */
+	private static final MurataTrigger TRIGGER = MurataTrigger.place(1, 1, 1, 1);
+
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking) {
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, new MurataParameters());
@@ -23,89 +28,118 @@ public class MurataESP extends MurataRule {
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, new MurataParameters());
 	}
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
-			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, 
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 
 		/*
 		 * Iterate over all places.
 		 */
 		for (Place place : net.getPlaces()) {
-			if (sacredNodes.contains(place)) {
-				continue;
-			}
-			long tokens = marking.occurrences(place);
-			/*
-			 * Check input arc.
-			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(place);
-			if (preset.size() != 1) {
-				continue;
-			}
-			PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
-			}
-			Arc inputArc = (Arc) edge;
-			int weight = inputArc.getWeight();
-			/*
-			 * Check output arc.
-			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(place);
-			if (postset.size() != 1) {
-				continue;
-			}
-			edge = postset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
-			}
-			Arc outputArc = (Arc) edge;
-			if (outputArc.getWeight() != weight) {
-				continue;
-			}
-			/*
-			 * Check whether self loop.
-			 */
-			if (inputArc.getSource() != outputArc.getTarget()) {
-				continue;
+			String log = tryAt(place, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, batch,
+					parameters);
+			if (log != null) {
+				return log;
 			}
+		}
+		return null;
+	}
+
+	public MurataTrigger getTrigger() {
+		return TRIGGER;
+	}
+
+	/**
+	 * Apply the ELP rule at the given place, if possible.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		Place place = (Place) node;
+		if (sacredNodes.contains(place)) {
+			return null;
+		}
+		long tokens = marking.occurrences(place);
+		/*
+		 * Check input arc.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(place);
+		if (preset.size() != 1) {
+			return null;
+		}
+		PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc inputArc = (Arc) edge;
+		int weight = inputArc.getWeight();
+		/*
+		 * Check output arc.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(place);
+		if (postset.size() != 1) {
+			return null;
+		}
+		edge = postset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc outputArc = (Arc) edge;
+		if (outputArc.getWeight() != weight) {
+			return null;
+		}
+		/*
+		 * Check whether self loop.
+		 */
+		if (inputArc.getSource() != outputArc.getTarget()) {
+			return null;
+		}
+		/*
+		 * Check whether tokens exceed weight.
+		 */
+		if (weight <= tokens) {
+			String log = "<elp place=\"" + place.getLabel() + "\"/>";
 			/*
-			 * Check whether tokens exceed weight.
+			 * We have a self loop for a marked place. Remove the place from
+			 * the copy net. First, update the place map.
 			 */
-			if (weight <= tokens) {
-				String log = "<elp place=\"" + place.getLabel() + "\"/>";
-				/*
-				 * We have a self loop for a marked place. Remove the place from
-				 * the copy net. First, update the place map.
-				 */
-				HashSet<Place> removePlaces = new HashSet<Place>();
-				for (Place p : placeMap.keySet()) {
-					if (placeMap.get(p) == place) {
-						removePlaces.add(p);
-					}
+			HashSet<Place> removePlaces = new HashSet<Place>();
+			for (Place p : placeMap.keySet()) {
+				if (placeMap.get(p) == place) {
+					removePlaces.add(p);
 				}
-				for (Place p : removePlaces) {
-					placeMap.remove(p);
-				}
-				MurataUtils.resetPlace(marking, place);
-				net.removePlace(place);
-				return log; // A place has been removed.
 			}
+			for (Place p : removePlaces) {
+				placeMap.remove(p);
+			}
+			MurataUtils.resetPlace(marking, place);
+			batch.removePlace(place);
+			return log; // A place has been removed.
 		}
 		return null;
 	}
@@ -16,6 +16,11 @@ import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataEST extends MurataRule {
 
+	/*
+	 * A self-loop transition has one input and one output.
+	 */
+	private static final MurataTrigger TRIGGER = MurataTrigger.transition(1, 1, 1, 1);
+
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking) {
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, new MurataParameters());
@@ -23,109 +28,138 @@ public class MurataEST extends MurataRule {
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, new MurataParameters());
 	}
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
-			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, 
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 
 		/*
 		 * Iterate over all transitions.
 		 */
 		for (Transition transition : net.getTransitions()) {
-			if (sacredNodes.contains(transition)) {
-				continue;
+			String log = tryAt(transition, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, batch,
+					parameters);
+			if (log != null) {
+				return log;
 			}
-			/*
-			 * Check input arc.
-			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(transition);
-			if (preset.size() != 1) {
-				continue;
-			}
-			PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
-			}
-			Arc inputArc = (Arc) edge;
-			int weight = inputArc.getWeight();
-			/*
-			 * Check output arc.
-			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(transition);
-			if (postset.size() != 1) {
+		}
+		return null;
+	}
+
+	public MurataTrigger getTrigger() {
+		return TRIGGER;
+	}
+
+	/**
+	 * Apply the ELT rule at the given transition, if possible.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		Transition transition = (Transition) node;
+		if (sacredNodes.contains(transition)) {
+			return null;
+		}
+		/*
+		 * Check input arc.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(transition);
+		if (preset.size() != 1) {
+			return null;
+		}
+		PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc inputArc = (Arc) edge;
+		int weight = inputArc.getWeight();
+		/*
+		 * Check output arc.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(transition);
+		if (postset.size() != 1) {
+			return null;
+		}
+		edge = postset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc outputArc = (Arc) edge;
+		if (outputArc.getWeight() != weight) {
+			return null;
+		}
+		/*
+		 * Check whether self loop.
+		 */
+		if (inputArc.getSource() != outputArc.getTarget()) {
+			return null;
+		}
+		/*
+		 * Check whether place has other output transitions that needs at
+		 * least as much tokens as this transition.
+		 */
+		Place place = (Place) inputArc.getSource();
+		postset = outputEdges.get(place);
+		if (postset.size() < 2) {
+			return null;
+		}
+		boolean ok = false;
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> postEdge : postset) {
+			if (ok) {
 				continue;
 			}
-			edge = postset.iterator().next();
-			if (!(edge instanceof Arc)) {
+			if (!(postEdge instanceof Arc)) {
 				continue;
 			}
-			Arc outputArc = (Arc) edge;
-			if (outputArc.getWeight() != weight) {
+			Arc arc = (Arc) postEdge;
+			if (arc == inputArc) {
 				continue;
 			}
-			/*
-			 * Check whether self loop.
-			 */
-			if (inputArc.getSource() != outputArc.getTarget()) {
-				continue;
+			if (arc.getWeight() >= weight) {
+				ok = true;
 			}
+		}
+		if (ok) {
+			String log = "<elt transition=\"" + transition.getLabel() + "\"/>";
 			/*
-			 * Check whether place has other output transitions that needs at
-			 * least as much tokens as this transition.
+			 * We have a self loop for a transition. Remove the transition.
+			 * First, update the transition map.
 			 */
-			Place place = (Place) inputArc.getSource();
-			postset = outputEdges.get(place);
-			if (postset.size() < 2) {
-				continue;
-			}
-			boolean ok = false;
-			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> postEdge : postset) {
-				if (ok) {
-					continue;
-				}
-				if (!(postEdge instanceof Arc)) {
-					continue;
-				}
-				Arc arc = (Arc) postEdge;
-				if (arc == inputArc) {
-					continue;
-				}
-				if (arc.getWeight() >= weight) {
-					ok = true;
+			HashSet<Transition> removeTransitions = new HashSet<Transition>();
+			for (Transition t : transitionMap.keySet()) {
+				if (transitionMap.get(t) == transition) {
+					removeTransitions.add(t);
 				}
 			}
-			if (ok) {
-				String log = "<elt transition=\"" + transition.getLabel() + "\"/>";
-				/*
-				 * We have a self loop for a transition. Remove the transition.
-				 * First, update the transition map.
-				 */
-				HashSet<Transition> removeTransitions = new HashSet<Transition>();
-				for (Transition t : transitionMap.keySet()) {
-					if (transitionMap.get(t) == transition) {
-						removeTransitions.add(t);
-					}
-				}
-				for (Transition t : removeTransitions) {
-					transitionMap.remove(t);
-				}
-				net.removeTransition(transition);
-				return log; // A transition has been removed.
+			for (Transition t : removeTransitions) {
+				transitionMap.remove(t);
 			}
+			batch.removeTransition(transition);
+			return log; // A transition has been removed.
 		}
 		return null;
 	}
@@ -16,6 +16,12 @@ import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataFPP extends MurataRule {
 
+	/*
+	 * Any place may have a sibling.
+	 */
+	private static final MurataTrigger TRIGGER = MurataTrigger.place(0, MurataTrigger.ANY, 0,
+			MurataTrigger.ANY);
+
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking) {
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, new MurataParameters());
@@ -23,25 +29,33 @@ public class MurataFPP extends MurataRule {
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, new MurataParameters());
 	}
 	
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
-			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, 
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 		HashMap<Place, HashSet<Arc>> inputMap = new HashMap<Place, HashSet<Arc>>();
 		HashMap<Place, HashSet<Arc>> outputMap = new HashMap<Place, HashSet<Arc>>();
 		/*
@@ -49,163 +63,214 @@ public class MurataFPP extends MurataRule {
 		 * edges regular.
 		 */
 		for (Place place : net.getPlaces()) {
-			boolean ok;
+			HashSet<Arc> inputArcs = getArcs(inputEdges.get(place));
+			HashSet<Arc> outputArcs = getArcs(outputEdges.get(place));
+			if (inputArcs != null && outputArcs != null) {
+				inputMap.put(place, inputArcs);
+				outputMap.put(place, outputArcs);
+			}
+		}
+		/*
+		 * Iterate over all places with only regular incident edges, and search
+		 * all of them for siblings. The order in which this finds siblings
+		 * determines the result of the default reduction.
+		 */
+		for (Place place : inputMap.keySet()) {
+			String log = reduce(place, inputMap.keySet(), true, sacredNodes, placeMap, marking, inputMap,
+					outputMap, inputEdges, outputEdges, batch);
+			if (log != null) {
+				return log;
+			}
+		}
+		return null;
+	}
+
+	public MurataTrigger getTrigger() {
+		return TRIGGER;
+	}
+
+	/**
+	 * Apply the FPP rule at the given place, if possible. The rule applies if the
+	 * place has a sibling with the same inputs and outputs. As the sibling shares
+	 * an input or output with the place, the sibling is a neighbor of a neighbor.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		return reduce((Place) node, batch.getNet().getPlaces(), false, sacredNodes, placeMap, marking,
+				new HashMap<Place, HashSet<Arc>>(), new HashMap<Place, HashSet<Arc>>(), inputEdges, outputEdges,
+				batch);
+	}
+
+	/*
+	 * Apply the FPP rule at the given place, if possible. Its siblings are
+	 * searched among the given places if searchAll holds or if the place has
+	 * inputs nor outputs, and among the places that share an input or output
+	 * with it otherwise. The input and output arcs of places are taken from
+	 * inputMap and outputMap, and added to these if missing.
+	 */
+	private String reduce(Place place, Collection<Place> places, boolean searchAll,
+			Collection<PetrinetNode> sacredNodes, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<Place, HashSet<Arc>> inputMap, Map<Place, HashSet<Arc>> outputMap,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch) {
+		HashSet<Arc> inputArcs = getArcs(place, inputMap, inputEdges);
+		HashSet<Arc> outputArcs = getArcs(place, outputMap, outputEdges);
+		if (inputArcs == null || outputArcs == null) {
+			return null;
+		}
+		/*
+		 * If all places are to be searched, or if place has inputs nor outputs,
+		 * select all places as sibling places.
+		 */
+		Collection<Place> siblingPlaces = places;
+		if (!searchAll && !inputArcs.isEmpty()) {
 			/*
-			 * Get input edges. Should all be regular.
+			 * Place has an input. Select sibling places as those places that share this input.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(place);
-			HashSet<Arc> inputArcs = new HashSet<Arc>();
-			ok = true;
-			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : preset) {
+			siblingPlaces = new HashSet<Place>();
+			Transition transition = (Transition) inputArcs.iterator().next().getSource();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : outputEdges.get(transition)) {
 				if (edge instanceof Arc) {
-					inputArcs.add((Arc) edge);
-				} else {
-					ok = false;
+					siblingPlaces.add((Place) ((Arc) edge).getTarget());
 				}
 			}
-			if (!ok) {
-				continue;
-			}
+		} else if (!searchAll && !outputArcs.isEmpty()) {
 			/*
-			 * Get output edges. Should all be regular.
+			 * Place has an output. Select sibling places as those places that share this output.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(place);
-			HashSet<Arc> outputArcs = new HashSet<Arc>();
-			ok = true;
-			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : postset) {
+			siblingPlaces = new HashSet<Place>();
+			Transition transition = (Transition) outputArcs.iterator().next().getTarget();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : inputEdges.get(transition)) {
 				if (edge instanceof Arc) {
-					outputArcs.add((Arc) edge);
-				} else {
-					ok = false;
+					siblingPlaces.add((Place) ((Arc) edge).getSource());
 				}
 			}
-			if (!ok) {
-				continue;
-			}
-			inputMap.put(place, inputArcs);
-			outputMap.put(place, outputArcs);
 		}
 		/*
-		 * Iterate over all places with only regular incident edges.
+		 * Checking for matching transitions.
 		 */
-		for (Place place : inputMap.keySet()) {
-			HashSet<Arc> inputArcs = inputMap.get(place);
-			HashSet<Arc> outputArcs = outputMap.get(place);
-			/*
-			 * If place has inputs nor outputs, select all places as sibling places.
-			 */
-			Set<Place> siblingPlaces = inputMap.keySet();
-			if (!inputArcs.isEmpty()) {
-				/*
-				 * Place has an input. Select sibling places as those places that share this input.
-				 */
-				siblingPlaces = new HashSet<Place>();
-				Transition transition = (Transition) inputArcs.iterator().next().getSource();
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : outputEdges.get(transition)) {
-					if (edge instanceof Arc) {
-						siblingPlaces.add((Place) ((Arc) edge).getTarget());
+		for (Place siblingPlace : siblingPlaces) {
+			if (siblingPlace == place) {
+				continue;
+			}
+			HashSet<Arc> siblingInputArcs = getArcs(siblingPlace, inputMap, inputEdges);
+			HashSet<Arc> siblingOutputArcs = getArcs(siblingPlace, outputMap, outputEdges);
+			if (siblingInputArcs == null || siblingOutputArcs == null) {
+				continue;
+			}
+			if (siblingInputArcs.size() != inputArcs.size()) {
+				continue;
+			}
+			if (siblingOutputArcs.size() != outputArcs.size()) {
+				continue;
+			}
+			boolean equal = true;
+			boolean found;
+			for (Arc arc : inputArcs) {
+				if (equal) {
+					found = false;
+					for (Arc siblingArc : siblingInputArcs) {
+						if ((arc.getSource() == siblingArc.getSource())
+								&& (arc.getWeight() == siblingArc.getWeight())) {
+							found = true;
+						}
 					}
-				}
-			} else if (!outputArcs.isEmpty()) {
-				/*
-				 * Place has an output. Select sibling places as those places that share this output.
-				 */
-				siblingPlaces = new HashSet<Place>();
-				Transition transition = (Transition) outputArcs.iterator().next().getTarget();
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : inputEdges.get(transition)) {
-					if (edge instanceof Arc) {
-						siblingPlaces.add((Place) ((Arc) edge).getSource());
+					if (!found) {
+						equal = false;
 					}
 				}
 			}
-			/*
-			 * Checking for matching transitions.
-			 */
-			for (Place siblingPlace : inputMap.keySet()) {
-				if (siblingPlace == place) {
-					continue;
-				}
-				HashSet<Arc> siblingInputArcs = inputMap.get(siblingPlace);
-				HashSet<Arc> siblingOutputArcs = outputMap.get(siblingPlace);
-				if (siblingInputArcs.size() != inputArcs.size()) {
-					continue;
-				}
-				if (siblingOutputArcs.size() != outputArcs.size()) {
-					continue;
-				}
-				boolean equal = true;
-				boolean found;
-				for (Arc arc : inputArcs) {
-					if (equal) {
-						found = false;
-						for (Arc siblingArc : siblingInputArcs) {
-							if ((arc.getSource() == siblingArc.getSource())
-									&& (arc.getWeight() == siblingArc.getWeight())) {
-								found = true;
-							}
-						}
-						if (!found) {
-							equal = false;
+			for (Arc arc : outputArcs) {
+				if (equal) {
+					found = false;
+					for (Arc siblingArc : siblingOutputArcs) {
+						if ((arc.getTarget() == siblingArc.getTarget())
+								&& (arc.getWeight() == siblingArc.getWeight())) {
+							found = true;
 						}
 					}
-				}
-				for (Arc arc : outputArcs) {
-					if (equal) {
-						found = false;
-						for (Arc siblingArc : siblingOutputArcs) {
-							if ((arc.getTarget() == siblingArc.getTarget())
-									&& (arc.getWeight() == siblingArc.getWeight())) {
-								found = true;
-							}
-						}
-						if (!found) {
-							equal = false;
-						}
+					if (!found) {
+						equal = false;
 					}
 				}
-				if (equal) {
+			}
+			if (equal) {
+				/*
+				 * Found a sibling with identical inputs and outputs. Remove
+				 * either the sibling or the place.
+				 */
+				if (!sacredNodes.contains(siblingPlace)
+						&& (marking.occurrences(siblingPlace) >= marking.occurrences(place))) {
+					String log = "<fpp siblingPlace=\"" + siblingPlace.getLabel() + "\"/>";
 					/*
-					 * Found a sibling with identical inputs and outputs. Remove
-					 * either the sibling or the place.
+					 * Sibling is not sacred. remove it. First, update the
+					 * place map.
 					 */
-					if (!sacredNodes.contains(siblingPlace)
-							&& (marking.occurrences(siblingPlace) >= marking.occurrences(place))) {
-						String log = "<fpp siblingPlace=\"" + siblingPlace.getLabel() + "\"/>";
-						/*
-						 * Sibling is not sacred. remove it. First, update the
-						 * place map.
-						 */
-						for (Place p : placeMap.keySet()) {
-							if (placeMap.get(p) == siblingPlace) {
-								placeMap.put(p, place);
-							}
-							MurataUtils.resetPlace(marking, siblingPlace);
-							net.removePlace(siblingPlace);
-						}
-						return log; // The sibling has been removed.
-					} else if (!sacredNodes.contains(place)
-							&& (marking.occurrences(place) >= marking.occurrences(siblingPlace))) {
-						String log = "<fpp place=\"" + place.getLabel() + "\"/>";
-						/*
-						 * Place is not sacred. Remove it. First, update the
-						 * place map.
-						 */
-						for (Place p : placeMap.keySet()) {
-							if (placeMap.get(p) == place) {
-								placeMap.put(p, siblingPlace);
-							}
-							MurataUtils.resetPlace(marking, place);
-							net.removePlace(place);
+					for (Place p : placeMap.keySet()) {
+						if (placeMap.get(p) == siblingPlace) {
+							placeMap.put(p, place);
 						}
-						return log; // The place has been removed.
 					}
+					MurataUtils.resetPlace(marking, siblingPlace);
+					batch.removePlace(siblingPlace);
+					return log; // The sibling has been removed.
+				} else if (!sacredNodes.contains(place)
+						&& (marking.occurrences(place) >= marking.occurrences(siblingPlace))) {
+					String log = "<fpp place=\"" + place.getLabel() + "\"/>";
 					/*
-					 * Both are sacred. Leave them.
+					 * Place is not sacred. Remove it. First, update the
+					 * place map.
 					 */
+					for (Place p : placeMap.keySet()) {
+						if (placeMap.get(p) == place) {
+							placeMap.put(p, siblingPlace);
+						}
+					}
+					MurataUtils.resetPlace(marking, place);
+					batch.removePlace(place);
+					return log; // The place has been removed.
 				}
+				/*
+				 * Both are sacred. Leave them.
+				 */
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * The arcs of the given place from the given map, or from the given edges
+	 * if not in the map yet. Null if some edge is not a regular arc, which is
+	 * not added to the map.
+	 */
+	private HashSet<Arc> getArcs(Place place, Map<Place, HashSet<Arc>> map,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> edges) {
+		HashSet<Arc> arcs = map.get(place);
+		if (arcs == null) {
+			arcs = getArcs(edges.get(place));
+			if (arcs != null) {
+				map.put(place, arcs);
+			}
+		}
+		return arcs;
+	}
+
+	/*
+	 * The given edges as arcs, or null if some edge is not a regular arc.
+	 */
+	private HashSet<Arc> getArcs(Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> edges) {
+		HashSet<Arc> arcs = new HashSet<Arc>();
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : edges) {
+			if (!(edge instanceof Arc)) {
+				return null;
+			}
+			arcs.add((Arc) edge);
+		}
+		return arcs;
+	}
+
 }
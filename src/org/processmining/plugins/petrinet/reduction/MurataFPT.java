@@ -16,6 +16,12 @@ import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataFPT extends MurataRule {
 
+	/*
+	 * Any transition may have a sibling.
+	 */
+	private static final MurataTrigger TRIGGER = MurataTrigger.transition(0, MurataTrigger.ANY, 0,
+			MurataTrigger.ANY);
+
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking) {
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, new MurataParameters());
@@ -24,25 +30,33 @@ public class MurataFPT extends MurataRule {
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, new MurataParameters());
 	}
 
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges, 
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges, 
-			MurataParameters parameters) {
+			MurataBatch batch, MurataParameters parameters) {
 		HashMap<Transition, HashSet<Arc>> inputMap = new HashMap<Transition, HashSet<Arc>>();
 		HashMap<Transition, HashSet<Arc>> outputMap = new HashMap<Transition, HashSet<Arc>>();
 		/*
@@ -50,173 +64,222 @@ public class MurataFPT extends MurataRule {
 		 * incident edges regular.
 		 */
 		for (Transition transition : net.getTransitions()) {
-			boolean ok;
+			HashSet<Arc> inputArcs = getArcs(inputEdges.get(transition));
+			HashSet<Arc> outputArcs = getArcs(outputEdges.get(transition));
+			if (inputArcs != null && outputArcs != null) {
+				inputMap.put(transition, inputArcs);
+				outputMap.put(transition, outputArcs);
+			}
+		}
+		/*
+		 * Iterate over all transitions with only regular incident edges. The
+		 * order in which this finds siblings determines the result of the
+		 * default reduction.
+		 */
+		for (Transition transition : inputMap.keySet()) {
+			String log = reduce(transition, inputMap.keySet(), sacredNodes, transitionMap, inputMap, outputMap,
+					inputEdges, outputEdges, batch, parameters);
+			if (log != null) {
+				return log;
+			}
+		}
+		return null;
+	}
+
+	public MurataTrigger getTrigger() {
+		return TRIGGER;
+	}
+
+	/**
+	 * Apply the FPT rule at the given transition, if possible. The rule applies if the
+	 * transition has a sibling with the same inputs and outputs. As the sibling shares
+	 * an input or output with the transition, the sibling is a neighbor of a neighbor.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		return reduce((Transition) node, batch.getNet().getTransitions(), sacredNodes, transitionMap,
+				new HashMap<Transition, HashSet<Arc>>(), new HashMap<Transition, HashSet<Arc>>(), inputEdges,
+				outputEdges, batch, parameters);
+	}
+
+	/*
+	 * Apply the FPT rule at the given transition, if possible. If the
+	 * transition has inputs nor outputs, its siblings are searched among the
+	 * given transitions. The input and output arcs of transitions are taken
+	 * from inputMap and outputMap, and added to these if missing.
+	 */
+	private String reduce(Transition transition, Collection<Transition> transitions,
+			Collection<PetrinetNode> sacredNodes, HashMap<Transition, Transition> transitionMap,
+			Map<Transition, HashSet<Arc>> inputMap, Map<Transition, HashSet<Arc>> outputMap,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		HashSet<Arc> inputArcs = getArcs(transition, inputMap, inputEdges);
+		HashSet<Arc> outputArcs = getArcs(transition, outputMap, outputEdges);
+		if (inputArcs == null || outputArcs == null) {
+			return null;
+		}
+		/*
+		 * If transition has inputs nor outputs, select all transitions as sibling transitions.
+		 */
+		Collection<Transition> siblingTransitions = transitions;
+		if (!inputArcs.isEmpty()) {
 			/*
-			 * Get input edges. Should all be regular.
+			 * Transition has an input. Select sibling transitions as those transitions that share this input.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(transition);
-			HashSet<Arc> inputArcs = new HashSet<Arc>();
-			ok = true;
-			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : preset) {
+			siblingTransitions = new HashSet<Transition>();
+			Place place = (Place) inputArcs.iterator().next().getSource();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : outputEdges.get(place)) {
 				if (edge instanceof Arc) {
-					inputArcs.add((Arc) edge);
-				} else {
-					ok = false;
+					siblingTransitions.add((Transition) ((Arc) edge).getTarget());
 				}
 			}
-			if (!ok) {
-				continue;
-			}
+		} else if (!outputArcs.isEmpty()) {
 			/*
-			 * Get output edges. Should all be regular.
+			 * Transition has an output. Select sibling transitions as those transitions that share this output.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(transition);
-			HashSet<Arc> outputArcs = new HashSet<Arc>();
-			ok = true;
-			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : postset) {
+			siblingTransitions = new HashSet<Transition>();
+			Place place = (Place) outputArcs.iterator().next().getTarget();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : inputEdges.get(place)) {
 				if (edge instanceof Arc) {
-					outputArcs.add((Arc) edge);
-				} else {
-					ok = false;
+					siblingTransitions.add((Transition) ((Arc) edge).getSource());
 				}
 			}
-			if (!ok) {
-				continue;
-			}
-			inputMap.put(transition, inputArcs);
-			outputMap.put(transition, outputArcs);
 		}
+		
 		/*
-		 * Iterate over all transitions with only regular incident edges.
+		 * Checking for matching transitions.
 		 */
-		for (Transition transition : inputMap.keySet()) {
-			HashSet<Arc> inputArcs = inputMap.get(transition);
-			HashSet<Arc> outputArcs = outputMap.get(transition);
-			/*
-			 * If transition has inputs nor outputs, select all transitions as sibling transitions.
-			 */
-			Set<Transition> siblingTransitions = inputMap.keySet();
-			if (!inputArcs.isEmpty()) {
-				/*
-				 * Transition has an input. Select sibling transitions as those transitions that share this input.
-				 */
-				siblingTransitions = new HashSet<Transition>();
-				Place place = (Place) inputArcs.iterator().next().getSource();
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : outputEdges.get(place)) {
-					if (edge instanceof Arc) {
-						siblingTransitions.add((Transition) ((Arc) edge).getTarget());
+		for (Transition siblingTransition : siblingTransitions) {
+			if (siblingTransition == transition) {
+				continue;
+			}
+			HashSet<Arc> siblingInputArcs = getArcs(siblingTransition, inputMap, inputEdges);
+			HashSet<Arc> siblingOutputArcs = getArcs(siblingTransition, outputMap, outputEdges);
+			if (siblingInputArcs == null || siblingOutputArcs == null) {
+				continue;
+			}
+			if (siblingInputArcs.size() != inputArcs.size()) {
+				continue;
+			}
+			if (siblingOutputArcs.size() != outputArcs.size()) {
+				continue;
+			}
+			boolean equal = true;
+			boolean found;
+			for (Arc arc : inputArcs) {
+				if (equal) {
+					found = false;
+					for (Arc siblingArc : siblingInputArcs) {
+						if ((arc.getSource() == siblingArc.getSource())
+								&& (arc.getWeight() == siblingArc.getWeight())) {
+							found = true;
+						}
 					}
-				}
-			} else if (!outputArcs.isEmpty()) {
-				/*
-				 * Transition has an output. Select sibling transitions as those transitions that share this output.
-				 */
-				siblingTransitions = new HashSet<Transition>();
-				Place place = (Place) outputArcs.iterator().next().getTarget();
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : inputEdges.get(place)) {
-					if (edge instanceof Arc) {
-						siblingTransitions.add((Transition) ((Arc) edge).getSource());
+					if (!found) {
+						equal = false;
 					}
 				}
 			}
-			
-			/*
-			 * Checking for matching transitions.
-			 */
-			for (Transition siblingTransition : siblingTransitions) {
-				if (siblingTransition == transition) {
-					continue;
-				}
-				HashSet<Arc> siblingInputArcs = inputMap.get(siblingTransition);
-				HashSet<Arc> siblingOutputArcs = outputMap.get(siblingTransition);
-				if (siblingInputArcs.size() != inputArcs.size()) {
-					continue;
-				}
-				if (siblingOutputArcs.size() != outputArcs.size()) {
-					continue;
-				}
-				boolean equal = true;
-				boolean found;
-				for (Arc arc : inputArcs) {
-					if (equal) {
-						found = false;
-						for (Arc siblingArc : siblingInputArcs) {
-							if ((arc.getSource() == siblingArc.getSource())
-									&& (arc.getWeight() == siblingArc.getWeight())) {
-								found = true;
-							}
-						}
-						if (!found) {
-							equal = false;
+			for (Arc arc : outputArcs) {
+				if (equal) {
+					found = false;
+					for (Arc siblingArc : siblingOutputArcs) {
+						if ((arc.getTarget() == siblingArc.getTarget())
+								&& (arc.getWeight() == siblingArc.getWeight())) {
+							found = true;
 						}
 					}
-				}
-				for (Arc arc : outputArcs) {
-					if (equal) {
-						found = false;
-						for (Arc siblingArc : siblingOutputArcs) {
-							if ((arc.getTarget() == siblingArc.getTarget())
-									&& (arc.getWeight() == siblingArc.getWeight())) {
-								found = true;
-							}
-						}
-						if (!found) {
-							equal = false;
-						}
+					if (!found) {
+						equal = false;
 					}
 				}
-				if (equal) {
+			}
+			if (equal) {
+				/*
+				 * Found a sibling with identical inputs and outputs. Remove
+				 * either the sibling or the transition, if allowed.
+				 */
+				if (!parameters.isAllowFPTSacredNode()) {
 					/*
-					 * Found a sibling with identical inputs and outputs. Remove
-					 * either the sibling or the transition, if allowed.
+					 * Check whether a sacred nodes is involved.
 					 */
-					if (!parameters.isAllowFPTSacredNode()) {
+					if (sacredNodes.contains(siblingTransition) || sacredNodes.contains(transition)) {
 						/*
-						 * Check whether a sacred nodes is involved.
-						 */
-						if (sacredNodes.contains(siblingTransition) || sacredNodes.contains(transition)) {
-							/*
-							 * Yes, it is. Not allowed. 
-							 */
-							continue;
-						}
-						/*
-						 * No, it is not. Proceed to remove one.
+						 * Yes, it is. Not allowed. 
 						 */
+						continue;
 					}
-					if (!sacredNodes.contains(siblingTransition)) {
-						if (!sacredNodes.contains(transition)) {
-							String log = "<fpt siblingTransition=\"" + siblingTransition.getLabel() + "\"/>";
-							/*
-							 * The sibling is not sacred. Remove it. First,
-							 * update the transition map.
-							 */
-							for (Transition t : transitionMap.keySet()) {
-								if (transitionMap.get(t) == siblingTransition) {
-									transitionMap.put(t, transition);
-								}
-								net.removeTransition(siblingTransition);
-							}
-							return log; // The sibling has been removed.
-						}
-					} else if (!sacredNodes.contains(transition)) {
-						String log = "<fpt transition=\"" + transition.getLabel() + "\"/>";
+					/*
+					 * No, it is not. Proceed to remove one.
+					 */
+				}
+				if (!sacredNodes.contains(siblingTransition)) {
+					if (!sacredNodes.contains(transition)) {
+						String log = "<fpt siblingTransition=\"" + siblingTransition.getLabel() + "\"/>";
 						/*
-						 * The place is not sacred. Remove it. First, update the
-						 * transition map.
+						 * The sibling is not sacred. Remove it. First,
+						 * update the transition map.
 						 */
 						for (Transition t : transitionMap.keySet()) {
-							if (transitionMap.get(t) == transition) {
-								transitionMap.put(t, siblingTransition);
+							if (transitionMap.get(t) == siblingTransition) {
+								transitionMap.put(t, transition);
 							}
-							net.removeTransition(transition);
 						}
-						return log; // The transition has been removed.
+						batch.removeTransition(siblingTransition);
+						return log; // The sibling has been removed.
+					}
+				} else if (!sacredNodes.contains(transition)) {
+					String log = "<fpt transition=\"" + transition.getLabel() + "\"/>";
+					/*
+					 * The place is not sacred. Remove it. First, update the
+					 * transition map.
+					 */
+					for (Transition t : transitionMap.keySet()) {
+						if (transitionMap.get(t) == transition) {
+							transitionMap.put(t, siblingTransition);
+						}
 					}
+					batch.removeTransition(transition);
+					return log; // The transition has been removed.
 				}
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * The arcs of the given transition from the given map, or from the given
+	 * edges if not in the map yet. Null if some edge is not a regular arc,
+	 * which is not added to the map.
+	 */
+	private HashSet<Arc> getArcs(Transition transition, Map<Transition, HashSet<Arc>> map,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> edges) {
+		HashSet<Arc> arcs = map.get(transition);
+		if (arcs == null) {
+			arcs = getArcs(edges.get(transition));
+			if (arcs != null) {
+				map.put(transition, arcs);
+			}
+		}
+		return arcs;
+	}
+
+	/*
+	 * The given edges as arcs, or null if some edge is not a regular arc.
+	 */
+	private HashSet<Arc> getArcs(Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> edges) {
+		HashSet<Arc> arcs = new HashSet<Arc>();
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : edges) {
+			if (!(edge instanceof Arc)) {
+				return null;
+			}
+			arcs.add((Arc) edge);
+		}
+		return arcs;
+	}
+
 }
@@ -16,6 +16,11 @@ import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataFSP extends MurataRule {
 
+	/*
+	 * A series place is found at a transition with one input and one output.
+	 */
+	private static final MurataTrigger TRIGGER = MurataTrigger.transition(1, 1, 1, 1);
+
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking) {
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, new MurataParameters());
@@ -24,16 +29,9 @@ public class MurataFSP extends MurataRule {
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges,
 				new MurataParameters());
@@ -44,165 +42,199 @@ public class MurataFSP extends MurataRule {
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 		/*
 		 * Iterate over all transitions.
 		 */
 		for (Transition transition : net.getTransitions()) {
-			if (sacredNodes.contains(transition)) {
-				continue; // The transition is sacred.
+			String log = tryAt(transition, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, batch,
+					parameters);
+			if (log != null) {
+				return log;
 			}
+		}
+		return null;
+	}
+
+	public MurataTrigger getTrigger() {
+		return TRIGGER;
+	}
+
+	/**
+	 * Apply the FSP rule at the given transition, if possible.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		Transition transition = (Transition) node;
+		if (sacredNodes.contains(transition)) {
+			return null; // The transition is sacred.
+		}
+		/*
+		 * Check the input arc. There should be only one, it should be
+		 * regular, and it weight should be one.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges
+				.get(transition);
+		if (preset.size() != 1) {
+			return null;
+		}
+		PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc inputArc = (Arc) edge;
+		if (inputArc.getWeight() != 1) {
+			return null;
+		}
+		/*
+		 * Get the input place. Should have only the place as output.
+		 */
+		Place inputPlace = (Place) inputArc.getSource();
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges
+				.get(inputPlace);
+		if (postset.size() != 1) {
+			return null;
+		}
+		/*
+		 * Check the output arc. There should be only one, it should be
+		 * regular, and its weight should be one.
+		 */
+		postset = outputEdges.get(transition);
+		if (postset.size() != 1) {
+			return null;
+		}
+		edge = postset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc outputArc = (Arc) edge;
+		if (outputArc.getWeight() != 1) {
+			return null;
+		}
+		/*
+		 * Get the output transition. No additional requirements.
+		 */
+		Place outputPlace = (Place) outputArc.getTarget();
+
+		if (inputPlace == outputPlace) {
+			return null;
+		}
+
+		/*
+		 * Found a series place. Remove a place (input or output) that is
+		 * not sacred.
+		 */
+		if (!sacredNodes.contains(inputPlace)) {
+			String log = "<fsp inputPlace=\"" + inputPlace.getLabel() + "\" transition=\"" + transition.getLabel()
+					+ "\"/>";
 			/*
-			 * Check the input arc. There should be only one, it should be
-			 * regular, and it weight should be one.
+			 * The input place is not sacred. Remove it. First, update the
+			 * mappings.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges
-					.get(transition);
-			if (preset.size() != 1) {
-				continue;
+			HashSet<Transition> removeTransitions = new HashSet<Transition>();
+			for (Transition t : transitionMap.keySet()) {
+				if (transitionMap.get(t) == transition) {
+					removeTransitions.add(t);
+				}
 			}
-			PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
+			for (Transition t : removeTransitions) {
+				transitionMap.remove(t);
 			}
-			Arc inputArc = (Arc) edge;
-			if (inputArc.getWeight() != 1) {
-				continue;
+			for (Place p : placeMap.keySet()) {
+				if (placeMap.get(p) == inputPlace) {
+					placeMap.put(p, outputPlace);
+				}
 			}
 			/*
-			 * Get the input place. Should have only the place as output.
+			 * Move tokens from input place to output place.
+			 */
+			int tokens = marking.occurrences(inputPlace);
+			marking.add(outputPlace, tokens);
+			MurataUtils.resetPlace(marking, inputPlace);
+			/*
+			 * Also, transfer any input edge from the input place to the
+			 * output place.
 			 */
-			Place inputPlace = (Place) inputArc.getSource();
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges
-					.get(inputPlace);
-			if (postset.size() != 1) {
-				continue;
+			preset = inputEdges.get(inputPlace);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					batch.addArc(transferArc.getSource(), outputPlace, transferArc.getWeight());
+				}
 			}
+			batch.removeTransition(transition);
+			batch.removePlace(inputPlace);
+			return log; // A place and a transition have been removed.
+		} else if (!sacredNodes.contains(outputPlace)) {
+			String log = "<fsp transition=\"" + transition.getLabel() + "\" outputPlace" + outputPlace.getLabel()
+					+ "\"/>";
 			/*
-			 * Check the output arc. There should be only one, it should be
-			 * regular, and its weight should be one.
+			 * The output place is not sacred. Remove it. First, update the
+			 * mappings.
 			 */
-			postset = outputEdges.get(transition);
-			if (postset.size() != 1) {
-				continue;
+			HashSet<Transition> removeTransitions = new HashSet<Transition>();
+			for (Transition t : transitionMap.keySet()) {
+				if (transitionMap.get(t) == transition) {
+					removeTransitions.add(t);
+				}
 			}
-			edge = postset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
+			for (Transition t : removeTransitions) {
+				transitionMap.remove(t);
 			}
-			Arc outputArc = (Arc) edge;
-			if (outputArc.getWeight() != 1) {
-				continue;
+			for (Place p : placeMap.keySet()) {
+				if (placeMap.get(p) == outputPlace) {
+					placeMap.put(p, inputPlace);
+				}
 			}
 			/*
-			 * Get the output transition. No additional requirements.
+			 * Move tokens form output place to input place.
 			 */
-			Place outputPlace = (Place) outputArc.getTarget();
-
-			if (inputPlace == outputPlace) {
-				continue;
-			}
-
+			int tokens = marking.occurrences(outputPlace);
+			marking.add(inputPlace, tokens);
+			MurataUtils.resetPlace(marking, outputPlace);
 			/*
-			 * Found a series place. Remove a place (input or output) that is
-			 * not sacred.
+			 * Also, transfer any input edge from the output place to the
+			 * input place, and any output edge from the output place to the
+			 * input place.
 			 */
-			if (!sacredNodes.contains(inputPlace)) {
-				String log = "<fsp inputPlace=\"" + inputPlace.getLabel() + "\" transition=\"" + transition.getLabel()
-						+ "\"/>";
-				/*
-				 * The input place is not sacred. Remove it. First, update the
-				 * mappings.
-				 */
-				HashSet<Transition> removeTransitions = new HashSet<Transition>();
-				for (Transition t : transitionMap.keySet()) {
-					if (transitionMap.get(t) == transition) {
-						removeTransitions.add(t);
-					}
-				}
-				for (Transition t : removeTransitions) {
-					transitionMap.remove(t);
-				}
-				for (Place p : placeMap.keySet()) {
-					if (placeMap.get(p) == inputPlace) {
-						placeMap.put(p, outputPlace);
-					}
-				}
-				/*
-				 * Move tokens from input place to output place.
-				 */
-				int tokens = marking.occurrences(inputPlace);
-				marking.add(outputPlace, tokens);
-				MurataUtils.updateLabel(outputPlace, marking);
-				MurataUtils.resetPlace(marking, inputPlace);
-				/*
-				 * Also, transfer any input edge from the input place to the
-				 * output place.
-				 */
-				preset = inputEdges.get(inputPlace);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						MurataUtils.addArc(net, transferArc.getSource(), outputPlace, transferArc.getWeight());
-					}
-				}
-				net.removeTransition(transition);
-				net.removePlace(inputPlace);
-				return log; // A place and a transition have been removed.
-			} else if (!sacredNodes.contains(outputPlace)) {
-				String log = "<fsp transition=\"" + transition.getLabel() + "\" outputPlace" + outputPlace.getLabel()
-						+ "\"/>";
-				/*
-				 * The output place is not sacred. Remove it. First, update the
-				 * mappings.
-				 */
-				HashSet<Transition> removeTransitions = new HashSet<Transition>();
-				for (Transition t : transitionMap.keySet()) {
-					if (transitionMap.get(t) == transition) {
-						removeTransitions.add(t);
-					}
-				}
-				for (Transition t : removeTransitions) {
-					transitionMap.remove(t);
+			preset = inputEdges.get(outputPlace);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					batch.addArc(transferArc.getSource(), inputPlace, transferArc.getWeight());
 				}
-				for (Place p : placeMap.keySet()) {
-					if (placeMap.get(p) == outputPlace) {
-						placeMap.put(p, inputPlace);
-					}
-				}
-				/*
-				 * Move tokens form output place to input place.
-				 */
-				int tokens = marking.occurrences(outputPlace);
-				marking.add(inputPlace, tokens);
-				MurataUtils.updateLabel(inputPlace, marking);
-				MurataUtils.resetPlace(marking, outputPlace);
-				/*
-				 * Also, transfer any input edge from the output place to the
-				 * input place, and any output edge from the output place to the
-				 * input place.
-				 */
-				preset = inputEdges.get(outputPlace);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						MurataUtils.addArc(net, transferArc.getSource(), inputPlace, transferArc.getWeight());
-					}
-				}
-				postset = outputEdges.get(outputPlace);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : postset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						MurataUtils.addArc(net, inputPlace, transferArc.getTarget(), transferArc.getWeight());
-					}
+			}
+			postset = outputEdges.get(outputPlace);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : postset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					batch.addArc(inputPlace, transferArc.getTarget(), transferArc.getWeight());
 				}
-				net.removeTransition(transition);
-				net.removePlace(outputPlace);
-				return log; // A place and a transition have been removed.
 			}
-			/*
-			 * Both are sacred. Leave them.
-			 */
+			batch.removeTransition(transition);
+			batch.removePlace(outputPlace);
+			return log; // A place and a transition have been removed.
 		}
+		/*
+		 * Both are sacred. Leave them.
+		 */
 		return null;
 	}
 
@@ -15,6 +15,11 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Transition
 import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataFST extends MurataRule {
+
+	/*
+	 * A series transition is found at a place with one input and one output.
+	 */
+	private static final MurataTrigger TRIGGER = MurataTrigger.place(1, 1, 1, 1);
 	/**
 	 * Apply the FST rule once, if possible.
 	 * 
@@ -39,16 +44,9 @@ public class MurataFST extends MurataRule {
 	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking,
 			MurataParameters parameters) {
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = new HashMap<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>>();
-		for (PetrinetNode node : net.getNodes()) {
-			inputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-			outputEdges.put(node, new HashSet<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
-			outputEdges.get(edge.getSource()).add(edge);
-			inputEdges.get(edge.getTarget()).add(edge);
-		}
+		MurataAdjacency adjacency = new MurataAdjacency(net);
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges = adjacency.getInputEdges();
+		Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges = adjacency.getOutputEdges();
 		return reduce(net, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, parameters);
 	}
 
@@ -57,188 +55,222 @@ public class MurataFST extends MurataRule {
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
 			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
 			MurataParameters parameters) {
+		MurataMarking murataMarking = new MurataMarking(net, marking);
+		MurataBatch batch = new MurataBatch(net);
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, murataMarking, inputEdges, outputEdges,
+				batch, parameters);
+		batch.apply();
+		MurataUtils.updateLabels(net, murataMarking);
+		murataMarking.update(marking);
+		return log;
+	}
+
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
 		/*
 		 * Iterate over all places.
 		 */
 		for (Place place : net.getPlaces()) {
-			/*
-			 * Check whether the place is sacred. Should not be.
-			 */
-			if (sacredNodes.contains(place)) {
-				continue;
+			String log = tryAt(place, sacredNodes, transitionMap, placeMap, marking, inputEdges, outputEdges, batch,
+					parameters);
+			if (log != null) {
+				return log;
 			}
+		}
+		return null;
+	}
+
+	public MurataTrigger getTrigger() {
+		return TRIGGER;
+	}
+
+	/**
+	 * Apply the FST rule at the given place, if possible.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		Place place = (Place) node;
+		/*
+		 * Check whether the place is sacred. Should not be.
+		 */
+		if (sacredNodes.contains(place)) {
+			return null;
+		}
+		/*
+		 * Check the input arc. There should be only one and it should be
+		 * regular.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(place);
+		if (preset.size() != 1) {
+			return null;
+		}
+		PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc inputArc = (Arc) edge;
+		int weight = inputArc.getWeight();
+		/*
+		 * Get the input transition. No additional requirements.
+		 */
+		Transition inputTransition = (Transition) inputArc.getSource();
+		/*
+		 * Check the output arc. There should be only one, it should be
+		 * regular, and its weight should be identical.
+		 */
+		Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(place);
+		if (postset.size() != 1) {
+			return null;
+		}
+		edge = postset.iterator().next();
+		if (!(edge instanceof Arc)) {
+			return null;
+		}
+		Arc outputArc = (Arc) edge;
+		if (outputArc.getWeight() != weight) {
+			return null;
+		}
+		/*
+		 * Get the output transition. Should have only the place as input.
+		 */
+		Transition outputTransition = (Transition) outputArc.getTarget();
+		preset = inputEdges.get(outputTransition);
+		if (preset.size() != 1) {
+			return null;
+		}
+
+		if (inputTransition == outputTransition) {
+			return null;
+		}
+
+		/*
+		 * Found a series transition. Remove if not sacred.
+		 */
+		if (!sacredNodes.contains(outputTransition)) {
+			String log = "<fst place=\"" + place.getLabel() + "\" outputTransition=\"" + outputTransition.getLabel()
+					+ "\"/>";
 			/*
-			 * Check the input arc. There should be only one and it should be
-			 * regular.
+			 * Output transition not sacred. Remove it. First, update the
+			 * maps.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> preset = inputEdges.get(place);
-			if (preset.size() != 1) {
-				continue;
+			for (Transition t : transitionMap.keySet()) {
+				if (transitionMap.get(t) == outputTransition) {
+					transitionMap.put(t, inputTransition);
+				}
+			}
+			HashSet<Place> removePlaces = new HashSet<Place>();
+			for (Place p : placeMap.keySet()) {
+				if (placeMap.get(p) == place) {
+					removePlaces.add(p);
+				}
 			}
-			PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge = preset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
+			for (Place p : removePlaces) {
+				placeMap.remove(p);
 			}
-			Arc inputArc = (Arc) edge;
-			int weight = inputArc.getWeight();
 			/*
-			 * Get the input transition. No additional requirements.
+			 * Transfer tokens from place to postset of output transition.
+			 * Also, transfer outgoing edges from output transition to input
+			 * transition.
 			 */
-			Transition inputTransition = (Transition) inputArc.getSource();
+			postset = outputEdges.get(outputTransition);
+			int tokens = marking.occurrences(place);
+			int outputFirings = tokens / weight;
+			MurataUtils.resetPlace(marking, place);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : postset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					batch.addArc(inputTransition, transferArc.getTarget(), transferArc.getWeight());
+					Place outputPlace = (Place) transferArc.getTarget();
+					marking.add(outputPlace, outputFirings * transferArc.getWeight());
+				}
+			}
+			batch.removePlace(place);
+			batch.removeTransition(outputTransition);
+			return log; // Removed a place and a transition.
+		} else if (!sacredNodes.contains(inputTransition)
+				&& (outputTransition.isInvisible() || (outputEdges.get(inputTransition).size() == 1))
+		/* && marking.occurrences(place) == 0 */) {
+			String log = "<fst inputTransition=\"" + inputTransition.getLabel() + "\" place=\"" + place.getLabel()
+					+ "\"/>";
 			/*
-			 * Check the output arc. There should be only one, it should be
-			 * regular, and its weight should be identical.
+			 * Input transition is not sacred and either the output
+			 * transition is invisible or the input transition has only the
+			 * place as output. Perhaps some explanation of this last
+			 * requirement is in place. Assume that the output transition is
+			 * visible, that is, it has a label, and that the input
+			 * transition has additional outputs. Then the paths starting at
+			 * these additional outputs do not include the output
+			 * transition, whereas after reduction they would. Therefore, if
+			 * the input transition has additional outputs, then the output
+			 * transition must be invisible.
+			 * 
+			 * Remove the input transition. First, update the maps.
 			 */
-			Collection<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> postset = outputEdges.get(place);
-			if (postset.size() != 1) {
-				continue;
+			for (Transition t : transitionMap.keySet()) {
+				if (transitionMap.get(t) == inputTransition) {
+					transitionMap.put(t, outputTransition);
+				}
 			}
-			edge = postset.iterator().next();
-			if (!(edge instanceof Arc)) {
-				continue;
+			HashSet<Place> removePlaces = new HashSet<Place>();
+			for (Place p : placeMap.keySet()) {
+				if (placeMap.get(p) == place) {
+					removePlaces.add(p);
+				}
 			}
-			Arc outputArc = (Arc) edge;
-			if (outputArc.getWeight() != weight) {
-				continue;
+			for (Place p : removePlaces) {
+				placeMap.remove(p);
 			}
 			/*
-			 * Get the output transition. Should have only the place as input.
+			 * Transfer tokens from place to preset of input transition.
 			 */
-			Transition outputTransition = (Transition) outputArc.getTarget();
-			preset = inputEdges.get(outputTransition);
-			if (preset.size() != 1) {
-				continue;
-			}
-
-			if (inputTransition == outputTransition) {
-				continue;
+			preset = inputEdges.get(inputTransition);
+			int tokens = marking.occurrences(place);
+			int inputFirings = tokens / weight;
+			MurataUtils.resetPlace(marking, place);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					Place inputPlace = (Place) transferArc.getSource();
+					marking.add(inputPlace, inputFirings * transferArc.getWeight());
+				}
 			}
-
 			/*
-			 * Found a series transition. Remove if not sacred.
+			 * Transfer incoming edges from the input transition to the
+			 * output transition.
 			 */
-			if (!sacredNodes.contains(outputTransition)) {
-				String log = "<fst place=\"" + place.getLabel() + "\" outputTransition=\"" + outputTransition.getLabel()
-						+ "\"/>";
-				/*
-				 * Output transition not sacred. Remove it. First, update the
-				 * maps.
-				 */
-				for (Transition t : transitionMap.keySet()) {
-					if (transitionMap.get(t) == outputTransition) {
-						transitionMap.put(t, inputTransition);
-					}
-				}
-				HashSet<Place> removePlaces = new HashSet<Place>();
-				for (Place p : placeMap.keySet()) {
-					if (placeMap.get(p) == place) {
-						removePlaces.add(p);
-					}
-				}
-				for (Place p : removePlaces) {
-					placeMap.remove(p);
-				}
-				/*
-				 * Transfer tokens from place to postset of output transition.
-				 * Also, transfer outgoing edges from output transition to input
-				 * transition.
-				 */
-				postset = outputEdges.get(outputTransition);
-				int tokens = marking.occurrences(place);
-				int outputFirings = tokens / weight;
-				MurataUtils.resetPlace(marking, place);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : postset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						MurataUtils.addArc(net, inputTransition, transferArc.getTarget(), transferArc.getWeight());
-						Place outputPlace = (Place) transferArc.getTarget();
-						marking.add(outputPlace, outputFirings * transferArc.getWeight());
-						MurataUtils.updateLabel(place, marking);
-					}
-				}
-				net.removePlace(place);
-				net.removeTransition(outputTransition);
-				return log; // Removed a place and a transition.
-			} else if (!sacredNodes.contains(inputTransition)
-					&& (outputTransition.isInvisible() || (outputEdges.get(inputTransition).size() == 1))
-			/* && marking.occurrences(place) == 0 */) {
-				String log = "<fst inputTransition=\"" + inputTransition.getLabel() + "\" place=\"" + place.getLabel()
-						+ "\"/>";
-				/*
-				 * Input transition is not sacred and either the output
-				 * transition is invisible or the input transition has only the
-				 * place as output. Perhaps some explanation of this last
-				 * requirement is in place. Assume that the output transition is
-				 * visible, that is, it has a label, and that the input
-				 * transition has additional outputs. Then the paths starting at
-				 * these additional outputs do not include the output
-				 * transition, whereas after reduction they would. Therefore, if
-				 * the input transition has additional outputs, then the output
-				 * transition must be invisible.
-				 * 
-				 * Remove the input transition. First, update the maps.
-				 */
-				for (Transition t : transitionMap.keySet()) {
-					if (transitionMap.get(t) == inputTransition) {
-						transitionMap.put(t, outputTransition);
-					}
-				}
-				HashSet<Place> removePlaces = new HashSet<Place>();
-				for (Place p : placeMap.keySet()) {
-					if (placeMap.get(p) == place) {
-						removePlaces.add(p);
-					}
+			preset = inputEdges.get(inputTransition);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					batch.addArc(transferArc.getSource(), outputTransition, transferArc.getWeight());
 				}
-				for (Place p : removePlaces) {
-					placeMap.remove(p);
-				}
-				/*
-				 * Transfer tokens from place to preset of input transition.
-				 */
-				preset = inputEdges.get(inputTransition);
-				int tokens = marking.occurrences(place);
-				int inputFirings = tokens / weight;
-				MurataUtils.resetPlace(marking, place);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						Place inputPlace = (Place) transferArc.getSource();
-						marking.add(inputPlace, inputFirings * transferArc.getWeight());
-						MurataUtils.updateLabel(inputPlace, marking);
-					}
-				}
-				/*
-				 * Transfer incoming edges from the input transition to the
-				 * output transition.
-				 */
-				preset = inputEdges.get(inputTransition);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : preset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						MurataUtils.addArc(net, transferArc.getSource(), outputTransition, transferArc.getWeight());
-					}
-				}
-				/*
-				 * Transfer outgoing edges from the input transition to the
-				 * output transition.
-				 */
-				postset = outputEdges.get(inputTransition);
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : postset) {
-					if (transferEdge instanceof Arc) {
-						Arc transferArc = (Arc) transferEdge;
-						MurataUtils.addArc(net, outputTransition, transferArc.getTarget(), transferArc.getWeight());
-					}
-				}
-				net.removePlace(place);
-				net.removeTransition(inputTransition);
-				return log; // Removed a place and a transition.
 			}
 			/*
-			 * Either both are sacred, or the output transition is sacred and
-			 * visible and the input transition has additional outgoing edges.
-			 * Any way, the reduction rule does not apply.
+			 * Transfer outgoing edges from the input transition to the
+			 * output transition.
 			 */
+			postset = outputEdges.get(inputTransition);
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> transferEdge : postset) {
+				if (transferEdge instanceof Arc) {
+					Arc transferArc = (Arc) transferEdge;
+					batch.addArc(outputTransition, transferArc.getTarget(), transferArc.getWeight());
+				}
+			}
+			batch.removePlace(place);
+			batch.removeTransition(inputTransition);
+			return log; // Removed a place and a transition.
 		}
+		/*
+		 * Either both are sacred, or the output transition is sacred and
+		 * visible and the input transition has additional outgoing edges.
+		 * Any way, the reduction rule does not apply.
+		 */
 		return null;
 	}
 
@@ -0,0 +1,369 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Undoes the reductions of a previous reduction that are affected by edits to
+ * the original net. The result is a net that contains the affected part of
+ * the edited net as is, and the unaffected part of the previous reduced net.
+ * Reducing this net yields a reduced net for the edited net.
+ * <p>
+ * The reductions do not record which nodes they involved. Instead, the
+ * affected part (the region) is derived from the mappings of the previous
+ * reduction. Starting from the edited nodes, the region is extended with (1)
+ * every node that was reduced into the same node as a node in the region, (2)
+ * every neighbor of a node in the region that was eliminated, and (3) every
+ * neighbor of a node in the region that was changed by some reduction. As a
+ * result, the nodes around the region are untouched by the previous
+ * reduction, and every reduction that did not involve the region remains
+ * valid.
+ */
+class MurataIncremental {
+
+	/*
+	 * The edited net, its sacred nodes, and the edits.
+	 */
+	private final MurataInput input;
+	private final MurataDelta delta;
+	/*
+	 * The previous reduced net and its mappings.
+	 */
+	private final Petrinet reducedNet;
+	private final Marking reducedMarking;
+	private final Map<Transition, Transition> previousTransitionMap;
+	private final Map<Place, Place> previousPlaceMap;
+	/*
+	 * The nodes of the previous reduced net, and for each of them the nodes
+	 * of the original net (before and after editing) mapped onto it.
+	 */
+	private final Set<PetrinetNode> reducedNodes;
+	private final Map<PetrinetNode, List<PetrinetNode>> preimages;
+	/*
+	 * The region in the edited net, and the nodes in the previous reduced net
+	 * the region (and the removed nodes) were mapped onto.
+	 */
+	private final Set<PetrinetNode> region;
+	private final Set<PetrinetNode> reducedRegion;
+
+	private Petrinet net;
+	private Marking marking;
+	private HashMap<Transition, Transition> transitionMap;
+	private HashMap<Place, Place> placeMap;
+	private HashSet<PetrinetNode> sacredNodes;
+
+	/**
+	 * Undoes the reductions affected by the given delta.
+	 *
+	 * @param input
+	 *            The input with the edited net.
+	 * @param previous
+	 *            The output of reducing the net before it was edited.
+	 * @param delta
+	 *            The edits.
+	 * @param maxRegion
+	 *            The maximal fraction of the nodes of the edited net the
+	 *            region may contain.
+	 * @return The net to reduce, or null if the region is too large.
+	 */
+	static MurataIncremental undo(MurataInput input, MurataOutput previous, MurataDelta delta, double maxRegion) {
+		MurataIncremental incremental = new MurataIncremental(input, previous, delta);
+		int size = input.getNet().getPlaces().size() + input.getNet().getTransitions().size();
+		if (!incremental.extend((int) (maxRegion * size)) || !incremental.create()) {
+			return null;
+		}
+		return incremental;
+	}
+
+	private MurataIncremental(MurataInput input, MurataOutput previous, MurataDelta delta) {
+		this.input = input;
+		this.delta = delta;
+		reducedNet = previous.getNet();
+		reducedMarking = previous.getMarking();
+		previousTransitionMap = previous.getTransitionMapping();
+		previousPlaceMap = previous.getPlaceMapping();
+		reducedNodes = new HashSet<PetrinetNode>(reducedNet.getNodes());
+		preimages = new HashMap<PetrinetNode, List<PetrinetNode>>();
+		List<PetrinetNode> originalNodes = new ArrayList<PetrinetNode>(input.getNet().getNodes());
+		originalNodes.addAll(delta.getRemovedNodes());
+		for (PetrinetNode node : originalNodes) {
+			PetrinetNode image = getImage(node);
+			if (image != null) {
+				List<PetrinetNode> nodes = preimages.get(image);
+				if (nodes == null) {
+					nodes = new ArrayList<PetrinetNode>(1);
+					preimages.put(image, nodes);
+				}
+				nodes.add(node);
+			}
+		}
+		region = new HashSet<PetrinetNode>();
+		reducedRegion = new HashSet<PetrinetNode>();
+		for (PetrinetNode node : delta.getRemovedNodes()) {
+			PetrinetNode image = getImage(node);
+			if (image != null) {
+				reducedRegion.add(image);
+			}
+		}
+	}
+
+	/*
+	 * The node the given node was reduced into, or null if it was eliminated
+	 * or did not exist.
+	 */
+	private PetrinetNode getImage(PetrinetNode node) {
+		PetrinetNode image = node instanceof Transition ? previousTransitionMap.get(node)
+				: previousPlaceMap.get(node);
+		return image != null && reducedNodes.contains(image) ? image : null;
+	}
+
+	/*
+	 * Extends the region from the edited nodes. Returns false if the region
+	 * gets too large.
+	 */
+	private boolean extend(int maxSize) {
+		Set<PetrinetNode> nodes = input.getNet().getNodes();
+		ArrayDeque<PetrinetNode> queue = new ArrayDeque<PetrinetNode>();
+		for (PetrinetNode node : delta.getTouchedNodes()) {
+			if (nodes.contains(node)) {
+				add(node, queue);
+			}
+		}
+		for (PetrinetNode image : new ArrayList<PetrinetNode>(reducedRegion)) {
+			for (PetrinetNode node : preimages.get(image)) {
+				if (nodes.contains(node)) {
+					add(node, queue);
+				}
+			}
+		}
+		while (!queue.isEmpty()) {
+			if (region.size() > maxSize) {
+				return false;
+			}
+			PetrinetNode node = queue.poll();
+			PetrinetNode image = getImage(node);
+			if (image != null) {
+				for (PetrinetNode preimage : preimages.get(image)) {
+					if (nodes.contains(preimage)) {
+						add(preimage, queue);
+					}
+				}
+			}
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : input.getNet()
+					.getInEdges(node)) {
+				if (!region.contains(edge.getSource()) && !isUntouched(edge.getSource())) {
+					add(edge.getSource(), queue);
+				}
+			}
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : input.getNet()
+					.getOutEdges(node)) {
+				if (!region.contains(edge.getTarget()) && !isUntouched(edge.getTarget())) {
+					add(edge.getTarget(), queue);
+				}
+			}
+		}
+		return region.size() <= maxSize;
+	}
+
+	private void add(PetrinetNode node, ArrayDeque<PetrinetNode> queue) {
+		if (region.add(node)) {
+			PetrinetNode image = getImage(node);
+			if (image != null) {
+				reducedRegion.add(image);
+			}
+			queue.add(node);
+		}
+	}
+
+	/*
+	 * Whether the given node outside the region was left untouched by the
+	 * previous reduction: it is the only node reduced into its image, it has
+	 * the same tokens, and it has the same arcs to nodes outside the region.
+	 */
+	private boolean isUntouched(PetrinetNode node) {
+		PetrinetNode image = getImage(node);
+		if (image == null || preimages.get(image).size() != 1) {
+			return false;
+		}
+		if (node instanceof Place
+				&& input.getMarking().occurrences(node) != reducedMarking.occurrences(image)) {
+			return false;
+		}
+		int arcs = 0;
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : input.getNet().getInEdges(node)) {
+			if (!region.contains(edge.getSource())) {
+				if (!hasArc(getImage(edge.getSource()), image, ((Arc) edge).getWeight())) {
+					return false;
+				}
+				arcs++;
+			}
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : input.getNet().getOutEdges(node)) {
+			if (!region.contains(edge.getTarget())) {
+				if (!hasArc(image, getImage(edge.getTarget()), ((Arc) edge).getWeight())) {
+					return false;
+				}
+				arcs++;
+			}
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : reducedNet.getInEdges(image)) {
+			if (!reducedRegion.contains(edge.getSource())) {
+				arcs--;
+			}
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : reducedNet.getOutEdges(image)) {
+			if (!reducedRegion.contains(edge.getTarget())) {
+				arcs--;
+			}
+		}
+		return arcs == 0;
+	}
+
+	private boolean hasArc(PetrinetNode source, PetrinetNode target, int weight) {
+		if (source == null || target == null) {
+			return false;
+		}
+		Arc arc = reducedNet.getArc(source, target);
+		return arc != null && arc.getWeight() == weight;
+	}
+
+	/*
+	 * Creates the net to reduce: the previous reduced net without the images
+	 * of the region, and the region itself. Returns false if an arc from the
+	 * region leads to a node that has no counterpart.
+	 */
+	private boolean create() {
+		Petrinet originalNet = input.getNet();
+		net = PetrinetFactory.newPetrinet(originalNet.getLabel() + " [Reduced]");
+		marking = new Marking();
+		Map<PetrinetNode, PetrinetNode> reducedCopies = new HashMap<PetrinetNode, PetrinetNode>();
+		Map<PetrinetNode, PetrinetNode> regionCopies = new HashMap<PetrinetNode, PetrinetNode>();
+		/*
+		 * First, copy the nodes.
+		 */
+		for (Transition transition : reducedNet.getTransitions()) {
+			if (!reducedRegion.contains(transition)) {
+				reducedCopies.put(transition, copy(transition));
+			}
+		}
+		for (Place place : reducedNet.getPlaces()) {
+			if (!reducedRegion.contains(place)) {
+				Place placeCopy = net.addPlace(place.getLabel());
+				reducedCopies.put(place, placeCopy);
+				if (reducedMarking.occurrences(place) > 0) {
+					marking.add(placeCopy, reducedMarking.occurrences(place));
+				}
+			}
+		}
+		for (PetrinetNode node : region) {
+			if (node instanceof Transition) {
+				regionCopies.put(node, copy((Transition) node));
+			} else {
+				Place placeCopy = net.addPlace(node.getLabel());
+				regionCopies.put(node, placeCopy);
+				if (input.getMarking().occurrences(node) > 0) {
+					marking.add(placeCopy, input.getMarking().occurrences(node));
+				}
+			}
+		}
+		/*
+		 * Second, copy the arcs.
+		 */
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : reducedNet.getEdges()) {
+			PetrinetNode source = reducedCopies.get(edge.getSource());
+			PetrinetNode target = reducedCopies.get(edge.getTarget());
+			if (edge instanceof Arc && source != null && target != null) {
+				MurataUtils.addArc(net, source, target, ((Arc) edge).getWeight(), false);
+			}
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : originalNet.getEdges()) {
+			if (!(edge instanceof Arc)
+					|| (!region.contains(edge.getSource()) && !region.contains(edge.getTarget()))) {
+				continue;
+			}
+			PetrinetNode source = region.contains(edge.getSource()) ? regionCopies.get(edge.getSource())
+					: reducedCopies.get(getImage(edge.getSource()));
+			PetrinetNode target = region.contains(edge.getTarget()) ? regionCopies.get(edge.getTarget())
+					: reducedCopies.get(getImage(edge.getTarget()));
+			if (source == null || target == null) {
+				return false;
+			}
+			MurataUtils.addArc(net, source, target, ((Arc) edge).getWeight(), false);
+		}
+		/*
+		 * Third, map the edited net onto this net. Nodes that were eliminated
+		 * are not mapped, as in a reduction from scratch.
+		 */
+		transitionMap = new HashMap<Transition, Transition>();
+		placeMap = new HashMap<Place, Place>();
+		sacredNodes = new HashSet<PetrinetNode>();
+		for (PetrinetNode node : originalNet.getNodes()) {
+			PetrinetNode image;
+			if (region.contains(node)) {
+				image = regionCopies.get(node);
+			} else if (getImage(node) != null) {
+				image = reducedCopies.get(getImage(node));
+			} else {
+				continue;
+			}
+			if (node instanceof Transition) {
+				transitionMap.put((Transition) node, (Transition) image);
+			} else {
+				placeMap.put((Place) node, (Place) image);
+			}
+			if (input.isSacred(node)) {
+				sacredNodes.add(image);
+			}
+		}
+		return true;
+	}
+
+	private Transition copy(Transition transition) {
+		Transition transitionCopy = net.addTransition(transition.getLabel());
+		transitionCopy.setInvisible(transition.isInvisible());
+		return transitionCopy;
+	}
+
+	/**
+	 * Gets the number of nodes of the edited net whose reductions were undone.
+	 *
+	 * @return The size of the region.
+	 */
+	int getRegionSize() {
+		return region.size();
+	}
+
+	Petrinet getNet() {
+		return net;
+	}
+
+	Marking getMarking() {
+		return marking;
+	}
+
+	HashMap<Transition, Transition> getTransitionMap() {
+		return transitionMap;
+	}
+
+	HashMap<Place, Place> getPlaceMap() {
+		return placeMap;
+	}
+
+	HashSet<PetrinetNode> getSacredNodes() {
+		return sacredNodes;
+	}
+}
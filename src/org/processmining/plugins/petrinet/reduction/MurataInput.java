@@ -47,6 +47,10 @@ public class MurataInput {
 	 * Bit mask for the Alternative State Machine rule.
 	 */
 	static public final int ASM = 128;
+	/*
+	 * Bit mask for the rules provided by other packages, see MurataRule.
+	 */
+	static public final int EXT = 256;
 
 	/*
 	 * The Petri net to reduce.
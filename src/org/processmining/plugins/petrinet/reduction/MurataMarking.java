@@ -0,0 +1,248 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Marking of a Petri net under reduction. Tokens are kept in an int array
+ * indexed by place id, where the ids are assigned once from the places of the
+ * net when the marking is created. The reduction rules only remove places,
+ * hence the ids remain valid throughout a reduction. Conversion from and to a
+ * regular Marking only takes place at the boundary of the reduction. The
+ * token counts may be kept off heap, see MurataParameters, in which case the
+ * marking should be released after the reduction. The map from places to
+ * place ids stays on the heap.
+ */
+public class MurataMarking {
+	/*
+	 * Map from places to place ids.
+	 */
+	private final Map<Place, Integer> index;
+	/*
+	 * Map from place ids to places.
+	 */
+	private final Place[] places;
+	/*
+	 * Number of tokens per place id.
+	 */
+	private final IntBuffer tokens;
+	/*
+	 * Whether the number of tokens per place id has changed since the last
+	 * update.
+	 */
+	private final boolean[] changed;
+	/*
+	 * Ids of the places whose number of tokens has changed since they were
+	 * last collected, and whether a place id is among them.
+	 */
+	private final IntBuffer touched;
+	private int touchedSize;
+	private final boolean[] isTouched;
+
+	/**
+	 * Constructs the marking of the given net from the given marking. Places in
+	 * the given marking that are not in the given net are ignored.
+	 *
+	 * @param net
+	 *            The net under reduction.
+	 * @param marking
+	 *            The marking of the net.
+	 */
+	public MurataMarking(Petrinet net, Marking marking) {
+		this(net, marking, false);
+	}
+
+	/**
+	 * Constructs the marking of the given net from the given marking, see
+	 * above.
+	 *
+	 * @param net
+	 *            The net under reduction.
+	 * @param marking
+	 *            The marking of the net.
+	 * @param offHeap
+	 *            Whether to keep the token counts outside the Java heap.
+	 */
+	public MurataMarking(Petrinet net, Marking marking, boolean offHeap) {
+		int size = net.getPlaces().size();
+		index = new HashMap<Place, Integer>(2 * size);
+		places = new Place[size];
+		tokens = MurataUtils.newIntBuffer(size, offHeap);
+		changed = new boolean[size];
+		touched = MurataUtils.newIntBuffer(size, offHeap);
+		isTouched = new boolean[size];
+		int id = 0;
+		for (Place place : net.getPlaces()) {
+			index.put(place, id);
+			places[id] = place;
+			tokens.put(id, marking.occurrences(place));
+			id++;
+		}
+	}
+
+	/**
+	 * Gets the id of the given place.
+	 *
+	 * @param place
+	 *            The given place.
+	 * @return The id of the given place, -1 if the place is unknown.
+	 */
+	public int indexOf(Place place) {
+		Integer id = index.get(place);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Gets the number of tokens in the given place.
+	 *
+	 * @param place
+	 *            The given place.
+	 * @return The number of tokens in the given place.
+	 */
+	public int occurrences(Place place) {
+		int id = indexOf(place);
+		return id < 0 ? 0 : tokens.get(id);
+	}
+
+	/**
+	 * Checks whether the number of tokens in the given place has changed since
+	 * the last update.
+	 *
+	 * @param place
+	 *            The given place.
+	 * @return Whether the number of tokens has changed.
+	 */
+	public boolean isChanged(Place place) {
+		int id = indexOf(place);
+		return id >= 0 && changed[id];
+	}
+
+	/**
+	 * Adds tokens to the given place.
+	 *
+	 * @param place
+	 *            The given place.
+	 * @param occurrences
+	 *            The number of tokens to add.
+	 */
+	public void add(Place place, int occurrences) {
+		if (occurrences == 0) {
+			return;
+		}
+		int id = indexOf(place);
+		if (id < 0) {
+			throw new IllegalArgumentException("Place " + place.getLabel() + " is not part of the net.");
+		}
+		tokens.put(id, tokens.get(id) + occurrences);
+		changed[id] = true;
+		touch(id);
+	}
+
+	/**
+	 * Removes all tokens from the given place.
+	 *
+	 * @param place
+	 *            The given place.
+	 * @return The number of tokens removed.
+	 */
+	public int reset(Place place) {
+		int id = indexOf(place);
+		if (id < 0 || tokens.get(id) == 0) {
+			return 0;
+		}
+		int occurrences = tokens.get(id);
+		tokens.put(id, 0);
+		changed[id] = true;
+		touch(id);
+		return occurrences;
+	}
+
+	/**
+	 * Sets the number of tokens in every known place to the number of tokens
+	 * in the given marking.
+	 *
+	 * @param marking
+	 *            The given marking.
+	 */
+	public void set(Marking marking) {
+		for (int id = 0; id < places.length; id++) {
+			int occurrences = marking.occurrences(places[id]);
+			if (tokens.get(id) != occurrences) {
+				tokens.put(id, occurrences);
+				changed[id] = true;
+				touch(id);
+			}
+		}
+	}
+
+	/**
+	 * Adds the places whose number of tokens has changed since the last call
+	 * to the given collection.
+	 *
+	 * @param places
+	 *            The collection to add the places to.
+	 */
+	public void collectTouched(Collection<? super Place> places) {
+		for (int i = 0; i < touchedSize; i++) {
+			places.add(this.places[touched.get(i)]);
+			isTouched[touched.get(i)] = false;
+		}
+		touchedSize = 0;
+	}
+
+	private void touch(int id) {
+		if (!isTouched[id]) {
+			isTouched[id] = true;
+			touched.put(touchedSize++, id);
+		}
+	}
+
+	/**
+	 * Updates the given marking with all changes made since the last update.
+	 * Only places whose number of tokens has changed are touched.
+	 *
+	 * @param marking
+	 *            The marking to update.
+	 */
+	public void update(Marking marking) {
+		for (int id = 0; id < places.length; id++) {
+			if (changed[id]) {
+				MurataUtils.resetPlace(marking, places[id]);
+				if (tokens.get(id) > 0) {
+					marking.add(places[id], tokens.get(id));
+				}
+				changed[id] = false;
+			}
+		}
+	}
+
+	/**
+	 * Releases the token counts, see MurataUtils.releaseIntBuffer. The
+	 * marking should not be used afterwards.
+	 */
+	public void release() {
+		MurataUtils.releaseIntBuffer(tokens);
+		MurataUtils.releaseIntBuffer(touched);
+	}
+
+	/**
+	 * Creates a regular marking containing all tokens in this marking.
+	 *
+	 * @return The regular marking.
+	 */
+	public Marking toMarking() {
+		Marking marking = new Marking();
+		for (int id = 0; id < places.length; id++) {
+			if (tokens.get(id) > 0) {
+				marking.add(places[id], tokens.get(id));
+			}
+		}
+		return marking;
+	}
+}
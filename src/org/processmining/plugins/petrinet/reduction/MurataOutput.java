@@ -1,7 +1,13 @@
 package org.processmining.plugins.petrinet.reduction;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
@@ -37,6 +43,19 @@ public class MurataOutput {
 	 * The mapping between places in the input net and places in the output net
 	 */
 	private Map<Place, Place> placeMapping;
+	/*
+	 * The reverse of the transition mapping: for every transition in the
+	 * output net, the transitions in the input net that map onto it.
+	 */
+	private Map<Transition, List<Transition>> reverseTransitionMapping;
+	/*
+	 * The reverse of the place mapping.
+	 */
+	private Map<Place, List<Place>> reversePlaceMapping;
+	/*
+	 * Lookup tables for replaying on the reduced Petri net, if computed.
+	 */
+	private MurataReplayIndex replayIndex;
 
 	/**
 	 * Constructs a new MurataOutput, given the reduced Petri net and its
@@ -86,8 +105,16 @@ public class MurataOutput {
 		return log;
 	}
 
+	/**
+	 * Sets the transition mapping, and computes its reverse. Later changes to
+	 * the given mapping are not reflected in the reverse.
+	 * 
+	 * @param transitionMapping
+	 *            the transition mapping from the input net to the output net
+	 */
 	public void setTransitionMapping(Map<Transition, Transition> transitionMapping) {
 		this.transitionMapping = transitionMapping;
+		reverseTransitionMapping = reverse(transitionMapping, net.getTransitions());
 	}
 
 	public Map<Transition, Transition> getTransitionMapping() {
@@ -95,22 +122,122 @@ public class MurataOutput {
 	}
 
 	/**
-	 * Sets the transition mapping.
+	 * Sets the place mapping, and computes its reverse, see above.
 	 * 
-	 * @param transitionMapping
-	 *            the transition mapping from the input net to the output net
+	 * @param placeMapping
+	 *            the place mapping from the input net to the output net
 	 */
 	public void setPlaceMapping(Map<Place, Place> placeMapping) {
 		this.placeMapping = placeMapping;
+		reversePlaceMapping = reverse(placeMapping, net.getPlaces());
 	}
 
 	/**
-	 * Sets the place mapping.
+	 * Gets the place mapping.
 	 * 
-	 * @param placeMapping
-	 *            the place mapping from the input net to the output net
+	 * @return the place mapping from the input net to the output net
 	 */
 	public Map<Place, Place> getPlaceMapping() {
 		return placeMapping;
 	}
+
+	/**
+	 * Gets the reverse of the transition mapping. This maps every transition
+	 * in the output net that some transition in the input net maps onto to all
+	 * transitions in the input net that map onto it. Images that are not in
+	 * the output net, like the nodes that a snapshot recreates for removed
+	 * nodes, are left out. The reverse is computed once when the
+	 * transition mapping is set, and cannot be modified.
+	 * 
+	 * @return The reverse transition mapping, null if there is no transition
+	 *         mapping.
+	 */
+	public Map<Transition, List<Transition>> getReverseTransitionMapping() {
+		return reverseTransitionMapping;
+	}
+
+	/**
+	 * Gets the reverse of the place mapping, see above.
+	 * 
+	 * @return The reverse place mapping, null if there is no place mapping.
+	 */
+	public Map<Place, List<Place>> getReversePlaceMapping() {
+		return reversePlaceMapping;
+	}
+
+	/**
+	 * Gets the transitions in the input net that map onto the given transition
+	 * in the output net.
+	 * 
+	 * @param transition
+	 *            The given transition in the output net.
+	 * @return The transitions in the input net mapping onto it, empty if none.
+	 */
+	public List<Transition> getOriginalTransitions(Transition transition) {
+		return getOriginals(reverseTransitionMapping, transition);
+	}
+
+	/**
+	 * Gets the places in the input net that map onto the given place in the
+	 * output net.
+	 * 
+	 * @param place
+	 *            The given place in the output net.
+	 * @return The places in the input net mapping onto it, empty if none.
+	 */
+	public List<Place> getOriginalPlaces(Place place) {
+		return getOriginals(reversePlaceMapping, place);
+	}
+
+	/**
+	 * Gets the lookup tables for replaying on the reduced Petri net. These
+	 * are computed by Simplify For Replay.
+	 * 
+	 * @return The lookup tables, null if not computed.
+	 */
+	public MurataReplayIndex getReplayIndex() {
+		return replayIndex;
+	}
+
+	/**
+	 * Sets the lookup tables for replaying on the reduced Petri net.
+	 * 
+	 * @param replayIndex
+	 *            The lookup tables.
+	 */
+	public void setReplayIndex(MurataReplayIndex replayIndex) {
+		this.replayIndex = replayIndex;
+	}
+
+	private static <N> List<N> getOriginals(Map<N, List<N>> reverseMapping, N node) {
+		List<N> originals = reverseMapping == null ? null : reverseMapping.get(node);
+		return originals == null ? Collections.<N>emptyList() : originals;
+	}
+
+	/*
+	 * The reverse of the given mapping, for the images among the given nodes
+	 * of the output net only.
+	 */
+	private static <N> Map<N, List<N>> reverse(Map<N, N> mapping, Collection<N> nodes) {
+		if (mapping == null) {
+			return null;
+		}
+		Set<N> images = new HashSet<N>(nodes);
+		Map<N, List<N>> reverseMapping = new HashMap<N, List<N>>();
+		for (Map.Entry<N, N> entry : mapping.entrySet()) {
+			if (!images.contains(entry.getValue())) {
+				continue;
+			}
+			List<N> originals = reverseMapping.get(entry.getValue());
+			if (originals == null) {
+				originals = new ArrayList<N>(1);
+				reverseMapping.put(entry.getValue(), originals);
+			}
+			originals.add(entry.getKey());
+		}
+		for (Map.Entry<N, List<N>> entry : reverseMapping.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		return Collections.unmodifiableMap(reverseMapping);
+	}
 }
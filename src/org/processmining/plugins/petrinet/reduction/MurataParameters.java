@@ -18,4 +18,36 @@ public class MurataParameters {
 	public void setAllowFPTSacredNode(boolean allowFPTSacredNode) {
 		this.allowFPTSacredNode = allowFPTSacredNode;
 	}
+
+	/*
+	 * Whether to keep the token and edge counts of the net under reduction
+	 * outside the Java heap. Only these int arrays are kept off heap; the nets,
+	 * their edges, and the maps from nodes to ids stay on the heap. Only
+	 * worthwhile for very large nets.
+	 */
+	private boolean offHeap;
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/*
+	 * Whether to try the local rules only at nodes near the last reductions,
+	 * instead of trying every rule on the whole net after every reduction.
+	 * Much faster on large nets, but as the rules do not commute, the result
+	 * may differ from the default reduction.
+	 */
+	private boolean localReduction;
+
+	public boolean isLocalReduction() {
+		return localReduction;
+	}
+
+	public void setLocalReduction(boolean localReduction) {
+		this.localReduction = localReduction;
+	}
 }
@@ -0,0 +1,302 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+
+/**
+ * Lookup tables for replaying on a reduced net, as produced by Simplify For
+ * Replay. The transitions of the net get dense ids 0..n-1. The tables are:
+ * <ul>
+ * <li>the transition per id, and the id per transition;</li>
+ * <li>the ids of the visible transitions per label;</li>
+ * <li>the ids of the invisible transitions, as a bit set;</li>
+ * <li>the silent closure of every transition: the invisible transitions that
+ * can be reached from it by a path of invisible transitions, where a
+ * transition reaches another if one of its output places is an input place of
+ * the other.</li>
+ * </ul>
+ * The tables are computed once, and do not reflect later changes to the net.
+ */
+public class MurataReplayIndex {
+
+	private final Transition[] transitions;
+	private final Map<Transition, Integer> index;
+	private final Map<String, int[]> labelIds;
+	private final BitSet invisible;
+	/*
+	 * Silent closure per transition id. Transitions in the same strongly
+	 * connected component of invisible transitions share their closure.
+	 */
+	private final int[][] closures;
+
+	/**
+	 * Computes the lookup tables for the given net.
+	 *
+	 * @param net
+	 *            The given net.
+	 */
+	public MurataReplayIndex(Petrinet net) {
+		int size = net.getTransitions().size();
+		transitions = new Transition[size];
+		index = new HashMap<Transition, Integer>(2 * size);
+		invisible = new BitSet(size);
+		Map<String, List<Integer>> labels = new HashMap<String, List<Integer>>();
+		for (Transition transition : net.getTransitions()) {
+			int id = index.size();
+			transitions[id] = transition;
+			index.put(transition, id);
+			if (transition.isInvisible()) {
+				invisible.set(id);
+			} else {
+				List<Integer> ids = labels.get(transition.getLabel());
+				if (ids == null) {
+					ids = new ArrayList<Integer>(1);
+					labels.put(transition.getLabel(), ids);
+				}
+				ids.add(id);
+			}
+		}
+		labelIds = new HashMap<String, int[]>(2 * labels.size());
+		for (Map.Entry<String, List<Integer>> entry : labels.entrySet()) {
+			int[] ids = new int[entry.getValue().size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = entry.getValue().get(i);
+			}
+			labelIds.put(entry.getKey(), ids);
+		}
+
+		/*
+		 * The invisible transitions that directly follow every transition. A
+		 * single bit set collects the successors of every transition, and
+		 * later every closure.
+		 */
+		BitSet reached = new BitSet(size);
+		int[][] silentSuccessors = new int[size][];
+		for (int id = 0; id < size; id++) {
+			reached.clear();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> outEdge : net
+					.getOutEdges(transitions[id])) {
+				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net
+						.getOutEdges(outEdge.getTarget())) {
+					Integer successor = index.get(edge.getTarget());
+					if (successor != null && invisible.get(successor)) {
+						reached.set(successor);
+					}
+				}
+			}
+			silentSuccessors[id] = toArray(reached);
+		}
+		/*
+		 * The closure per transition. All invisible transitions in a strongly
+		 * connected component reach the same transitions, so the closure is
+		 * computed once per component, by Tarjan's algorithm (without
+		 * recursion, as paths may be long). Components are found after all
+		 * components they reach, so the closure of a component is the union
+		 * of the closures of the components it reaches, plus the component
+		 * itself if it has a cycle.
+		 */
+		closures = new int[size][];
+		int[] visit = new int[size];
+		Arrays.fill(visit, -1);
+		int[] lowLink = new int[size];
+		int[] next = new int[size];
+		int[] component = new int[size];
+		boolean[] onStack = new boolean[size];
+		int[] callStack = new int[size];
+		int[] componentStack = new int[size];
+		int visits = 0;
+		int components = 0;
+		int componentTop = 0;
+		for (int root = invisible.nextSetBit(0); root >= 0; root = invisible.nextSetBit(root + 1)) {
+			if (visit[root] >= 0) {
+				continue;
+			}
+			int callTop = 0;
+			callStack[callTop++] = root;
+			visit[root] = lowLink[root] = visits++;
+			componentStack[componentTop++] = root;
+			onStack[root] = true;
+			while (callTop > 0) {
+				int id = callStack[callTop - 1];
+				if (next[id] < silentSuccessors[id].length) {
+					int successor = silentSuccessors[id][next[id]++];
+					if (visit[successor] < 0) {
+						callStack[callTop++] = successor;
+						visit[successor] = lowLink[successor] = visits++;
+						componentStack[componentTop++] = successor;
+						onStack[successor] = true;
+					} else if (onStack[successor]) {
+						lowLink[id] = Math.min(lowLink[id], visit[successor]);
+					}
+					continue;
+				}
+				callTop--;
+				if (callTop > 0) {
+					int parent = callStack[callTop - 1];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[id]);
+				}
+				if (lowLink[id] != visit[id]) {
+					continue;
+				}
+				/*
+				 * The transitions on the stack down to id form a component.
+				 */
+				int first = componentTop;
+				do {
+					first--;
+					onStack[componentStack[first]] = false;
+					component[componentStack[first]] = components;
+				} while (componentStack[first] != id);
+				reached.clear();
+				boolean cyclic = false;
+				for (int i = first; i < componentTop; i++) {
+					for (int successor : silentSuccessors[componentStack[i]]) {
+						if (component[successor] == components) {
+							cyclic = true;
+						} else {
+							reached.set(successor);
+							setAll(reached, closures[successor]);
+						}
+					}
+				}
+				if (cyclic) {
+					for (int i = first; i < componentTop; i++) {
+						reached.set(componentStack[i]);
+					}
+				}
+				int[] row = toArray(reached);
+				for (int i = first; i < componentTop; i++) {
+					closures[componentStack[i]] = row;
+				}
+				componentTop = first;
+				components++;
+			}
+		}
+		/*
+		 * A visible transition reaches its invisible successors and their
+		 * closures.
+		 */
+		for (int id = invisible.nextClearBit(0); id < size; id = invisible.nextClearBit(id + 1)) {
+			reached.clear();
+			for (int successor : silentSuccessors[id]) {
+				reached.set(successor);
+				setAll(reached, closures[successor]);
+			}
+			closures[id] = toArray(reached);
+		}
+	}
+
+	private static void setAll(BitSet bits, int[] array) {
+		for (int bit : array) {
+			bits.set(bit);
+		}
+	}
+
+	private static int[] toArray(BitSet bits) {
+		int[] array = new int[bits.cardinality()];
+		int i = 0;
+		for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+			array[i++] = bit;
+		}
+		return array;
+	}
+
+	/**
+	 * Gets the number of transitions.
+	 *
+	 * @return The number of transitions.
+	 */
+	public int size() {
+		return transitions.length;
+	}
+
+	/**
+	 * Gets the transition with the given id.
+	 *
+	 * @param id
+	 *            The given id.
+	 * @return The transition with the given id.
+	 */
+	public Transition getTransition(int id) {
+		return transitions[id];
+	}
+
+	/**
+	 * Gets the id of the given transition.
+	 *
+	 * @param transition
+	 *            The given transition.
+	 * @return The id of the given transition, -1 if not in the net.
+	 */
+	public int indexOf(Transition transition) {
+		Integer id = index.get(transition);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Gets the ids of the visible transitions with the given label.
+	 *
+	 * @param label
+	 *            The given label.
+	 * @return The ids, in increasing order, empty if none. Should not be
+	 *         modified.
+	 */
+	public int[] getIds(String label) {
+		int[] ids = labelIds.get(label);
+		return ids == null ? new int[0] : ids;
+	}
+
+	/**
+	 * Gets the labels of the visible transitions.
+	 *
+	 * @return The labels.
+	 */
+	public Set<String> getLabels() {
+		return Collections.unmodifiableSet(labelIds.keySet());
+	}
+
+	/**
+	 * Checks whether the transition with the given id is invisible.
+	 *
+	 * @param id
+	 *            The given id.
+	 * @return Whether the transition is invisible.
+	 */
+	public boolean isInvisible(int id) {
+		return invisible.get(id);
+	}
+
+	/**
+	 * Gets the ids of all invisible transitions.
+	 *
+	 * @return A copy of the invisible bit set.
+	 */
+	public BitSet getInvisible() {
+		return (BitSet) invisible.clone();
+	}
+
+	/**
+	 * Gets the silent closure of the transition with the given id: the ids of
+	 * the invisible transitions reachable from it, in increasing order. The
+	 * transition itself is only included if it is invisible and on a cycle of
+	 * invisible transitions.
+	 *
+	 * @param id
+	 *            The given id.
+	 * @return The ids in the silent closure.
+	 */
+	public int[] getSilentClosure(int id) {
+		return closures[id].clone();
+	}
+}
@@ -12,6 +12,26 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
 import org.processmining.models.semantics.petrinet.Marking;
 
+/**
+ * A Petri net reduction rule.
+ * <p>
+ * Rules from other packages can be added to the reduction by registering them
+ * with the service loader, that is, by listing their class names in a
+ * META-INF/services/org.processmining.plugins.petrinet.reduction.MurataRule
+ * resource. These rules are applied after the built-in rules, but only if the
+ * input allows MurataInput.EXT, which it does not by default.
+ * <p>
+ * A rule is either global or local. A global rule is tried on the whole net
+ * using the reduce method. A local rule declares a trigger and a locality, and
+ * is tried at a single node using the tryAt method. By default, the reduction
+ * loop tries every rule on the whole net using the reduce method. If the
+ * parameters enable local reduction, the reduction loop first tries a local
+ * rule at every node that matches its trigger. After that, it
+ * only tries the rule again at matching nodes within the locality of nodes
+ * that have changed since, that is, nodes that gained or lost edges or
+ * tokens. Hence, whether a local rule applies at a node should only depend on
+ * the edges and tokens of nodes within that locality.
+ */
 public abstract class MurataRule {
 	public abstract String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking);
@@ -19,4 +39,63 @@ public abstract class MurataRule {
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, MurataParameters parameters);
 	public abstract String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
 			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, Marking marking, Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges, Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges, MurataParameters parameters);
+
+	/**
+	 * Apply the rule once, if possible, on a marking kept as a token count per
+	 * place id. This is the variant used by the reduction loop. Mutations of
+	 * the net should be queued in the given batch, which is applied after the
+	 * rule returns. By default, it converts the marking to a regular marking
+	 * and back and mutates the net directly, rules should override it.
+	 *
+	 * @return null if the rule could not be applied. Otherwise short
+	 *         description of how the rule was applied.
+	 */
+	public String reduce(Petrinet net, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		Marking regularMarking = marking.toMarking();
+		String log = reduce(net, sacredNodes, transitionMap, placeMap, regularMarking, inputEdges, outputEdges,
+				parameters);
+		marking.set(regularMarking);
+		return log;
+	}
+
+	/**
+	 * Gets the nodes at which this rule may apply, if it is local.
+	 *
+	 * @return The trigger, or null if this rule is global.
+	 */
+	public MurataTrigger getTrigger() {
+		return null;
+	}
+
+	/**
+	 * Gets the locality of this rule, if it is local: the distance from a
+	 * node to the nodes whose edges and tokens determine whether this rule
+	 * applies at the node. By default, this is 1, that is, the node and its
+	 * neighbors.
+	 *
+	 * @return The locality.
+	 */
+	public int getLocality() {
+		return 1;
+	}
+
+	/**
+	 * Apply this rule at the given node, if possible. Only called for local
+	 * rules, and only at nodes that match the trigger. Mutations of the net
+	 * should be queued in the given batch.
+	 *
+	 * @return null if the rule could not be applied at the given node.
+	 *         Otherwise short description of how the rule was applied.
+	 */
+	public String tryAt(PetrinetNode node, Collection<PetrinetNode> sacredNodes,
+			HashMap<Transition, Transition> transitionMap, HashMap<Place, Place> placeMap, MurataMarking marking,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> inputEdges,
+			Map<PetrinetNode, Set<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>> outputEdges,
+			MurataBatch batch, MurataParameters parameters) {
+		return null;
+	}
 }
@@ -0,0 +1,526 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Binary snapshot of a MurataOutput: the reduced net, its marking, the
+ * transition and place mappings, and the log. All labels and log lines are
+ * kept once in a string table, and everything else refers to them by index.
+ * Nodes are referred to by index as well: places first, then transitions.
+ * <p>
+ * The mappings map nodes of the input net to nodes of the reduced net. In the
+ * snapshot, the nodes of the input net are identified by their local id, with
+ * their label as a check. Hence, the input net is needed both when writing and
+ * when reading the mappings. If the input net on read has other ids than the
+ * input net on write, for example as it has been imported again, its nodes are
+ * identified by their label instead, which then needs to be unique among the
+ * places or the transitions. Nodes that were reduced away are mapped onto
+ * nodes that are no longer part of the reduced net. These are kept in a
+ * separate table, and are recreated in a separate net on read.
+ * <p>
+ * The format (all ints are big-endian):
+ *
+ * <pre>
+ * magic, version
+ * strings:     count, (length, UTF-8 bytes)*
+ * net:         label
+ * places:      count, label*
+ * transitions: count, (label, invisible byte)*
+ * arcs:        count, (source, target, weight)*
+ * marking:     count, (place, occurrences)*
+ * removed:     count, (kind byte, label, invisible byte)*
+ * mappings:    for transitions and places: count or -1 if there is none, (id, label, image)*
+ * log:         count, line*
+ * </pre>
+ *
+ * An image is the index of a node of the reduced net, -1 - i for the i-th
+ * removed node, NONE if mapped onto null, or ABSENT if not mapped.
+ */
+public class MurataSnapshot {
+
+	/*
+	 * "MRTA".
+	 */
+	private static final int MAGIC = 0x4D525441;
+	private static final int VERSION = 2;
+	private static final int NONE = Integer.MIN_VALUE;
+	private static final int ABSENT = Integer.MIN_VALUE + 1;
+	private static final byte PLACE = 0;
+	private static final byte TRANSITION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Writes a snapshot of the given output to the given file.
+	 *
+	 * @param output
+	 *            The given output.
+	 * @param inputNet
+	 *            The net that was reduced into the output. May be null if the
+	 *            output has no mappings.
+	 * @param file
+	 *            The given file.
+	 * @throws IOException
+	 */
+	public static void write(MurataOutput output, Petrinet inputNet, File file) throws IOException {
+		OutputStream stream = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			write(output, inputNet, stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the given output to the given stream.
+	 *
+	 * @param output
+	 *            The given output.
+	 * @param inputNet
+	 *            The net that was reduced into the output. May be null if the
+	 *            output has no mappings.
+	 * @param stream
+	 *            The given stream, which is not closed.
+	 * @throws IOException
+	 */
+	public static void write(MurataOutput output, Petrinet inputNet, OutputStream stream) throws IOException {
+		if (inputNet == null && (output.getTransitionMapping() != null || output.getPlaceMapping() != null)) {
+			throw new IllegalArgumentException("The input net is needed to write the mappings.");
+		}
+		Petrinet net = output.getNet();
+		/*
+		 * Number the nodes of the reduced net, and the removed nodes the
+		 * mappings map onto.
+		 */
+		Map<PetrinetNode, Integer> index = new HashMap<PetrinetNode, Integer>();
+		List<Place> places = new ArrayList<Place>(net.getPlaces());
+		List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
+		for (Place place : places) {
+			index.put(place, index.size());
+		}
+		for (Transition transition : transitions) {
+			index.put(transition, index.size());
+		}
+		List<PetrinetNode> removedNodes = new ArrayList<PetrinetNode>();
+		Map<PetrinetNode, Integer> removedIndex = new HashMap<PetrinetNode, Integer>();
+		addRemoved(output.getTransitionMapping(), index, removedNodes, removedIndex);
+		addRemoved(output.getPlaceMapping(), index, removedNodes, removedIndex);
+		List<Arc> arcs = new ArrayList<Arc>();
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+			if (edge instanceof Arc) {
+				arcs.add((Arc) edge);
+			}
+		}
+		/*
+		 * Intern all strings.
+		 */
+		Strings strings = new Strings();
+		strings.intern(net.getLabel());
+		for (PetrinetNode node : index.keySet()) {
+			strings.intern(node.getLabel());
+		}
+		for (PetrinetNode node : removedNodes) {
+			strings.intern(node.getLabel());
+		}
+		if (inputNet != null) {
+			for (PetrinetNode node : inputNet.getNodes()) {
+				strings.intern(node.getLocalID().toString());
+				strings.intern(node.getLabel());
+			}
+		}
+		for (String line : output.getLog()) {
+			strings.intern(line);
+		}
+
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(strings.list.size());
+		for (String string : strings.list) {
+			byte[] bytes = string.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.writeInt(strings.get(net.getLabel()));
+		out.writeInt(places.size());
+		for (Place place : places) {
+			out.writeInt(strings.get(place.getLabel()));
+		}
+		out.writeInt(transitions.size());
+		for (Transition transition : transitions) {
+			out.writeInt(strings.get(transition.getLabel()));
+			out.writeByte(transition.isInvisible() ? 1 : 0);
+		}
+		out.writeInt(arcs.size());
+		for (Arc arc : arcs) {
+			out.writeInt(index.get(arc.getSource()));
+			out.writeInt(index.get(arc.getTarget()));
+			out.writeInt(arc.getWeight());
+		}
+		Marking marking = output.getMarking();
+		List<Place> markedPlaces = new ArrayList<Place>();
+		for (Place place : marking.baseSet()) {
+			if (index.containsKey(place)) {
+				markedPlaces.add(place);
+			}
+		}
+		out.writeInt(markedPlaces.size());
+		for (Place place : markedPlaces) {
+			out.writeInt(index.get(place));
+			out.writeInt(marking.occurrences(place));
+		}
+		out.writeInt(removedNodes.size());
+		for (PetrinetNode node : removedNodes) {
+			out.writeByte(node instanceof Place ? PLACE : TRANSITION);
+			out.writeInt(strings.get(node.getLabel()));
+			out.writeByte(node instanceof Transition && ((Transition) node).isInvisible() ? 1 : 0);
+		}
+		writeMapping(out, output.getTransitionMapping(),
+				inputNet == null ? null : new ArrayList<PetrinetNode>(inputNet.getTransitions()), index,
+				removedIndex, strings);
+		writeMapping(out, output.getPlaceMapping(),
+				inputNet == null ? null : new ArrayList<PetrinetNode>(inputNet.getPlaces()), index, removedIndex,
+				strings);
+		out.writeInt(output.getLog().size());
+		for (String line : output.getLog()) {
+			out.writeInt(strings.get(line));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a snapshot from the given file. The output is built in full, so
+	 * the file is read into memory at once.
+	 *
+	 * @param file
+	 *            The given file.
+	 * @param inputNet
+	 *            The net that was reduced into the snapshot. May be null, in
+	 *            which case the mappings are not read.
+	 * @return The output.
+	 * @throws IOException
+	 *             If the file is not a snapshot, or if its mappings do not
+	 *             match the input net.
+	 */
+	public static MurataOutput read(File file, Petrinet inputNet) throws IOException {
+		long length = file.length();
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot is too large.");
+		}
+		byte[] bytes = new byte[(int) length];
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			stream.readFully(bytes);
+		} finally {
+			stream.close();
+		}
+		return read(ByteBuffer.wrap(bytes), inputNet);
+	}
+
+	/**
+	 * Reads a snapshot from the given buffer, starting at its position.
+	 *
+	 * @param buffer
+	 *            The given buffer.
+	 * @param inputNet
+	 *            The net that was reduced into the snapshot. May be null, in
+	 *            which case the mappings are not read.
+	 * @return The output.
+	 * @throws IOException
+	 *             If the buffer does not hold a snapshot, or if its mappings
+	 *             do not match the input net. Any malformed snapshot results in
+	 *             an IOException.
+	 */
+	public static MurataOutput read(ByteBuffer buffer, Petrinet inputNet) throws IOException {
+		try {
+			return readSnapshot(buffer, inputNet);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Snapshot is truncated.", e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Snapshot is corrupt.", e);
+		}
+	}
+
+	private static MurataOutput readSnapshot(ByteBuffer buffer, Petrinet inputNet) throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a Murata snapshot.");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version + ".");
+		}
+		/*
+		 * Every count is checked against the bytes that remain, so that a
+		 * corrupt count cannot result in a huge allocation.
+		 */
+		String[] strings = new String[getCount(buffer, 4)];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[getCount(buffer, 1)];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, UTF8);
+		}
+		Petrinet net = PetrinetFactory.newPetrinet(getString(buffer, strings));
+		int placeCount = getCount(buffer, 4);
+		List<PetrinetNode> nodes = new ArrayList<PetrinetNode>();
+		for (int i = 0; i < placeCount; i++) {
+			nodes.add(net.addPlace(getString(buffer, strings)));
+		}
+		int transitionCount = getCount(buffer, 5);
+		for (int i = 0; i < transitionCount; i++) {
+			Transition transition = net.addTransition(getString(buffer, strings));
+			transition.setInvisible(buffer.get() != 0);
+			nodes.add(transition);
+		}
+		int arcCount = getCount(buffer, 12);
+		for (int i = 0; i < arcCount; i++) {
+			PetrinetNode source = getNode(buffer, nodes);
+			PetrinetNode target = getNode(buffer, nodes);
+			int weight = buffer.getInt();
+			if ((source instanceof Place) == (target instanceof Place) || weight <= 0) {
+				throw new IOException("Snapshot is corrupt: invalid arc.");
+			}
+			MurataUtils.addArc(net, source, target, weight);
+		}
+		Marking marking = new Marking();
+		int markedCount = getCount(buffer, 8);
+		for (int i = 0; i < markedCount; i++) {
+			PetrinetNode place = getNode(buffer, nodes);
+			int occurrences = buffer.getInt();
+			if (!(place instanceof Place) || occurrences <= 0) {
+				throw new IOException("Snapshot is corrupt: invalid marking.");
+			}
+			marking.add((Place) place, occurrences);
+		}
+		int removedCount = getCount(buffer, 6);
+		List<PetrinetNode> removedNodes = new ArrayList<PetrinetNode>();
+		Petrinet removedNet = null;
+		for (int i = 0; i < removedCount; i++) {
+			if (removedNet == null) {
+				removedNet = PetrinetFactory.newPetrinet(net.getLabel() + " [Removed]");
+			}
+			byte kind = buffer.get();
+			String label = getString(buffer, strings);
+			boolean invisible = buffer.get() != 0;
+			if (kind == PLACE) {
+				removedNodes.add(removedNet.addPlace(label));
+			} else if (kind == TRANSITION) {
+				Transition transition = removedNet.addTransition(label);
+				transition.setInvisible(invisible);
+				removedNodes.add(transition);
+			} else {
+				throw new IOException("Snapshot is corrupt: invalid node kind " + kind + ".");
+			}
+		}
+		Map<Transition, Transition> transitionMapping = readMapping(buffer,
+				inputNet == null ? null : new ArrayList<Transition>(inputNet.getTransitions()), Transition.class,
+				nodes, removedNodes, strings);
+		Map<Place, Place> placeMapping = readMapping(buffer,
+				inputNet == null ? null : new ArrayList<Place>(inputNet.getPlaces()), Place.class, nodes,
+				removedNodes, strings);
+		MurataOutput output = new MurataOutput(net, marking);
+		output.setTransitionMapping(transitionMapping);
+		output.setPlaceMapping(placeMapping);
+		int logCount = getCount(buffer, 4);
+		for (int i = 0; i < logCount; i++) {
+			output.getLog().add(getString(buffer, strings));
+		}
+		return output;
+	}
+
+	/*
+	 * Reads a count of items of at least the given number of bytes each, and
+	 * checks that it is not negative and that enough bytes remain.
+	 */
+	private static int getCount(ByteBuffer buffer, int itemSize) throws IOException {
+		int count = buffer.getInt();
+		checkCount(buffer, count, itemSize);
+		return count;
+	}
+
+	private static void checkCount(ByteBuffer buffer, int count, int itemSize) throws IOException {
+		if (count < 0 || (long) count * itemSize > buffer.remaining()) {
+			throw new IOException("Snapshot is corrupt: invalid count " + count + ".");
+		}
+	}
+
+	/*
+	 * Reads an index into the string table, and returns the string.
+	 */
+	private static String getString(ByteBuffer buffer, String[] strings) throws IOException {
+		int i = buffer.getInt();
+		if (i < 0 || i >= strings.length) {
+			throw new IOException("Snapshot is corrupt: invalid string " + i + ".");
+		}
+		return strings[i];
+	}
+
+	/*
+	 * Reads an index into the given nodes, and returns the node.
+	 */
+	private static PetrinetNode getNode(ByteBuffer buffer, List<PetrinetNode> nodes) throws IOException {
+		int i = buffer.getInt();
+		if (i < 0 || i >= nodes.size()) {
+			throw new IOException("Snapshot is corrupt: invalid node " + i + ".");
+		}
+		return nodes.get(i);
+	}
+
+	/*
+	 * Adds the images of the given mapping that are not in the given index to
+	 * the removed nodes.
+	 */
+	private static void addRemoved(Map<? extends PetrinetNode, ? extends PetrinetNode> mapping,
+			Map<PetrinetNode, Integer> index, List<PetrinetNode> removedNodes, Map<PetrinetNode, Integer> removedIndex) {
+		if (mapping == null) {
+			return;
+		}
+		for (PetrinetNode image : mapping.values()) {
+			if (image != null && !index.containsKey(image) && !removedIndex.containsKey(image)) {
+				removedIndex.put(image, removedNodes.size());
+				removedNodes.add(image);
+			}
+		}
+	}
+
+	private static void writeMapping(DataOutputStream out, Map<? extends PetrinetNode, ? extends PetrinetNode> mapping,
+			List<PetrinetNode> inputNodes, Map<PetrinetNode, Integer> index, Map<PetrinetNode, Integer> removedIndex,
+			Strings strings) throws IOException {
+		if (mapping == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(inputNodes.size());
+		for (PetrinetNode node : inputNodes) {
+			out.writeInt(strings.get(node.getLocalID().toString()));
+			out.writeInt(strings.get(node.getLabel()));
+			PetrinetNode image = mapping.get(node);
+			if (image == null && !mapping.containsKey(node)) {
+				out.writeInt(ABSENT);
+			} else if (image == null) {
+				out.writeInt(NONE);
+			} else if (index.containsKey(image)) {
+				out.writeInt(index.get(image));
+			} else {
+				out.writeInt(-1 - removedIndex.get(image));
+			}
+		}
+	}
+
+	private static <N extends PetrinetNode> Map<N, N> readMapping(ByteBuffer buffer, List<N> inputNodes,
+			Class<N> kind, List<PetrinetNode> nodes, List<PetrinetNode> removedNodes, String[] strings)
+			throws IOException {
+		int count = buffer.getInt();
+		if (count == -1) {
+			return null;
+		}
+		checkCount(buffer, count, 12);
+		if (inputNodes == null) {
+			/*
+			 * Skip the mapping. Buffer.position(int) as ByteBuffer only
+			 * overrides it as of Java 9.
+			 */
+			((Buffer) buffer).position(buffer.position() + 12 * count);
+			return null;
+		}
+		if (count != inputNodes.size()) {
+			throw new IOException("Snapshot does not match the input net.");
+		}
+		Map<String, N> nodesById = new HashMap<String, N>();
+		Map<String, N> nodesByLabel = new HashMap<String, N>();
+		Set<String> sharedLabels = new HashSet<String>();
+		for (N node : inputNodes) {
+			nodesById.put(node.getLocalID().toString(), node);
+			if (nodesByLabel.put(node.getLabel(), node) != null) {
+				sharedLabels.add(node.getLabel());
+			}
+		}
+		Map<N, N> mapping = new HashMap<N, N>(2 * count);
+		Set<N> matchedNodes = new HashSet<N>();
+		for (int i = 0; i < count; i++) {
+			String id = getString(buffer, strings);
+			String label = getString(buffer, strings);
+			N node = nodesById.get(id);
+			if (node == null) {
+				/*
+				 * Not the input net the snapshot was written for. Identify the
+				 * node by its label instead, if no other node shares it.
+				 */
+				if (sharedLabels.contains(label)) {
+					throw new IOException("Snapshot does not match the input net: several "
+							+ kind.getSimpleName().toLowerCase() + "s are labelled " + label + ".");
+				}
+				node = nodesByLabel.get(label);
+			}
+			if (node == null || !node.getLabel().equals(label) || !matchedNodes.add(node)) {
+				throw new IOException("Snapshot does not match the input net.");
+			}
+			int image = buffer.getInt();
+			if (image == ABSENT) {
+				continue;
+			} else if (image == NONE) {
+				mapping.put(node, null);
+				continue;
+			}
+			PetrinetNode imageNode;
+			if (image >= 0 && image < nodes.size()) {
+				imageNode = nodes.get(image);
+			} else if (image < 0 && -1 - image < removedNodes.size()) {
+				imageNode = removedNodes.get(-1 - image);
+			} else {
+				throw new IOException("Snapshot is corrupt: invalid image " + image + ".");
+			}
+			if (!kind.isInstance(imageNode)) {
+				throw new IOException("Snapshot is corrupt: image " + image + " is not a " + kind.getSimpleName()
+						+ ".");
+			}
+			mapping.put(node, kind.cast(imageNode));
+		}
+		return mapping;
+	}
+
+	/*
+	 * The string table.
+	 */
+	private static class Strings {
+
+		private final Map<String, Integer> index = new HashMap<String, Integer>();
+		private final List<String> list = new ArrayList<String>();
+
+		private void intern(String string) {
+			if (!index.containsKey(string)) {
+				index.put(string, list.size());
+				list.add(string);
+			}
+		}
+
+		private int get(String string) {
+			return index.get(string);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package org.processmining.plugins.petrinet.reduction;
+
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+
+/**
+ * The nodes at which a local reduction rule may apply: the kind of node (place
+ * or transition), and the range of its number of input and output edges. The
+ * reduction loop only tries a local rule at nodes that match its trigger.
+ */
+public class MurataTrigger {
+
+	/**
+	 * Upper bound to use for an unbounded number of edges.
+	 */
+	public static final int ANY = Integer.MAX_VALUE;
+
+	private final Class<? extends PetrinetNode> kind;
+	private final int minInputs;
+	private final int maxInputs;
+	private final int minOutputs;
+	private final int maxOutputs;
+
+	/**
+	 * Constructs a trigger.
+	 *
+	 * @param kind
+	 *            Place.class or Transition.class.
+	 * @param minInputs
+	 *            The minimal number of input edges.
+	 * @param maxInputs
+	 *            The maximal number of input edges, or ANY.
+	 * @param minOutputs
+	 *            The minimal number of output edges.
+	 * @param maxOutputs
+	 *            The maximal number of output edges, or ANY.
+	 */
+	public MurataTrigger(Class<? extends PetrinetNode> kind, int minInputs, int maxInputs, int minOutputs,
+			int maxOutputs) {
+		this.kind = kind;
+		this.minInputs = minInputs;
+		this.maxInputs = maxInputs;
+		this.minOutputs = minOutputs;
+		this.maxOutputs = maxOutputs;
+	}
+
+	/**
+	 * Constructs a trigger for places.
+	 */
+	public static MurataTrigger place(int minInputs, int maxInputs, int minOutputs, int maxOutputs) {
+		return new MurataTrigger(Place.class, minInputs, maxInputs, minOutputs, maxOutputs);
+	}
+
+	/**
+	 * Constructs a trigger for transitions.
+	 */
+	public static MurataTrigger transition(int minInputs, int maxInputs, int minOutputs, int maxOutputs) {
+		return new MurataTrigger(Transition.class, minInputs, maxInputs, minOutputs, maxOutputs);
+	}
+
+	/**
+	 * Checks whether the given node is of the right kind.
+	 *
+	 * @param node
+	 *            The given node.
+	 * @return Whether the rule may apply at nodes like the given node.
+	 */
+	public boolean isKind(PetrinetNode node) {
+		return kind.isInstance(node);
+	}
+
+	/**
+	 * Checks whether the given node matches this trigger.
+	 *
+	 * @param node
+	 *            The given node.
+	 * @param inputs
+	 *            The number of input edges of the node.
+	 * @param outputs
+	 *            The number of output edges of the node.
+	 * @return Whether the rule may apply at the given node.
+	 */
+	public boolean matches(PetrinetNode node, int inputs, int outputs) {
+		return kind.isInstance(node) && inputs >= minInputs && inputs <= maxInputs && outputs >= minOutputs
+				&& outputs <= maxOutputs;
+	}
+}
@@ -1,7 +1,22 @@
 package org.processmining.plugins.petrinet.reduction;
 
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.processmining.models.graphbased.AttributeMap;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
 import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
@@ -9,6 +24,133 @@ import org.processmining.models.graphbased.directed.petrinet.elements.Transition
 import org.processmining.models.semantics.petrinet.Marking;
 
 public class MurataUtils {
+	/*
+	 * The executor for asynchronous runs without a given executor, created
+	 * when first needed.
+	 */
+	private static Executor defaultExecutor = null;
+
+	/**
+	 * Gets the executor for asynchronous runs for which no executor is given.
+	 * If the Java runtime has virtual threads, every run gets a virtual
+	 * thread. Otherwise, the runs share a dedicated pool of daemon threads,
+	 * one per processor, which stop when idle. Unlike the common fork-join
+	 * pool, this pool is not shared with parallel streams and other tasks that
+	 * do not expect a long blocking run.
+	 * 
+	 * @return The executor.
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			try {
+				/*
+				 * Virtual threads are only available as of Java 21, while
+				 * this package is built for Java 8.
+				 */
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				defaultExecutor = (Executor) method.invoke(null);
+			} catch (Exception e) {
+				int size = Runtime.getRuntime().availableProcessors();
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+						new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+							private final AtomicInteger count = new AtomicInteger();
+
+							public Thread newThread(Runnable runnable) {
+								Thread thread = new Thread(runnable, "MurataAsync-" + count.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				pool.allowCoreThreadTimeOut(true);
+				defaultExecutor = pool;
+			}
+		}
+		return defaultExecutor;
+	}
+
+	/*
+	 * Released off-heap buffers, kept for reuse, as direct buffers are only
+	 * freed once the garbage collector finds them unreachable, which it may
+	 * not do for a long time as they take hardly any heap.
+	 */
+	private static final List<IntBuffer> freeBuffers = new ArrayList<IntBuffer>();
+	/*
+	 * The maximal number of released off-heap buffers kept for reuse.
+	 */
+	private static final int MAX_FREE_BUFFERS = 8;
+
+	/**
+	 * Creates a buffer of at least the given number of ints, where the first
+	 * given number of ints are 0. If off heap, the ints are kept in native
+	 * memory outside the Java heap, which the garbage collector does not need
+	 * to scan or copy. An off-heap buffer should be released when no longer
+	 * needed, and is then reused by a later call.
+	 * 
+	 * @param size
+	 *            The number of ints.
+	 * @param offHeap
+	 *            Whether to allocate the ints outside the Java heap.
+	 * @return The buffer.
+	 */
+	public static IntBuffer newIntBuffer(int size, boolean offHeap) {
+		if (offHeap) {
+			IntBuffer buffer = takeFreeBuffer(size);
+			if (buffer == null) {
+				return ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+			for (int i = 0; i < size; i++) {
+				buffer.put(i, 0);
+			}
+			return buffer;
+		}
+		return IntBuffer.allocate(size);
+	}
+
+	/*
+	 * Takes the smallest released buffer of at least the given number of ints
+	 * from the free buffers, if any.
+	 */
+	private static synchronized IntBuffer takeFreeBuffer(int size) {
+		int best = -1;
+		for (int i = 0; i < freeBuffers.size(); i++) {
+			int capacity = freeBuffers.get(i).capacity();
+			if (capacity >= size && (best < 0 || capacity < freeBuffers.get(best).capacity())) {
+				best = i;
+			}
+		}
+		return best < 0 ? null : freeBuffers.remove(best);
+	}
+
+	/**
+	 * Releases a buffer created by newIntBuffer. If it is off heap, it is kept
+	 * for reuse, unless enough buffers are kept already, in which case the
+	 * smallest one is dropped. The buffer should not be used afterwards.
+	 * 
+	 * @param buffer
+	 *            The buffer.
+	 */
+	public static synchronized void releaseIntBuffer(IntBuffer buffer) {
+		if (!buffer.isDirect()) {
+			return;
+		}
+		for (IntBuffer freeBuffer : freeBuffers) {
+			if (freeBuffer == buffer) {
+				return;
+			}
+		}
+		freeBuffers.add(buffer);
+		if (freeBuffers.size() > MAX_FREE_BUFFERS) {
+			int smallest = 0;
+			for (int i = 1; i < freeBuffers.size(); i++) {
+				if (freeBuffers.get(i).capacity() < freeBuffers.get(smallest).capacity()) {
+					smallest = i;
+				}
+			}
+			freeBuffers.remove(smallest);
+		}
+	}
+
 	/**
 	 * Update the label of the given arc. Note that the arc weight is displayed
 	 * on the arc, hence after changing the arc weight the label needs to be
@@ -36,6 +178,43 @@ public class MurataUtils {
 		place.getAttributeMap().put(AttributeMap.LABEL, place.getLabel());
 	}
 
+	/**
+	 * Update the labels of all arcs in the given net, and of all places in the
+	 * given net whose marking has changed. A label is only written if it has
+	 * actually changed, as every write to an attribute map results in a graph
+	 * change event. The reduction rules do not update labels while reducing,
+	 * instead this method is called once the reduction has finished.
+	 * 
+	 * @param net
+	 *            The given net.
+	 * @param marking
+	 *            The current marking.
+	 */
+	public static void updateLabels(Petrinet net, MurataMarking marking) {
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+			if (edge instanceof Arc) {
+				Arc arc = (Arc) edge;
+				updateLabel(arc.getAttributeMap(),
+						arc.getSource().getLabel() + " -[" + arc.getWeight() + "]-> " + arc.getTarget().getLabel());
+			}
+		}
+		for (Place place : net.getPlaces()) {
+			if (marking.isChanged(place)) {
+				updateLabel(place.getAttributeMap(), place.getLabel());
+			}
+		}
+	}
+
+	/*
+	 * Writes the given label to the given attribute map, unless it is already
+	 * there.
+	 */
+	private static void updateLabel(AttributeMap attributeMap, String label) {
+		if (!label.equals(attributeMap.get(AttributeMap.LABEL))) {
+			attributeMap.put(AttributeMap.LABEL, label);
+		}
+	}
+
 	/**
 	 * Adds an arc with given source, target, and weight to the given net.
 	 * However, if an arc from source to target already exists, the weight is
@@ -52,6 +231,27 @@ public class MurataUtils {
 	 *            The given weight.
 	 */
 	public static void addArc(Petrinet net, PetrinetNode source, PetrinetNode target, int weight) {
+		addArc(net, source, target, weight, true);
+	}
+
+	/**
+	 * Adds an arc with given source, target, and weight to the given net, see
+	 * above. The label of the arc is only updated if requested. If not, the
+	 * label should be updated afterwards using updateLabels.
+	 * 
+	 * @param net
+	 *            The given net.
+	 * @param source
+	 *            The given source.
+	 * @param target
+	 *            The given target.
+	 * @param weight
+	 *            The given weight.
+	 * @param updateLabel
+	 *            Whether to update the label of the arc.
+	 */
+	public static void addArc(Petrinet net, PetrinetNode source, PetrinetNode target, int weight,
+			boolean updateLabel) {
 		Arc arc = net.getArc(source, target);
 		if (arc == null) {
 			/*
@@ -63,7 +263,9 @@ public class MurataUtils {
 				arc = net.addArc((Transition) source, (Place) target);
 			}
 			arc.setWeight(weight);
-			updateLabel(arc);
+			if (updateLabel) {
+				updateLabel(arc);
+			}
 		} else {
 			/*
 			 * An arc already exists (note that there can be at most one arc).
@@ -71,7 +273,9 @@ public class MurataUtils {
 			 */
 			weight += arc.getWeight();
 			arc.setWeight(weight);
-			updateLabel(arc);
+			if (updateLabel) {
+				updateLabel(arc);
+			}
 		}
 	}
 
@@ -90,4 +294,19 @@ public class MurataUtils {
 		updateLabel(place, marking);
 	}
 
+	/**
+	 * Remove all tokens from the given place in the given marking, where the
+	 * marking is kept as a token count per place id. Unlike the regular
+	 * marking, this does not allocate anything. The label of the place is not
+	 * updated, see updateLabels.
+	 * 
+	 * @param marking
+	 *            The given marking.
+	 * @param place
+	 *            The given place.
+	 */
+	public static void resetPlace(MurataMarking marking, Place place) {
+		marking.reset(place);
+	}
+
 }
@@ -0,0 +1,181 @@
+package org.processmining.tests.murata.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.processmining.algorithms.BerthelotAlgorithm;
+import org.processmining.lpengines.interfaces.LPEngine.EngineType;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.parameters.BerthelotParameters;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+
+/**
+ * Compares the LP engines for Berthelot on generated nets. Runs Berthelot with
+ * every engine on every generated net and records the wall time, split into
+ * setup (cloning the net and building the constraint system), building the
+ * LPs, and solving them, as well as the number of LPs, the peak heap usage,
+ * and the number of places removed. Engines that are not installed show up as
+ * errors.
+ * <p>
+ * Options (all optional):
+ * <ul>
+ * <li>-shapes block,chain,fan,loop,freechoice</li>
+ * <li>-sizes 100,1000,10000</li>
+ * <li>-engines lpsolve,gurobi,cplex</li>
+ * <li>-seed 1</li>
+ * <li>-out berthelot-engine-result.json</li>
+ * </ul>
+ * The report is a JSON array with an object per run. It is rewritten after
+ * every run, so a run that does not finish leaves the earlier results.
+ */
+public class BerthelotEngineBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("shapes", "block,chain,fan,loop,freechoice");
+		options.put("sizes", "100,1000,10000");
+		options.put("engines", "lpsolve,gurobi,cplex");
+		options.put("seed", "1");
+		options.put("out", "berthelot-engine-result.json");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("-") || !options.containsKey(args[i].substring(1))) {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			options.put(args[i].substring(1), args[i + 1]);
+		}
+		long seed = Long.parseLong(options.get("seed"));
+
+		List<String> results = new ArrayList<String>();
+		for (String shapeName : options.get("shapes").split(",")) {
+			Shape shape = Shape.valueOf(shapeName.trim().toUpperCase());
+			for (String sizeName : options.get("sizes").split(",")) {
+				int size = Integer.parseInt(sizeName.trim());
+				MurataInput generated = NetGenerator.generate(shape, size, seed);
+				for (String engineName : options.get("engines").split(",")) {
+					EngineType engine = EngineType.valueOf(engineName.trim().toUpperCase());
+					String result = run(engine, shape, size, generated);
+					System.out.println("[BerthelotEngineBenchmark] " + result);
+					results.add(result);
+					write(options.get("out"), results);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Times the phases of a run through the hooks of BerthelotAlgorithm.
+	 */
+	private static class PhaseAlgorithm extends BerthelotAlgorithm {
+
+		private final AtomicLong setup = new AtomicLong();
+		private final AtomicLong build = new AtomicLong();
+		private final AtomicLong solve = new AtomicLong();
+		private final AtomicInteger lps = new AtomicInteger();
+
+		protected void setUp(long time) {
+			setup.addAndGet(time);
+		}
+
+		protected void built(long time) {
+			build.addAndGet(time);
+		}
+
+		protected void solved(long time) {
+			solve.addAndGet(time);
+			lps.incrementAndGet();
+		}
+	}
+
+	private static String run(EngineType engine, Shape shape, int size, MurataInput generated) {
+		Petrinet net = generated.getNet();
+		int places = net.getPlaces().size();
+		int placesAfter = -1;
+		String error = null;
+
+		System.gc();
+		resetPeakHeap();
+		PhaseAlgorithm algorithm = new PhaseAlgorithm();
+		BerthelotParameters parameters = new BerthelotParameters();
+		parameters.setInitialMarking(generated.getMarking());
+		parameters.setFinalMarkings(new HashSet<Marking>());
+		parameters.setEngineType(engine);
+		long start = System.nanoTime();
+		try {
+			Petrinet reducedNet = algorithm.apply(null, net, parameters);
+			placesAfter = reducedNet.getPlaces().size();
+		} catch (Throwable t) {
+			error = t.toString();
+		}
+		long time = System.nanoTime() - start;
+		long peakHeap = getPeakHeap();
+
+		StringBuilder result = new StringBuilder();
+		result.append("{\"engine\": \"").append(engine.name().toLowerCase()).append("\"");
+		result.append(", \"shape\": \"").append(shape.name().toLowerCase()).append("\"");
+		result.append(", \"size\": ").append(size);
+		result.append(", \"nodes\": ").append(NetGenerator.size(net));
+		result.append(", \"places\": ").append(places);
+		result.append(", \"wallTimeMs\": ").append(time / 1000000.0);
+		result.append(", \"setupTimeMs\": ").append(algorithm.setup.get() / 1000000.0);
+		result.append(", \"buildTimeMs\": ").append(algorithm.build.get() / 1000000.0);
+		result.append(", \"solveTimeMs\": ").append(algorithm.solve.get() / 1000000.0);
+		result.append(", \"lps\": ").append(algorithm.lps.get());
+		result.append(", \"peakHeapBytes\": ").append(peakHeap);
+		if (error == null) {
+			result.append(", \"placesRemoved\": ").append(places - placesAfter);
+		} else {
+			result.append(", \"error\": \"").append(error.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+		}
+		result.append("}");
+		return result.toString();
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/*
+	 * Sum of the peaks of the heap pools, which may have peaked at different
+	 * moments. This is an upper bound of the actual peak. Native engines
+	 * allocate outside the heap, which is not included.
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static void write(String fileName, List<String> results) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			writer.write("[\n");
+			for (int i = 0; i < results.size(); i++) {
+				writer.write("  " + results.get(i) + (i + 1 < results.size() ? ",\n" : "\n"));
+			}
+			writer.write("]\n");
+		} finally {
+			writer.close();
+		}
+	}
+}
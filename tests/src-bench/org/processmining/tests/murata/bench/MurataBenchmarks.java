@@ -0,0 +1,37 @@
+package org.processmining.tests.murata.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, which adds the allocation
+ * rate (gc.alloc.rate.norm is bytes per reduction) to the throughput. Results
+ * are written as JSON to bench-result.json. Any regular JMH command line
+ * option may be given, for example "-p rule=FST -p size=1000" to restrict the
+ * parameters or "MurataRuleBenchmark" to restrict the benchmarks.
+ */
+public class MurataBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		builder.parent(commandLineOptions);
+		if (commandLineOptions.getIncludes().isEmpty()) {
+			builder.include(MurataRuleBenchmark.class.getSimpleName());
+		}
+		if (!commandLineOptions.getResult().hasValue()) {
+			builder.result("bench-result.json");
+		}
+		if (!commandLineOptions.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		Options options = builder.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
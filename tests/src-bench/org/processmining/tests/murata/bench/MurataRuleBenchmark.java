@@ -0,0 +1,55 @@
+package org.processmining.tests.murata.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.framework.connections.ConnectionCannotBeObtained;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+
+/**
+ * Reduces a synthetic net with a single rule until the rule no longer applies.
+ * As Murata.run reduces a copy of the input net, the same input can be used
+ * for every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MurataRuleBenchmark {
+
+	@Param({ "FST", "FSP", "FPT", "FPP", "EST", "ESP", "CSM", "ASM" })
+	public String rule;
+
+	@Param({ "10", "100", "1000" })
+	public int size;
+
+	private MurataInput input;
+	private MurataParameters parameters;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		input = RuleNets.create(rule, size);
+		parameters = new MurataParameters();
+	}
+
+	@Benchmark
+	public MurataOutput reduce() throws ConnectionCannotBeObtained {
+		return new Murata().run(null, input, parameters);
+	}
+}
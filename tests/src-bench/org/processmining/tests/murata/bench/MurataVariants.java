@@ -0,0 +1,79 @@
+package org.processmining.tests.murata.bench;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+
+/**
+ * The inputs and parameters the Murata plug-ins use, so that benchmarks and
+ * validations reduce nets the way the plug-ins do.
+ */
+public class MurataVariants {
+
+	/**
+	 * The variants, named after the plug-ins that use them. Preserve Soundness
+	 * uses the default parameters, so it is covered by default.
+	 */
+	public static final String[] VARIANTS = { "default", "behavior", "replay", "all", "workflow" };
+
+	/**
+	 * Creates the input for a variant.
+	 *
+	 * @param variant
+	 *            The variant, see VARIANTS.
+	 * @param net
+	 *            The net to reduce.
+	 * @param marking
+	 *            The initial marking of the net.
+	 * @return The input the corresponding plug-in would create.
+	 */
+	public static MurataInput createInput(String variant, Petrinet net, Marking marking) {
+		if (variant.equals("all")) {
+			return new MurataInput(net, new Marking());
+		}
+		if (variant.equals("workflow")) {
+			MurataInput input = new MurataInput(net, new Marking());
+			for (Place place : net.getPlaces()) {
+				if (net.getInEdges(place).isEmpty()) {
+					input.addSacred(place);
+					if (!net.getOutEdges(place).isEmpty()) {
+						input.addSacred(net.getOutEdges(place).iterator().next().getTarget());
+					}
+				}
+				if (net.getOutEdges(place).isEmpty()) {
+					input.addSacred(place);
+					if (!net.getInEdges(place).isEmpty()) {
+						input.addSacred(net.getInEdges(place).iterator().next().getSource());
+					}
+				}
+			}
+			return input;
+		}
+		MurataInput input = new MurataInput(net, marking);
+		input.setVisibleSacred(net);
+		if (variant.equals("replay")) {
+			input.allowRule(MurataInput.CSM);
+			input.allowRule(MurataInput.ASM);
+		} else if (!variant.equals("default") && !variant.equals("behavior")) {
+			throw new IllegalArgumentException("Unknown variant: " + variant);
+		}
+		return input;
+	}
+
+	/**
+	 * Creates the parameters for a variant.
+	 *
+	 * @param variant
+	 *            The variant, see VARIANTS.
+	 * @return The parameters the corresponding plug-in would use.
+	 */
+	public static MurataParameters createParameters(String variant) {
+		MurataParameters parameters = new MurataParameters();
+		if (variant.equals("behavior")) {
+			parameters.setAllowFPTSacredNode(false);
+		}
+		return parameters;
+	}
+}
@@ -0,0 +1,334 @@
+package org.processmining.tests.murata.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+
+/**
+ * Generates parameterized nets to stand in for real-life models. The size is
+ * the number of nodes (places and transitions) to generate, the generated net
+ * may be slightly larger. Generation is deterministic for a given seed. The
+ * initial marking of the generated input marks the source place(s), no nodes
+ * are sacred.
+ */
+public class NetGenerator {
+
+	public enum Shape {
+		/**
+		 * Block-structured workflow net, obtained by refining transitions into
+		 * sequences, choices, parallel branches, and loops.
+		 */
+		BLOCK,
+		/**
+		 * A long chain of silent transitions, with a visible transition every
+		 * now and then.
+		 */
+		CHAIN,
+		/**
+		 * A sequence of wide parallel fans.
+		 */
+		FAN,
+		/**
+		 * A state machine with many silent loops.
+		 */
+		LOOP,
+		/**
+		 * A random (extended) free-choice net.
+		 */
+		FREECHOICE
+	}
+
+	/**
+	 * Probability that a generated transition is silent.
+	 */
+	private static final double SILENT = 0.5;
+
+	private final Petrinet net;
+	private final Marking marking;
+	private final Random random;
+	private int nodes;
+
+	private NetGenerator(String label, long seed) {
+		net = PetrinetFactory.newPetrinet(label);
+		marking = new Marking();
+		random = new Random(seed);
+		nodes = 0;
+	}
+
+	/**
+	 * Generates a net.
+	 *
+	 * @param shape
+	 *            The shape of the net.
+	 * @param size
+	 *            The number of nodes to generate.
+	 * @param seed
+	 *            The seed for the random choices.
+	 * @return The generated net with its initial marking.
+	 */
+	public static MurataInput generate(Shape shape, int size, long seed) {
+		NetGenerator generator = new NetGenerator(shape.name().toLowerCase() + " " + size + " " + seed, seed);
+		switch (shape) {
+			case BLOCK :
+				generator.block(size);
+				break;
+			case CHAIN :
+				generator.chain(size);
+				break;
+			case FAN :
+				generator.fan(size);
+				break;
+			case LOOP :
+				generator.loop(size);
+				break;
+			case FREECHOICE :
+				generator.freeChoice(size);
+				break;
+		}
+		return new MurataInput(generator.net, generator.marking);
+	}
+
+	/*
+	 * Starts with i -> t -> o, and refines a random transition until the net
+	 * is large enough. Every refinement keeps the net a sound workflow net.
+	 */
+	private void block(int size) {
+		List<Transition> transitions = new ArrayList<Transition>();
+		Place source = place("i");
+		marking.add(source, 1);
+		Place sink = place("o");
+		Transition transition = transition(false);
+		net.addArc(source, transition);
+		net.addArc(transition, sink);
+		transitions.add(transition);
+		while (nodes < size) {
+			transition = transitions.get(random.nextInt(transitions.size()));
+			int pattern = random.nextInt(10);
+			if (pattern < 4) {
+				/*
+				 * Sequence: t becomes t -> p -> t'.
+				 */
+				Transition next = transition(random.nextDouble() < SILENT);
+				moveOutputs(transition, next);
+				Place place = place("p" + nodes);
+				net.addArc(transition, place);
+				net.addArc(place, next);
+				transitions.add(next);
+			} else if (pattern < 7) {
+				/*
+				 * Choice: t' with the same input and output places as t.
+				 */
+				Transition alternative = transition(random.nextDouble() < SILENT);
+				copyInputs(transition, alternative);
+				copyOutputs(transition, alternative);
+				transitions.add(alternative);
+			} else if (pattern < 9) {
+				/*
+				 * Parallel: t becomes split -> (t || t') -> join.
+				 */
+				Transition split = transition(true);
+				Transition join = transition(true);
+				moveInputs(transition, split);
+				moveOutputs(transition, join);
+				Transition branch = transition(random.nextDouble() < SILENT);
+				for (Transition node : new Transition[] { transition, branch }) {
+					Place in = place("p" + nodes);
+					net.addArc(split, in);
+					net.addArc(in, node);
+					Place out = place("p" + nodes);
+					net.addArc(node, out);
+					net.addArc(out, join);
+				}
+				transitions.add(split);
+				transitions.add(join);
+				transitions.add(branch);
+			} else {
+				/*
+				 * Loop: t' that puts back the tokens t took, typically
+				 * silent.
+				 */
+				Transition redo = transition(random.nextDouble() < 0.8);
+				for (PetrinetEdge<?, ?> edge : net.getInEdges(transition)) {
+					net.addArc(redo, (Place) edge.getSource(), ((Arc) edge).getWeight());
+				}
+				for (PetrinetEdge<?, ?> edge : net.getOutEdges(transition)) {
+					net.addArc((Place) edge.getTarget(), redo, ((Arc) edge).getWeight());
+				}
+				transitions.add(redo);
+			}
+		}
+	}
+
+	/*
+	 * i -> t -> p -> t -> ... -> o, where every 100th transition is visible.
+	 */
+	private void chain(int size) {
+		Place place = place("i");
+		marking.add(place, 1);
+		for (int i = 0; nodes < size; i++) {
+			Transition transition = transition(i % 100 != 0);
+			net.addArc(place, transition);
+			place = place("p" + nodes);
+			net.addArc(transition, place);
+		}
+	}
+
+	/*
+	 * A sequence of fans: split -> (p -> t -> p)^width -> join, where the width
+	 * is about the square root of the size.
+	 */
+	private void fan(int size) {
+		int width = Math.max(2, (int) Math.sqrt(size));
+		Place place = place("i");
+		marking.add(place, 1);
+		while (nodes < size) {
+			Transition split = transition(random.nextDouble() < SILENT);
+			net.addArc(place, split);
+			Transition join = transition(random.nextDouble() < SILENT);
+			for (int i = 0; i < width; i++) {
+				Place in = place("p" + nodes);
+				net.addArc(split, in);
+				Transition branch = transition(random.nextDouble() < SILENT);
+				net.addArc(in, branch);
+				Place out = place("p" + nodes);
+				net.addArc(branch, out);
+				net.addArc(out, join);
+			}
+			place = place("p" + nodes);
+			net.addArc(join, place);
+		}
+	}
+
+	/*
+	 * A chain of states s0 -> s1 -> ... -> sn, with silent self loops and
+	 * silent jumps back to earlier states.
+	 */
+	private void loop(int size) {
+		List<Place> states = new ArrayList<Place>();
+		Place state = place("i");
+		marking.add(state, 1);
+		states.add(state);
+		while (nodes < size) {
+			Transition transition = transition(random.nextDouble() < SILENT);
+			net.addArc(state, transition);
+			state = place("s" + nodes);
+			net.addArc(transition, state);
+			states.add(state);
+			int loops = random.nextInt(3);
+			for (int i = 0; i < loops; i++) {
+				Transition loop = transition(true);
+				net.addArc(state, loop);
+				if (random.nextBoolean()) {
+					net.addArc(loop, state);
+				} else {
+					net.addArc(loop, states.get(states.size() - 1 - random.nextInt(Math.min(states.size(), 10))));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Clusters of one to three places, each followed by one to three
+	 * transitions that share these places as input. Every transition has one
+	 * or two output places, mostly in later clusters. As transitions only
+	 * share input places within a cluster, the net is free choice.
+	 */
+	private void freeChoice(int size) {
+		List<List<Place>> clusters = new ArrayList<List<Place>>();
+		while (nodes < size / 2) {
+			List<Place> cluster = new ArrayList<Place>();
+			int count = 1 + random.nextInt(3);
+			for (int i = 0; i < count; i++) {
+				cluster.add(place("p" + nodes));
+			}
+			clusters.add(cluster);
+		}
+		for (Place place : clusters.get(0)) {
+			marking.add(place, 1);
+		}
+		List<Place> sink = new ArrayList<Place>();
+		sink.add(place("o"));
+		clusters.add(sink);
+		for (int c = 0; c < clusters.size() - 1; c++) {
+			int count = 1 + random.nextInt(3);
+			for (int i = 0; i < count; i++) {
+				Transition transition = transition(random.nextDouble() < SILENT);
+				for (Place place : clusters.get(c)) {
+					net.addArc(place, transition);
+				}
+				int outputs = 1 + random.nextInt(2);
+				for (int j = 0; j < outputs; j++) {
+					int target;
+					if (random.nextDouble() < 0.9) {
+						target = c + 1 + random.nextInt(Math.min(3, clusters.size() - c - 1));
+					} else {
+						target = random.nextInt(c + 1);
+					}
+					List<Place> targets = clusters.get(target);
+					Place place = targets.get(random.nextInt(targets.size()));
+					if (net.getArc(transition, place) == null) {
+						net.addArc(transition, place);
+					}
+				}
+			}
+		}
+	}
+
+	private Place place(String label) {
+		nodes++;
+		return net.addPlace(label);
+	}
+
+	private Transition transition(boolean silent) {
+		nodes++;
+		Transition transition = net.addTransition(silent ? "tau" + nodes : "a" + nodes);
+		transition.setInvisible(silent);
+		return transition;
+	}
+
+	private void moveInputs(Transition from, Transition to) {
+		for (PetrinetEdge<?, ?> edge : new ArrayList<PetrinetEdge<?, ?>>(net.getInEdges(from))) {
+			net.addArc((Place) edge.getSource(), to, ((Arc) edge).getWeight());
+			net.removeEdge(edge);
+		}
+	}
+
+	private void moveOutputs(Transition from, Transition to) {
+		for (PetrinetEdge<?, ?> edge : new ArrayList<PetrinetEdge<?, ?>>(net.getOutEdges(from))) {
+			net.addArc(to, (Place) edge.getTarget(), ((Arc) edge).getWeight());
+			net.removeEdge(edge);
+		}
+	}
+
+	private void copyInputs(Transition from, Transition to) {
+		for (PetrinetEdge<?, ?> edge : net.getInEdges(from)) {
+			net.addArc((Place) edge.getSource(), to, ((Arc) edge).getWeight());
+		}
+	}
+
+	private void copyOutputs(Transition from, Transition to) {
+		for (PetrinetEdge<?, ?> edge : net.getOutEdges(from)) {
+			net.addArc(to, (Place) edge.getTarget(), ((Arc) edge).getWeight());
+		}
+	}
+
+	/**
+	 * Counts the nodes of a net.
+	 *
+	 * @param net
+	 *            The net.
+	 * @return The number of places and transitions in the net.
+	 */
+	public static int size(Petrinet net) {
+		return net.getPlaces().size() + net.getTransitions().size();
+	}
+}
@@ -0,0 +1,219 @@
+package org.processmining.tests.murata.bench;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+
+/**
+ * Synthetic nets on which a single reduction rule can be applied over and
+ * over again. Every net has a visible start transition and a visible end
+ * transition, all visible transitions are sacred, and only the rule at hand is
+ * allowed.
+ */
+public class RuleNets {
+
+	/**
+	 * The rules, named after their classes.
+	 */
+	public static final String[] RULES = { "FST", "FSP", "FPT", "FPP", "EST", "ESP", "CSM", "ASM" };
+
+	/**
+	 * Creates the input for the given rule on a net of the given size.
+	 *
+	 * @param rule
+	 *            The rule, see RULES.
+	 * @param size
+	 *            The number of times the rule can be applied.
+	 * @return The input for the reduction.
+	 */
+	public static MurataInput create(String rule, int size) {
+		Petrinet net = PetrinetFactory.newPetrinet(rule + " " + size);
+		Marking marking = new Marking();
+		int mask;
+		if (rule.equals("FST")) {
+			series(net, marking, size);
+			mask = MurataInput.FST;
+		} else if (rule.equals("FSP")) {
+			series(net, marking, size);
+			mask = MurataInput.FSP;
+		} else if (rule.equals("FPT")) {
+			parallelTransitions(net, marking, size);
+			mask = MurataInput.FPT;
+		} else if (rule.equals("FPP")) {
+			parallelPlaces(net, marking, size);
+			mask = MurataInput.FPP;
+		} else if (rule.equals("EST")) {
+			selfLoopTransitions(net, marking, size);
+			mask = MurataInput.ELT;
+		} else if (rule.equals("ESP")) {
+			selfLoopPlaces(net, marking, size);
+			mask = MurataInput.ELP;
+		} else if (rule.equals("CSM")) {
+			cycles(net, marking, size);
+			mask = MurataInput.CSM;
+		} else if (rule.equals("ASM")) {
+			alternatives(net, marking, size);
+			mask = MurataInput.ASM;
+		} else {
+			throw new IllegalArgumentException("Unknown rule: " + rule);
+		}
+		MurataInput input = new MurataInput(net, marking);
+		input.setVisibleSacred(net);
+		input.disallowRule(MurataInput.FST | MurataInput.FSP | MurataInput.FPT | MurataInput.FPP | MurataInput.ELT
+				| MurataInput.ELP | MurataInput.CSM | MurataInput.ASM);
+		input.allowRule(mask);
+		return input;
+	}
+
+	/*
+	 * start -> p0 -> t1 -> p1 -> ... -> tn -> pn -> end
+	 */
+	private static void series(Petrinet net, Marking marking, int size) {
+		Place place = start(net, marking);
+		for (int i = 1; i <= size; i++) {
+			Transition transition = silent(net, "t" + i);
+			net.addArc(place, transition);
+			place = net.addPlace("p" + i);
+			net.addArc(transition, place);
+		}
+		end(net, place);
+	}
+
+	/*
+	 * start -> p0 -> {t1, ..., tn} -> p1 -> end
+	 */
+	private static void parallelTransitions(Petrinet net, Marking marking, int size) {
+		Place input = start(net, marking);
+		Place output = net.addPlace("p1");
+		for (int i = 1; i <= size; i++) {
+			Transition transition = silent(net, "t" + i);
+			net.addArc(input, transition);
+			net.addArc(transition, output);
+		}
+		end(net, output);
+	}
+
+	/*
+	 * start -> p0 -> t0 -> {p1, ..., pn} -> end
+	 */
+	private static void parallelPlaces(Petrinet net, Marking marking, int size) {
+		Place input = start(net, marking);
+		Transition split = silent(net, "t0");
+		net.addArc(input, split);
+		Transition end = net.addTransition("end");
+		for (int i = 1; i <= size; i++) {
+			Place place = net.addPlace("p" + i);
+			net.addArc(split, place);
+			net.addArc(place, end);
+		}
+	}
+
+	/*
+	 * start -> p0 -> end, with self loops p0 -> ti -> p0.
+	 */
+	private static void selfLoopTransitions(Petrinet net, Marking marking, int size) {
+		Place place = start(net, marking);
+		for (int i = 1; i <= size; i++) {
+			Transition transition = silent(net, "t" + i);
+			net.addArc(place, transition);
+			net.addArc(transition, place);
+		}
+		end(net, place);
+	}
+
+	/*
+	 * start -> p0 -> t0 -> q0 -> end, with marked self loops t0 -> pi -> t0.
+	 */
+	private static void selfLoopPlaces(Petrinet net, Marking marking, int size) {
+		Place input = start(net, marking);
+		Transition transition = net.addTransition("t0");
+		net.addArc(input, transition);
+		Place output = net.addPlace("q0");
+		net.addArc(transition, output);
+		for (int i = 1; i <= size; i++) {
+			Place place = net.addPlace("p" + i);
+			net.addArc(transition, place);
+			net.addArc(place, transition);
+			marking.add(place, 1);
+		}
+		end(net, output);
+	}
+
+	/*
+	 * A sequence of cycles of three silent transitions, connected by visible
+	 * transitions.
+	 */
+	private static void cycles(Petrinet net, Marking marking, int size) {
+		Place place = start(net, marking);
+		for (int i = 1; i <= size; i++) {
+			Place place1 = net.addPlace("p" + i + "_1");
+			Place place2 = net.addPlace("p" + i + "_2");
+			Transition transition = silent(net, "t" + i + "_0");
+			net.addArc(place, transition);
+			net.addArc(transition, place1);
+			transition = silent(net, "t" + i + "_1");
+			net.addArc(place1, transition);
+			net.addArc(transition, place2);
+			transition = silent(net, "t" + i + "_2");
+			net.addArc(place2, transition);
+			net.addArc(transition, place);
+			transition = net.addTransition("v" + i);
+			net.addArc(place2, transition);
+			place = net.addPlace("p" + i);
+			net.addArc(transition, place);
+		}
+		end(net, place);
+	}
+
+	/*
+	 * A sequence of silent transitions that each have a silent alternative of
+	 * length two, connected by visible transitions.
+	 */
+	private static void alternatives(Petrinet net, Marking marking, int size) {
+		Place place = start(net, marking);
+		for (int i = 1; i <= size; i++) {
+			Place middle = net.addPlace("p" + i + "_1");
+			Place target = net.addPlace("p" + i + "_2");
+			Transition transition = silent(net, "t" + i + "_0");
+			net.addArc(place, transition);
+			net.addArc(transition, target);
+			transition = silent(net, "t" + i + "_1");
+			net.addArc(place, transition);
+			net.addArc(transition, middle);
+			transition = silent(net, "t" + i + "_2");
+			net.addArc(middle, transition);
+			net.addArc(transition, target);
+			transition = net.addTransition("v" + i);
+			net.addArc(target, transition);
+			place = net.addPlace("p" + i);
+			net.addArc(transition, place);
+		}
+		end(net, place);
+	}
+
+	private static Place start(Petrinet net, Marking marking) {
+		Place source = net.addPlace("i");
+		marking.add(source, 1);
+		Transition start = net.addTransition("start");
+		net.addArc(source, start);
+		Place place = net.addPlace("p0");
+		net.addArc(start, place);
+		return place;
+	}
+
+	private static void end(Petrinet net, Place place) {
+		Transition end = net.addTransition("end");
+		net.addArc(place, end);
+		Place sink = net.addPlace("o");
+		net.addArc(end, sink);
+	}
+
+	private static Transition silent(Petrinet net, String label) {
+		Transition transition = net.addTransition(label);
+		transition.setInvisible(true);
+		return transition;
+	}
+}
@@ -0,0 +1,186 @@
+package org.processmining.tests.murata.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.algorithms.BerthelotAlgorithm;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.parameters.BerthelotParameters;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+
+/**
+ * End-to-end scaling benchmark. Runs every variant on every generated net and
+ * records the wall time, the peak heap usage, the number of passes, and the
+ * number of nodes removed. Every variant runs once per net, so this is meant
+ * for large nets where a single run takes long enough to be measured, use
+ * MurataRuleBenchmark for small nets.
+ * <p>
+ * Options (all optional):
+ * <ul>
+ * <li>-shapes block,chain,fan,loop,freechoice</li>
+ * <li>-sizes 1000,10000,100000 (up to 1000000)</li>
+ * <li>-variants default,behavior,replay,all,workflow,berthelot</li>
+ * <li>-seed 1</li>
+ * <li>-berthelotMaxSize 10000, larger nets are skipped for Berthelot as it
+ * solves an LP per place</li>
+ * <li>-out scaling-result.json</li>
+ * </ul>
+ * The report is a JSON array with an object per run. It is rewritten after
+ * every run, so a run that does not finish leaves the earlier results.
+ */
+public class ScalingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("shapes", "block,chain,fan,loop,freechoice");
+		options.put("sizes", "1000,10000,100000");
+		options.put("variants", join(MurataVariants.VARIANTS) + ",berthelot");
+		options.put("seed", "1");
+		options.put("berthelotMaxSize", "10000");
+		options.put("out", "scaling-result.json");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("-") || !options.containsKey(args[i].substring(1))) {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			options.put(args[i].substring(1), args[i + 1]);
+		}
+		long seed = Long.parseLong(options.get("seed"));
+		int berthelotMaxSize = Integer.parseInt(options.get("berthelotMaxSize"));
+
+		List<String> results = new ArrayList<String>();
+		for (String shapeName : options.get("shapes").split(",")) {
+			Shape shape = Shape.valueOf(shapeName.trim().toUpperCase());
+			for (String sizeName : options.get("sizes").split(",")) {
+				int size = Integer.parseInt(sizeName.trim());
+				MurataInput generated = NetGenerator.generate(shape, size, seed);
+				for (String variant : options.get("variants").split(",")) {
+					variant = variant.trim();
+					if (variant.equals("berthelot") && NetGenerator.size(generated.getNet()) > berthelotMaxSize) {
+						System.out.println("[ScalingBenchmark] Skipping " + variant + " on " + shapeName + " " + size);
+						continue;
+					}
+					String result = run(variant, shape, size, generated);
+					System.out.println("[ScalingBenchmark] " + result);
+					results.add(result);
+					write(options.get("out"), results);
+				}
+			}
+		}
+	}
+
+	private static String run(String variant, Shape shape, int size, MurataInput generated) {
+		Petrinet net = generated.getNet();
+		int nodes = NetGenerator.size(net);
+		int arcs = net.getEdges().size();
+		int passes = 0;
+		int nodesAfter = -1;
+		String error = null;
+
+		System.gc();
+		resetPeakHeap();
+		long start = System.nanoTime();
+		try {
+			if (variant.equals("berthelot")) {
+				BerthelotParameters parameters = new BerthelotParameters();
+				parameters.setInitialMarking(generated.getMarking());
+				parameters.setFinalMarkings(new HashSet<Marking>());
+				Petrinet reducedNet = new BerthelotAlgorithm().apply(null, net, parameters);
+				/*
+				 * Berthelot checks every place once.
+				 */
+				passes = 1;
+				nodesAfter = NetGenerator.size(reducedNet);
+			} else {
+				MurataOutput output = new Murata().run(null,
+						MurataVariants.createInput(variant, net, generated.getMarking()),
+						MurataVariants.createParameters(variant));
+				/*
+				 * Every pass applies a single rule, the last pass finds no rule
+				 * to apply.
+				 */
+				passes = output.getLog().size() + 1;
+				nodesAfter = NetGenerator.size(output.getNet());
+			}
+		} catch (Throwable t) {
+			error = t.toString();
+		}
+		long time = System.nanoTime() - start;
+		long peakHeap = getPeakHeap();
+
+		StringBuilder result = new StringBuilder();
+		result.append("{\"variant\": \"").append(variant).append("\"");
+		result.append(", \"shape\": \"").append(shape.name().toLowerCase()).append("\"");
+		result.append(", \"size\": ").append(size);
+		result.append(", \"nodes\": ").append(nodes);
+		result.append(", \"arcs\": ").append(arcs);
+		result.append(", \"wallTimeMs\": ").append(time / 1000000.0);
+		result.append(", \"peakHeapBytes\": ").append(peakHeap);
+		if (error == null) {
+			result.append(", \"passes\": ").append(passes);
+			result.append(", \"nodesRemoved\": ").append(nodes - nodesAfter);
+		} else {
+			result.append(", \"error\": \"").append(error.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+		}
+		result.append("}");
+		return result.toString();
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/*
+	 * Sum of the peaks of the heap pools, which may have peaked at different
+	 * moments. This is an upper bound of the actual peak.
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static void write(String fileName, List<String> results) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			writer.write("[\n");
+			for (int i = 0; i < results.size(); i++) {
+				writer.write("  " + results.get(i) + (i + 1 < results.size() ? ",\n" : "\n"));
+			}
+			writer.write("]\n");
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String join(String[] values) {
+		StringBuilder joined = new StringBuilder();
+		for (String value : values) {
+			if (joined.length() > 0) {
+				joined.append(",");
+			}
+			joined.append(value);
+		}
+		return joined.toString();
+	}
+}
@@ -0,0 +1,223 @@
+package org.processmining.tests.murata.validation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/**
+ * Compares the behaviour of two nets on a bounded part of their state spaces.
+ * Both nets should have the same visible traces (sequences of labels of
+ * visible transitions) up to a given length, where silent transitions may
+ * occur anywhere in between. The state spaces are explored up to a given
+ * number of states, if that number is exceeded no conclusion is drawn.
+ */
+public class BehaviourComparator {
+
+	/**
+	 * Maximal number of traces reported per net.
+	 */
+	private static final int MAX_REPORTED = 5;
+
+	/*
+	 * A net as arrays of token counts to consume and produce.
+	 */
+	private static class Net {
+
+		private final int[] initial;
+		private final String[] labels;
+		private final int[][] inputPlaces;
+		private final int[][] inputWeights;
+		private final int[][] outputPlaces;
+		private final int[][] outputWeights;
+
+		private Net(Petrinet net, Marking marking) {
+			Map<PetrinetNode, Integer> index = new HashMap<PetrinetNode, Integer>();
+			List<Place> places = new ArrayList<Place>(net.getPlaces());
+			initial = new int[places.size()];
+			for (int p = 0; p < places.size(); p++) {
+				index.put(places.get(p), p);
+				initial[p] = marking.occurrences(places.get(p));
+			}
+			List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
+			labels = new String[transitions.size()];
+			inputPlaces = new int[transitions.size()][];
+			inputWeights = new int[transitions.size()][];
+			outputPlaces = new int[transitions.size()][];
+			outputWeights = new int[transitions.size()][];
+			for (int t = 0; t < transitions.size(); t++) {
+				Transition transition = transitions.get(t);
+				labels[t] = transition.isInvisible() ? null : transition.getLabel();
+				List<int[]> inputs = arcs(net.getInEdges(transition), index, true);
+				List<int[]> outputs = arcs(net.getOutEdges(transition), index, false);
+				inputPlaces[t] = new int[inputs.size()];
+				inputWeights[t] = new int[inputs.size()];
+				for (int i = 0; i < inputs.size(); i++) {
+					inputPlaces[t][i] = inputs.get(i)[0];
+					inputWeights[t][i] = inputs.get(i)[1];
+				}
+				outputPlaces[t] = new int[outputs.size()];
+				outputWeights[t] = new int[outputs.size()];
+				for (int i = 0; i < outputs.size(); i++) {
+					outputPlaces[t][i] = outputs.get(i)[0];
+					outputWeights[t][i] = outputs.get(i)[1];
+				}
+			}
+		}
+
+		private static List<int[]> arcs(
+				Iterable<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> edges,
+				Map<PetrinetNode, Integer> index, boolean source) {
+			List<int[]> arcs = new ArrayList<int[]>();
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : edges) {
+				if (edge instanceof Arc) {
+					PetrinetNode place = source ? edge.getSource() : edge.getTarget();
+					arcs.add(new int[] { index.get(place), ((Arc) edge).getWeight() });
+				}
+			}
+			return arcs;
+		}
+
+		private int[] fire(int[] marking, int t) {
+			for (int i = 0; i < inputPlaces[t].length; i++) {
+				if (marking[inputPlaces[t][i]] < inputWeights[t][i]) {
+					return null;
+				}
+			}
+			int[] next = marking.clone();
+			for (int i = 0; i < inputPlaces[t].length; i++) {
+				next[inputPlaces[t][i]] -= inputWeights[t][i];
+			}
+			for (int i = 0; i < outputPlaces[t].length; i++) {
+				next[outputPlaces[t][i]] += outputWeights[t][i];
+			}
+			return next;
+		}
+	}
+
+	/*
+	 * A marking reached by a visible trace.
+	 */
+	private static class State {
+
+		private final int[] marking;
+		private final List<String> trace;
+
+		private State(int[] marking, List<String> trace) {
+			this.marking = marking;
+			this.trace = trace;
+		}
+
+		public boolean equals(Object object) {
+			if (!(object instanceof State)) {
+				return false;
+			}
+			State state = (State) object;
+			return Arrays.equals(marking, state.marking) && trace.equals(state.trace);
+		}
+
+		public int hashCode() {
+			return 31 * Arrays.hashCode(marking) + trace.hashCode();
+		}
+	}
+
+	/**
+	 * Compares the visible traces of two nets.
+	 *
+	 * @param net1
+	 *            The first net.
+	 * @param marking1
+	 *            The initial marking of the first net.
+	 * @param net2
+	 *            The second net.
+	 * @param marking2
+	 *            The initial marking of the second net.
+	 * @param maxLength
+	 *            The maximal length of the visible traces to compare.
+	 * @param maxStates
+	 *            The maximal number of states to explore per net.
+	 * @param differences
+	 *            Differences found are added to this list.
+	 * @param warnings
+	 *            Problems that prevent a conclusion are added to this list.
+	 */
+	public static void compare(Petrinet net1, Marking marking1, Petrinet net2, Marking marking2, int maxLength,
+			int maxStates, List<String> differences, List<String> warnings) {
+		Set<List<String>> traces1 = traces(new Net(net1, marking1), maxLength, maxStates);
+		Set<List<String>> traces2 = traces(new Net(net2, marking2), maxLength, maxStates);
+		if (traces1 == null || traces2 == null) {
+			warnings.add("State space exceeds " + maxStates + " states, behaviour not compared");
+			return;
+		}
+		report(traces1, traces2, "first", differences);
+		report(traces2, traces1, "second", differences);
+	}
+
+	/*
+	 * All visible traces up to the given length, or null if exploring them
+	 * takes more states than allowed.
+	 */
+	private static Set<List<String>> traces(Net net, int maxLength, int maxStates) {
+		Set<State> visited = new HashSet<State>();
+		ArrayDeque<State> queue = new ArrayDeque<State>();
+		State initial = new State(net.initial, new ArrayList<String>());
+		visited.add(initial);
+		queue.add(initial);
+		while (!queue.isEmpty()) {
+			State state = queue.poll();
+			for (int t = 0; t < net.labels.length; t++) {
+				if (net.labels[t] != null && state.trace.size() == maxLength) {
+					continue;
+				}
+				int[] marking = net.fire(state.marking, t);
+				if (marking == null) {
+					continue;
+				}
+				List<String> trace = state.trace;
+				if (net.labels[t] != null) {
+					trace = new ArrayList<String>(trace);
+					trace.add(net.labels[t]);
+				}
+				State next = new State(marking, trace);
+				if (visited.add(next)) {
+					if (visited.size() > maxStates) {
+						return null;
+					}
+					queue.add(next);
+				}
+			}
+		}
+		Set<List<String>> traces = new HashSet<List<String>>();
+		for (State state : visited) {
+			traces.add(state.trace);
+		}
+		return traces;
+	}
+
+	private static void report(Set<List<String>> traces, Set<List<String>> otherTraces, String net,
+			List<String> differences) {
+		int reported = 0;
+		for (List<String> trace : traces) {
+			if (!otherTraces.contains(trace)) {
+				if (reported++ < MAX_REPORTED) {
+					differences.add("Only the " + net + " net has trace " + trace);
+				}
+			}
+		}
+		if (reported > MAX_REPORTED) {
+			differences.add("Only the " + net + " net has " + (reported - MAX_REPORTED) + " more traces");
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package org.processmining.tests.murata.validation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.processmining.models.connections.GraphLayoutConnection;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.plugins.pnml.base.Pnml;
+import org.processmining.plugins.pnml.importing.PnmlImportUtils;
+import org.processmining.tests.murata.bench.MurataVariants;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+import org.processmining.tests.murata.bench.RuleNets;
+
+/**
+ * Runs the legacy engine and a candidate engine side by side, and checks
+ * whether they reduce every net to the same net. The reduced nets are
+ * compared up to isomorphism, including their markings and the transition and
+ * place mappings (see NetComparator), and their visible traces are compared on
+ * a bounded part of the state space (see BehaviourComparator). Reduced nets that
+ * differ in structure but not in behaviour are reported as equivalent, unless
+ * the validation is strict.
+ * <p>
+ * Options (all optional):
+ * <ul>
+ * <li>-candidate class name of the candidate engine, by default the legacy
+ * engine itself, which checks whether reduction is deterministic, or
+ * LocalMurataEngine for the local reduction</li>
+ * <li>-shapes block,chain,fan,loop,freechoice</li>
+ * <li>-sizes 20,100,1000</li>
+ * <li>-seeds 10, the number of nets to generate per shape and size</li>
+ * <li>-variants default,behavior,replay,all,workflow</li>
+ * <li>-corpus directory with PNML files to validate as well</li>
+ * <li>-length 8, the maximal length of the visible traces to compare</li>
+ * <li>-states 100000, the maximal number of states to explore per net, 0 to
+ * skip comparing behaviour</li>
+ * <li>-strict false, whether structural differences are failures</li>
+ * </ul>
+ * Exits with status 1 if any difference was found.
+ */
+public class DifferentialValidator {
+
+	private final MurataEngine legacy;
+	private final MurataEngine candidate;
+	private final int maxLength;
+	private final int maxStates;
+	private final boolean strict;
+	private int validated;
+	private int equivalent;
+	private int failed;
+	private int inconclusive;
+
+	/**
+	 * Creates a validator for the given candidate engine.
+	 *
+	 * @param candidate
+	 *            The candidate engine.
+	 * @param maxLength
+	 *            The maximal length of the visible traces to compare.
+	 * @param maxStates
+	 *            The maximal number of states to explore per net, or 0 to
+	 *            skip comparing behaviour.
+	 * @param strict
+	 *            Whether the reduced nets should be isomorphic with the same
+	 *            mappings. If not, reduced nets with the same behaviour are
+	 *            accepted as well.
+	 */
+	public DifferentialValidator(MurataEngine candidate, int maxLength, int maxStates, boolean strict) {
+		this.legacy = new LegacyMurataEngine();
+		this.candidate = candidate;
+		this.maxLength = maxLength;
+		this.maxStates = maxStates;
+		this.strict = strict;
+	}
+
+	/**
+	 * Reduces the net with both engines, and compares the results.
+	 *
+	 * @param name
+	 *            The name of the net, used for reporting.
+	 * @param variant
+	 *            The variant to reduce with, see MurataVariants.
+	 * @param net
+	 *            The net.
+	 * @param marking
+	 *            The initial marking of the net.
+	 * @return The differences found, empty if none. Structural differences
+	 *         are only included if the validation is strict.
+	 */
+	public List<String> validate(String name, String variant, Petrinet net, Marking marking) {
+		List<String> differences = new ArrayList<String>();
+		List<String> structuralDifferences = new ArrayList<String>();
+		List<String> warnings = new ArrayList<String>();
+		MurataInput input = MurataVariants.createInput(variant, net, marking);
+		MurataParameters parameters = MurataVariants.createParameters(variant);
+		MurataOutput legacyOutput = null;
+		MurataOutput candidateOutput = null;
+		try {
+			legacyOutput = legacy.run(input, parameters);
+		} catch (Throwable t) {
+			warnings.add("Legacy engine failed: " + t);
+		}
+		try {
+			candidateOutput = candidate.run(input, parameters);
+		} catch (Throwable t) {
+			differences.add("Candidate engine failed: " + t);
+		}
+		if (legacyOutput != null && candidateOutput != null) {
+			NetComparator.compare(legacyOutput, candidateOutput, structuralDifferences, warnings);
+			if (maxStates > 0) {
+				BehaviourComparator.compare(legacyOutput.getNet(), legacyOutput.getMarking(),
+						candidateOutput.getNet(), candidateOutput.getMarking(), maxLength, maxStates, differences,
+						warnings);
+			} else if (!structuralDifferences.isEmpty()) {
+				warnings.add("Behaviour not compared");
+			}
+		}
+		String outcome;
+		validated++;
+		if (!differences.isEmpty() || (strict && !structuralDifferences.isEmpty())) {
+			failed++;
+			outcome = "FAILED";
+		} else if (!warnings.isEmpty()) {
+			inconclusive++;
+			outcome = "INCONCLUSIVE";
+		} else if (!structuralDifferences.isEmpty()) {
+			/*
+			 * The reduction rules are not confluent, and the legacy engine
+			 * applies them in the iteration order of hash sets. Hence, even
+			 * the legacy engine may reduce a net to different but equivalent
+			 * nets.
+			 */
+			equivalent++;
+			outcome = "EQUIVALENT";
+		} else {
+			outcome = null;
+		}
+		if (outcome != null) {
+			System.out.println("[DifferentialValidator] " + outcome + " " + name + " (" + variant + ")");
+			for (List<String> messages : Arrays.asList(structuralDifferences, differences, warnings)) {
+				for (String message : messages) {
+					System.out.println("[DifferentialValidator]     " + message);
+				}
+			}
+		}
+		if (strict) {
+			differences.addAll(structuralDifferences);
+		}
+		return differences;
+	}
+
+	/**
+	 * Reads a net and its initial marking from a PNML file.
+	 *
+	 * @param file
+	 *            The PNML file.
+	 * @return The net and its initial marking.
+	 */
+	public static MurataInput importPnml(File file) throws Exception {
+		InputStream stream = new FileInputStream(file);
+		try {
+			Pnml pnml = new PnmlImportUtils().importPnmlFromStream(null, stream, file.getName(), file.length());
+			Petrinet net = PetrinetFactory.newPetrinet(pnml.getLabel() == null ? file.getName() : pnml.getLabel());
+			Marking marking = new Marking();
+			pnml.convertToNet(net, marking, new GraphLayoutConnection(net));
+			return new MurataInput(net, marking);
+		} finally {
+			stream.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("candidate", LegacyMurataEngine.class.getName());
+		options.put("shapes", "block,chain,fan,loop,freechoice");
+		options.put("sizes", "20,100,1000");
+		options.put("seeds", "10");
+		options.put("variants", "default,behavior,replay,all,workflow");
+		options.put("corpus", "");
+		options.put("length", "8");
+		options.put("states", "100000");
+		options.put("strict", "false");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("-") || !options.containsKey(args[i].substring(1))) {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			options.put(args[i].substring(1), args[i + 1]);
+		}
+		MurataEngine candidate = (MurataEngine) Class.forName(options.get("candidate")).newInstance();
+		DifferentialValidator validator = new DifferentialValidator(candidate,
+				Integer.parseInt(options.get("length")), Integer.parseInt(options.get("states")),
+				Boolean.parseBoolean(options.get("strict")));
+		String[] variants = options.get("variants").split(",");
+
+		for (String rule : RuleNets.RULES) {
+			for (int size = 1; size <= 5; size++) {
+				MurataInput input = RuleNets.create(rule, size);
+				for (String variant : variants) {
+					validator.validate(input.getNet().getLabel(), variant.trim(), input.getNet(),
+							input.getMarking());
+				}
+			}
+		}
+		int seeds = Integer.parseInt(options.get("seeds"));
+		for (String shape : options.get("shapes").split(",")) {
+			for (String size : options.get("sizes").split(",")) {
+				for (int seed = 1; seed <= seeds; seed++) {
+					MurataInput input = NetGenerator.generate(Shape.valueOf(shape.trim().toUpperCase()),
+							Integer.parseInt(size.trim()), seed);
+					for (String variant : variants) {
+						validator.validate(input.getNet().getLabel(), variant.trim(), input.getNet(),
+								input.getMarking());
+					}
+				}
+			}
+		}
+		if (options.get("corpus").length() > 0) {
+			File[] files = new File(options.get("corpus")).listFiles();
+			if (files == null) {
+				throw new IllegalArgumentException("Not a directory: " + options.get("corpus"));
+			}
+			for (File file : files) {
+				if (file.getName().toLowerCase().endsWith(".pnml")) {
+					MurataInput input = importPnml(file);
+					for (String variant : variants) {
+						validator.validate(file.getName(), variant.trim(), input.getNet(), input.getMarking());
+					}
+				}
+			}
+		}
+
+		System.out.println("[DifferentialValidator] Validated " + validator.validated + ", equivalent "
+				+ validator.equivalent + ", inconclusive " + validator.inconclusive + ", failed "
+				+ validator.failed);
+		if (validator.failed > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package org.processmining.tests.murata.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataDelta;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.tests.murata.bench.MurataVariants;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+
+/**
+ * Checks whether updating a reduction after editing the net (Murata.rerun)
+ * yields the same reduced net as reducing the edited net from scratch. Every
+ * generated net is reduced, edited at random, and then reduced again in both
+ * ways. The reduced nets are compared as in DifferentialValidator.
+ * <p>
+ * Options (all optional):
+ * <ul>
+ * <li>-shapes block,chain,fan,loop,freechoice</li>
+ * <li>-sizes 20,100,1000</li>
+ * <li>-seeds 10, the number of nets to generate per shape and size</li>
+ * <li>-variants default,behavior,replay,all</li>
+ * <li>-edits 3, the number of random edits per net</li>
+ * <li>-length 8, the maximal length of the visible traces to compare</li>
+ * <li>-states 100000, the maximal number of states to explore per net</li>
+ * </ul>
+ * Exits with status 1 if any difference in behaviour was found.
+ */
+public class IncrementalValidator {
+
+	private final int edits;
+	private final int maxLength;
+	private final int maxStates;
+	private int validated;
+	private int equivalent;
+	private int failed;
+	private int inconclusive;
+	private long incrementalTime;
+	private long fullTime;
+
+	/**
+	 * Creates a validator.
+	 *
+	 * @param edits
+	 *            The number of random edits per net.
+	 * @param maxLength
+	 *            The maximal length of the visible traces to compare.
+	 * @param maxStates
+	 *            The maximal number of states to explore per net.
+	 */
+	public IncrementalValidator(int edits, int maxLength, int maxStates) {
+		this.edits = edits;
+		this.maxLength = maxLength;
+		this.maxStates = maxStates;
+	}
+
+	/**
+	 * Reduces the net, edits it, and compares the updated reduction with a
+	 * reduction from scratch.
+	 *
+	 * @param name
+	 *            The name of the net, used for reporting.
+	 * @param variant
+	 *            The variant to reduce with, see MurataVariants.
+	 * @param input
+	 *            The net and its initial marking, which will be edited.
+	 * @param seed
+	 *            The seed for the random edits.
+	 * @return The differences in behaviour found, empty if none.
+	 */
+	public List<String> validate(String name, String variant, MurataInput input, long seed) throws Exception {
+		List<String> differences = new ArrayList<String>();
+		List<String> structuralDifferences = new ArrayList<String>();
+		List<String> warnings = new ArrayList<String>();
+		MurataInput variantInput = MurataVariants.createInput(variant, input.getNet(), input.getMarking());
+		MurataParameters parameters = MurataVariants.createParameters(variant);
+		MurataOutput previous = new Murata().run(null, variantInput, parameters);
+
+		MurataDelta delta = new MurataDelta(variantInput.getNet());
+		edit(delta, variantInput, new Random(seed));
+
+		long time = System.nanoTime();
+		MurataOutput incrementalOutput = new Murata().rerun(null, variantInput, previous, delta, parameters);
+		incrementalTime += System.nanoTime() - time;
+		time = System.nanoTime();
+		MurataOutput fullOutput = new Murata().run(null, variantInput, parameters);
+		fullTime += System.nanoTime() - time;
+
+		NetComparator.compare(fullOutput, incrementalOutput, structuralDifferences, warnings);
+		BehaviourComparator.compare(fullOutput.getNet(), fullOutput.getMarking(), incrementalOutput.getNet(),
+				incrementalOutput.getMarking(), maxLength, maxStates, differences, warnings);
+		String outcome;
+		validated++;
+		if (!differences.isEmpty()) {
+			failed++;
+			outcome = "FAILED";
+		} else if (!warnings.isEmpty()) {
+			inconclusive++;
+			outcome = "INCONCLUSIVE";
+		} else if (!structuralDifferences.isEmpty()) {
+			/*
+			 * The reduction rules are not confluent, see
+			 * DifferentialValidator.
+			 */
+			equivalent++;
+			outcome = "EQUIVALENT";
+		} else {
+			outcome = null;
+		}
+		if (outcome != null) {
+			System.out.println("[IncrementalValidator] " + outcome + " " + name + " (" + variant + ")");
+			for (List<String> messages : Arrays.asList(structuralDifferences, differences, warnings)) {
+				for (String message : messages) {
+					System.out.println("[IncrementalValidator]     " + message);
+				}
+			}
+		}
+		return differences;
+	}
+
+	/*
+	 * Applies random edits: adding a silent or visible transition between two
+	 * places, removing a transition, or removing an arc.
+	 */
+	private void edit(MurataDelta delta, MurataInput input, Random random) {
+		Petrinet net = delta.getNet();
+		for (int i = 0; i < edits; i++) {
+			List<Place> places = new ArrayList<Place>(net.getPlaces());
+			List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
+			if (places.isEmpty() || transitions.isEmpty()) {
+				return;
+			}
+			switch (random.nextInt(4)) {
+				case 0 :
+				case 1 :
+					boolean invisible = random.nextBoolean();
+					Transition transition = delta.addTransition(invisible ? "" : "e" + i, invisible);
+					if (!invisible) {
+						input.addSacred(transition);
+					}
+					delta.addArc(places.get(random.nextInt(places.size())), transition, 1);
+					delta.addArc(transition, places.get(random.nextInt(places.size())), 1);
+					break;
+				case 2 :
+					Transition removed = transitions.get(random.nextInt(transitions.size()));
+					input.removeSacred(removed);
+					delta.removeNode(removed);
+					break;
+				default :
+					Transition node = transitions.get(random.nextInt(transitions.size()));
+					List<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>> arcs = new ArrayList<PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode>>(
+							net.getInEdges(node));
+					arcs.addAll(net.getOutEdges(node));
+					if (!arcs.isEmpty()) {
+						PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> arc = arcs
+								.get(random.nextInt(arcs.size()));
+						delta.removeArc(arc.getSource(), arc.getTarget());
+					}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("shapes", "block,chain,fan,loop,freechoice");
+		options.put("sizes", "20,100,1000");
+		options.put("seeds", "10");
+		options.put("variants", "default,behavior,replay,all");
+		options.put("edits", "3");
+		options.put("length", "8");
+		options.put("states", "100000");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("-") || !options.containsKey(args[i].substring(1))) {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			options.put(args[i].substring(1), args[i + 1]);
+		}
+		IncrementalValidator validator = new IncrementalValidator(Integer.parseInt(options.get("edits")),
+				Integer.parseInt(options.get("length")), Integer.parseInt(options.get("states")));
+
+		int seeds = Integer.parseInt(options.get("seeds"));
+		for (String shape : options.get("shapes").split(",")) {
+			for (String size : options.get("sizes").split(",")) {
+				for (int seed = 1; seed <= seeds; seed++) {
+					for (String variant : options.get("variants").split(",")) {
+						MurataInput input = NetGenerator.generate(Shape.valueOf(shape.trim().toUpperCase()),
+								Integer.parseInt(size.trim()), seed);
+						validator.validate(input.getNet().getLabel(), variant.trim(), input, seed);
+					}
+				}
+			}
+		}
+
+		System.out.println("[IncrementalValidator] Validated " + validator.validated + ", equivalent "
+				+ validator.equivalent + ", inconclusive " + validator.inconclusive + ", failed "
+				+ validator.failed);
+		System.out.println("[IncrementalValidator] Incremental " + validator.incrementalTime / 1000000
+				+ " ms, from scratch " + validator.fullTime / 1000000 + " ms");
+		if (validator.failed > 0) {
+			System.exit(1);
+		}
+	}
+}
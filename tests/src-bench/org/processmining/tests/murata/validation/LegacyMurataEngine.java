@@ -0,0 +1,17 @@
+package org.processmining.tests.murata.validation;
+
+import org.processmining.framework.connections.ConnectionCannotBeObtained;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+
+/**
+ * The rule loop of Murata.run, the reference for every candidate engine.
+ */
+public class LegacyMurataEngine implements MurataEngine {
+
+	public MurataOutput run(MurataInput input, MurataParameters parameters) throws ConnectionCannotBeObtained {
+		return new Murata().run(null, input, parameters);
+	}
+}
@@ -0,0 +1,24 @@
+package org.processmining.tests.murata.validation;
+
+import org.processmining.framework.connections.ConnectionCannotBeObtained;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+
+/**
+ * Murata.run with local reduction, which tries the local rules only at nodes
+ * near the last reductions.
+ */
+public class LocalMurataEngine implements MurataEngine {
+
+	public MurataOutput run(MurataInput input, MurataParameters parameters) throws ConnectionCannotBeObtained {
+		boolean localReduction = parameters.isLocalReduction();
+		parameters.setLocalReduction(true);
+		try {
+			return new Murata().run(null, input, parameters);
+		} finally {
+			parameters.setLocalReduction(localReduction);
+		}
+	}
+}
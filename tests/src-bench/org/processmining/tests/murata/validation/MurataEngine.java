@@ -0,0 +1,26 @@
+package org.processmining.tests.murata.validation;
+
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+
+/**
+ * An engine that reduces a net, like Murata.run does. Candidate engines are
+ * validated against the legacy engine, and need a public constructor without
+ * arguments to be selected from the command line.
+ */
+public interface MurataEngine {
+
+	/**
+	 * Reduces the net of the input. The input should not be changed.
+	 *
+	 * @param input
+	 *            The input.
+	 * @param parameters
+	 *            The parameters.
+	 * @return The output, including the reduced net, its marking, and the
+	 *         mappings from the nodes of the input net to the nodes of the
+	 *         reduced net.
+	 */
+	public MurataOutput run(MurataInput input, MurataParameters parameters) throws Exception;
+}
@@ -0,0 +1,455 @@
+package org.processmining.tests.murata.validation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+
+/**
+ * Compares two reductions of the same input net up to isomorphism. The reduced
+ * nets should be isomorphic, where the isomorphism respects the arc weights,
+ * the marking, and the labels of the visible transitions. Furthermore, the
+ * isomorphism should agree with the transition and place mappings, that is,
+ * every node of the input net should be mapped onto corresponding nodes.
+ * <p>
+ * The isomorphism induced by the mappings is tried first. If that fails, an
+ * isomorphism is searched for using colour refinement and backtracking, in
+ * which case the mappings differ.
+ */
+public class NetComparator {
+
+	/**
+	 * Maximal number of candidate assignments tried while searching for an
+	 * isomorphism.
+	 */
+	private static final long MAX_STEPS = 10000000;
+
+	/**
+	 * Maximal number of differences reported per kind.
+	 */
+	private static final int MAX_REPORTED = 10;
+
+	/*
+	 * A reduced net with its nodes numbered, places first.
+	 */
+	private static class Graph {
+
+		private final Map<PetrinetNode, Integer> index = new HashMap<PetrinetNode, Integer>();
+		private final List<PetrinetNode> nodes = new ArrayList<PetrinetNode>();
+		private final List<List<int[]>> outArcs = new ArrayList<List<int[]>>();
+		private final List<List<int[]>> inArcs = new ArrayList<List<int[]>>();
+		private final Map<Long, Integer> weights = new HashMap<Long, Integer>();
+		private final String[] labels;
+		private int places;
+		private int arcs;
+		private int[] colours;
+
+		private Graph(Petrinet net, Marking marking) {
+			for (Place place : net.getPlaces()) {
+				add(place);
+			}
+			places = nodes.size();
+			for (Transition transition : net.getTransitions()) {
+				add(transition);
+			}
+			labels = new String[nodes.size()];
+			for (int i = 0; i < nodes.size(); i++) {
+				PetrinetNode node = nodes.get(i);
+				if (i < places) {
+					labels[i] = "place " + marking.occurrences(node);
+				} else if (((Transition) node).isInvisible()) {
+					labels[i] = "silent";
+				} else {
+					labels[i] = "visible " + node.getLabel();
+				}
+			}
+			for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+				if (edge instanceof Arc) {
+					int source = index.get(edge.getSource());
+					int target = index.get(edge.getTarget());
+					int weight = ((Arc) edge).getWeight();
+					outArcs.get(source).add(new int[] { target, weight });
+					inArcs.get(target).add(new int[] { source, weight });
+					weights.put(key(source, target), weight);
+					arcs++;
+				}
+			}
+		}
+
+		private void add(PetrinetNode node) {
+			index.put(node, nodes.size());
+			nodes.add(node);
+			outArcs.add(new ArrayList<int[]>());
+			inArcs.add(new ArrayList<int[]>());
+		}
+
+		private int size() {
+			return nodes.size();
+		}
+
+		private int indexOf(PetrinetNode node) {
+			Integer i = node == null ? null : index.get(node);
+			return i == null ? -1 : i;
+		}
+
+		private int weight(int source, int target) {
+			Integer weight = weights.get(key(source, target));
+			return weight == null ? 0 : weight;
+		}
+
+		private long key(int source, int target) {
+			return ((long) source << 32) | target;
+		}
+	}
+
+	/**
+	 * Compares the output of the legacy engine with the output of a candidate
+	 * engine.
+	 *
+	 * @param legacy
+	 *            The output of the legacy engine.
+	 * @param candidate
+	 *            The output of the candidate engine.
+	 * @param differences
+	 *            Differences found are added to this list.
+	 * @param warnings
+	 *            Problems that prevent a conclusion are added to this list.
+	 */
+	public static void compare(MurataOutput legacy, MurataOutput candidate, List<String> differences,
+			List<String> warnings) {
+		Graph graph1 = new Graph(legacy.getNet(), legacy.getMarking());
+		Graph graph2 = new Graph(candidate.getNet(), candidate.getMarking());
+		if (graph1.places != graph2.places) {
+			differences.add("Number of places differs: " + graph1.places + " vs " + graph2.places);
+		}
+		if (graph1.size() - graph1.places != graph2.size() - graph2.places) {
+			differences.add("Number of transitions differs: " + (graph1.size() - graph1.places) + " vs "
+					+ (graph2.size() - graph2.places));
+		}
+		if (graph1.arcs != graph2.arcs) {
+			differences.add("Number of arcs differs: " + graph1.arcs + " vs " + graph2.arcs);
+		}
+		if (!differences.isEmpty()) {
+			return;
+		}
+
+		/*
+		 * First, try the isomorphism induced by the mappings. If that is not
+		 * an isomorphism, search for any isomorphism.
+		 */
+		int[] hint = hint(graph1, graph2, legacy, candidate);
+		int[] isomorphism = hint;
+		if (!isIsomorphism(graph1, graph2, hint)) {
+			refine(graph1, graph2);
+			Map<Integer, Integer> histogram = new HashMap<Integer, Integer>();
+			for (int colour : graph1.colours) {
+				histogram.put(colour, (histogram.containsKey(colour) ? histogram.get(colour) : 0) + 1);
+			}
+			for (int colour : graph2.colours) {
+				histogram.put(colour, (histogram.containsKey(colour) ? histogram.get(colour) : 0) - 1);
+			}
+			for (int count : histogram.values()) {
+				if (count != 0) {
+					differences.add("Reduced nets are not isomorphic");
+					return;
+				}
+			}
+			isomorphism = search(graph1, graph2, hint, warnings);
+			if (isomorphism == null) {
+				if (warnings.isEmpty()) {
+					differences.add("Reduced nets are not isomorphic");
+				}
+				return;
+			}
+		}
+
+		/*
+		 * The reduced nets are isomorphic, check whether the mappings agree
+		 * with the isomorphism.
+		 */
+		compareMapping("Transition", legacy.getTransitionMapping(), candidate.getTransitionMapping(), graph1, graph2,
+				isomorphism, differences);
+		compareMapping("Place", legacy.getPlaceMapping(), candidate.getPlaceMapping(), graph1, graph2, isomorphism,
+				differences);
+	}
+
+	/*
+	 * For every node of the first graph, the node of the second graph that the
+	 * mappings map the same input node onto, or -1 if there is no such node.
+	 */
+	private static int[] hint(Graph graph1, Graph graph2, MurataOutput legacy, MurataOutput candidate) {
+		int[] hint = new int[graph1.size()];
+		Arrays.fill(hint, -1);
+		hint(legacy.getTransitionMapping(), candidate.getTransitionMapping(), graph1, graph2, hint);
+		hint(legacy.getPlaceMapping(), candidate.getPlaceMapping(), graph1, graph2, hint);
+		return hint;
+	}
+
+	private static <N extends PetrinetNode> void hint(Map<N, N> mapping1, Map<N, N> mapping2, Graph graph1,
+			Graph graph2, int[] hint) {
+		if (mapping1 == null || mapping2 == null) {
+			return;
+		}
+		for (Map.Entry<N, N> entry : mapping1.entrySet()) {
+			int node1 = graph1.indexOf(entry.getValue());
+			int node2 = graph2.indexOf(mapping2.get(entry.getKey()));
+			if (node1 >= 0 && node2 >= 0 && hint[node1] < 0) {
+				hint[node1] = node2;
+			}
+		}
+	}
+
+	private static boolean isIsomorphism(Graph graph1, Graph graph2, int[] mapping) {
+		boolean[] used = new boolean[graph2.size()];
+		for (int node = 0; node < graph1.size(); node++) {
+			if (mapping[node] < 0 || used[mapping[node]]) {
+				return false;
+			}
+			used[mapping[node]] = true;
+		}
+		for (int node = 0; node < graph1.size(); node++) {
+			if (!isConsistent(graph1, graph2, mapping, node)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Checks whether the node can be mapped as given, considering the nodes
+	 * that have been mapped already. Degrees are checked as well, such that
+	 * arcs of the second graph cannot be left unmatched.
+	 */
+	private static boolean isConsistent(Graph graph1, Graph graph2, int[] mapping, int node) {
+		int image = mapping[node];
+		if (!graph1.labels[node].equals(graph2.labels[image])
+				|| graph1.outArcs.get(node).size() != graph2.outArcs.get(image).size()
+				|| graph1.inArcs.get(node).size() != graph2.inArcs.get(image).size()) {
+			return false;
+		}
+		for (int[] arc : graph1.outArcs.get(node)) {
+			if (mapping[arc[0]] >= 0 && graph2.weight(image, mapping[arc[0]]) != arc[1]) {
+				return false;
+			}
+		}
+		for (int[] arc : graph1.inArcs.get(node)) {
+			if (mapping[arc[0]] >= 0 && graph2.weight(mapping[arc[0]], image) != arc[1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Colour refinement on both graphs at once, so that colours can be
+	 * compared across graphs. Two nodes that get different colours cannot be
+	 * mapped onto each other.
+	 */
+	private static void refine(Graph graph1, Graph graph2) {
+		Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		graph1.colours = new int[graph1.size()];
+		graph2.colours = new int[graph2.size()];
+		for (Graph graph : new Graph[] { graph1, graph2 }) {
+			for (int node = 0; node < graph.size(); node++) {
+				graph.colours[node] = colour(dictionary, graph.labels[node]);
+			}
+		}
+		int classes = dictionary.size();
+		while (true) {
+			dictionary = new HashMap<String, Integer>();
+			int[][] colours = new int[2][];
+			int g = 0;
+			for (Graph graph : new Graph[] { graph1, graph2 }) {
+				colours[g] = new int[graph.size()];
+				for (int node = 0; node < graph.size(); node++) {
+					colours[g][node] = colour(dictionary, signature(graph, node));
+				}
+				g++;
+			}
+			graph1.colours = colours[0];
+			graph2.colours = colours[1];
+			if (dictionary.size() == classes) {
+				return;
+			}
+			classes = dictionary.size();
+		}
+	}
+
+	private static int colour(Map<String, Integer> dictionary, String signature) {
+		Integer colour = dictionary.get(signature);
+		if (colour == null) {
+			colour = dictionary.size();
+			dictionary.put(signature, colour);
+		}
+		return colour;
+	}
+
+	private static String signature(Graph graph, int node) {
+		List<String> outputs = new ArrayList<String>();
+		for (int[] arc : graph.outArcs.get(node)) {
+			outputs.add(arc[1] + "*" + graph.colours[arc[0]]);
+		}
+		Collections.sort(outputs);
+		List<String> inputs = new ArrayList<String>();
+		for (int[] arc : graph.inArcs.get(node)) {
+			inputs.add(arc[1] + "*" + graph.colours[arc[0]]);
+		}
+		Collections.sort(inputs);
+		return graph.colours[node] + " " + outputs + " " + inputs;
+	}
+
+	/*
+	 * Backtracking search for an isomorphism, mapping the nodes in
+	 * breadth-first order, and trying the hinted node first.
+	 */
+	private static int[] search(Graph graph1, Graph graph2, int[] hint, List<String> warnings) {
+		int size = graph1.size();
+		Map<Integer, List<Integer>> byColour = new HashMap<Integer, List<Integer>>();
+		for (int node = 0; node < size; node++) {
+			if (!byColour.containsKey(graph2.colours[node])) {
+				byColour.put(graph2.colours[node], new ArrayList<Integer>());
+			}
+			byColour.get(graph2.colours[node]).add(node);
+		}
+		int[] order = order(graph1, byColour);
+		int[] mapping = new int[size];
+		Arrays.fill(mapping, -1);
+		boolean[] used = new boolean[size];
+		int[][] candidates = new int[size][];
+		int[] next = new int[size];
+		long steps = 0;
+		int depth = 0;
+		while (depth >= 0 && depth < size) {
+			int node = order[depth];
+			if (candidates[depth] == null) {
+				candidates[depth] = candidates(byColour.get(graph1.colours[node]), hint[node]);
+				next[depth] = 0;
+			}
+			if (mapping[node] >= 0) {
+				used[mapping[node]] = false;
+				mapping[node] = -1;
+			}
+			while (next[depth] < candidates[depth].length) {
+				int image = candidates[depth][next[depth]++];
+				if (used[image]) {
+					continue;
+				}
+				if (++steps > MAX_STEPS) {
+					warnings.add("Isomorphism search gave up after " + MAX_STEPS + " steps");
+					return null;
+				}
+				mapping[node] = image;
+				if (isConsistent(graph1, graph2, mapping, node)) {
+					used[image] = true;
+					break;
+				}
+				mapping[node] = -1;
+			}
+			if (mapping[node] >= 0) {
+				depth++;
+			} else {
+				candidates[depth] = null;
+				depth--;
+			}
+		}
+		return depth == size ? mapping : null;
+	}
+
+	private static int[] candidates(List<Integer> nodes, int hint) {
+		int[] candidates = new int[nodes.size()];
+		int i = 0;
+		if (hint >= 0 && nodes.contains(hint)) {
+			candidates[i++] = hint;
+		}
+		for (int node : nodes) {
+			if (node != hint) {
+				candidates[i++] = node;
+			}
+		}
+		return candidates;
+	}
+
+	/*
+	 * Breadth-first order, every component starting at a node with the
+	 * fewest candidates.
+	 */
+	private static int[] order(Graph graph, Map<Integer, List<Integer>> byColour) {
+		Integer[] starts = new Integer[graph.size()];
+		for (int node = 0; node < graph.size(); node++) {
+			starts[node] = node;
+		}
+		final Graph g = graph;
+		final Map<Integer, List<Integer>> c = byColour;
+		Arrays.sort(starts, new Comparator<Integer>() {
+			public int compare(Integer node1, Integer node2) {
+				return c.get(g.colours[node1]).size() - c.get(g.colours[node2]).size();
+			}
+		});
+		int[] order = new int[graph.size()];
+		int ordered = 0;
+		boolean[] visited = new boolean[graph.size()];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for (int start : starts) {
+			if (visited[start]) {
+				continue;
+			}
+			visited[start] = true;
+			queue.add(start);
+			while (!queue.isEmpty()) {
+				int node = queue.poll();
+				order[ordered++] = node;
+				for (List<int[]> arcs : Arrays.asList(graph.outArcs.get(node), graph.inArcs.get(node))) {
+					for (int[] arc : arcs) {
+						if (!visited[arc[0]]) {
+							visited[arc[0]] = true;
+							queue.add(arc[0]);
+						}
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	private static <N extends PetrinetNode> void compareMapping(String kind, Map<N, N> mapping1, Map<N, N> mapping2,
+			Graph graph1, Graph graph2, int[] isomorphism, List<String> differences) {
+		if (mapping1 == null || mapping2 == null) {
+			if (mapping1 != mapping2) {
+				differences.add(kind + " mapping missing");
+			}
+			return;
+		}
+		Set<N> keys = new HashSet<N>(mapping1.keySet());
+		keys.addAll(mapping2.keySet());
+		int reported = 0;
+		for (N key : keys) {
+			int node1 = graph1.indexOf(mapping1.get(key));
+			int node2 = graph2.indexOf(mapping2.get(key));
+			if ((node1 < 0 ? -1 : isomorphism[node1]) != node2) {
+				if (reported++ < MAX_REPORTED) {
+					differences.add(kind + " mapping differs for " + key.getLabel() + ": "
+							+ (node1 < 0 ? "none" : graph1.nodes.get(node1).getLabel()) + " vs "
+							+ (node2 < 0 ? "none" : graph2.nodes.get(node2).getLabel()));
+				}
+			}
+		}
+		if (reported > MAX_REPORTED) {
+			differences.add(kind + " mapping differs for " + (reported - MAX_REPORTED) + " more nodes");
+		}
+	}
+}
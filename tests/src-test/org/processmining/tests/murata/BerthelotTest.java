@@ -0,0 +1,105 @@
+package org.processmining.tests.murata;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.algorithms.BerthelotAlgorithm;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.parameters.BerthelotParameters;
+import org.processmining.plugins.BerthelotPlugin;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+
+/**
+ * Runs Berthelot on generated nets. Requires an LP engine (lpsolve by
+ * default) on the library path.
+ */
+public class BerthelotTest extends TestCase {
+
+  @Test
+  public void testParallel() throws Throwable {
+    for (Shape shape : Shape.values()) {
+      for (int seed = 1; seed <= 3; seed++) {
+        MurataInput generated = NetGenerator.generate(shape, 100, seed);
+        BerthelotParameters sequential = createParameters(generated);
+        BerthelotParameters parallel = createParameters(generated);
+        parallel.setNumberOfThreads(4);
+        Petrinet sequentialNet = new BerthelotAlgorithm().apply(null, generated.getNet(), sequential);
+        Petrinet parallelNet = new BerthelotAlgorithm().apply(null, generated.getNet(), parallel);
+        String name = shape + " " + seed;
+        assertEquals(name, getPlaces(sequentialNet), getPlaces(parallelNet));
+        assertEquals(name, getTokens(sequential.getInitialBerthelotMarking()),
+            getTokens(parallel.getInitialBerthelotMarking()));
+      }
+    }
+  }
+
+  @Test
+  public void testCache() throws Throwable {
+    BerthelotPlugin plugin = new BerthelotPlugin();
+    MurataInput generated = NetGenerator.generate(Shape.FREECHOICE, 100, 1);
+    BerthelotParameters first = createParameters(generated);
+    Petrinet firstNet = plugin.run(null, generated.getNet(), first);
+    List<String> places = getPlaces(firstNet);
+    List<String> tokens = getTokens(first.getInitialBerthelotMarking());
+
+    /*
+     * Changes to the first result should not show up in later results.
+     */
+    Place place = firstNet.getPlaces().iterator().next();
+    firstNet.removePlace(place);
+    first.getInitialBerthelotMarking().add(place, 5);
+
+    for (int run = 0; run < 2; run++) {
+      BerthelotParameters next = createParameters(generated);
+      Petrinet nextNet = plugin.run(null, generated.getNet(), next);
+      assertNotSame(firstNet, nextNet);
+      assertEquals(places, getPlaces(nextNet));
+      assertEquals(tokens, getTokens(next.getInitialBerthelotMarking()));
+      assertTrue(nextNet.getPlaces().containsAll(next.getInitialBerthelotMarking().baseSet()));
+    }
+  }
+
+  private static BerthelotParameters createParameters(MurataInput generated) {
+    BerthelotParameters parameters = new BerthelotParameters();
+    parameters.setInitialMarking(generated.getMarking());
+    parameters.setFinalMarkings(new HashSet<Marking>());
+    return parameters;
+  }
+
+  /*
+   * The sorted labels of the places of the net.
+   */
+  private static List<String> getPlaces(Petrinet net) {
+    List<String> labels = new ArrayList<String>();
+    for (Place place : net.getPlaces()) {
+      labels.add(place.getLabel());
+    }
+    Collections.sort(labels);
+    return labels;
+  }
+
+  /*
+   * The sorted labels of the marked places with their number of tokens.
+   */
+  private static List<String> getTokens(Marking marking) {
+    List<String> tokens = new ArrayList<String>();
+    for (Place place : marking.baseSet()) {
+      tokens.add(place.getLabel() + "=" + marking.occurrences(place));
+    }
+    Collections.sort(tokens);
+    return tokens;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(BerthelotTest.class);
+  }
+
+}
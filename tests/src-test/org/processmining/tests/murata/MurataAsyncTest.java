@@ -0,0 +1,216 @@
+package org.processmining.tests.murata;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.parameters.BerthelotParameters;
+import org.processmining.plugins.BerthelotPlugin;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataDelta;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+import org.processmining.tests.murata.validation.NetComparator;
+
+/**
+ * Runs the asynchronous entry points of Murata and Berthelot on a small
+ * generated net. The tasks are queued by the executor and run by the test, so
+ * that futures can be cancelled before their task starts. The Berthelot tests
+ * require an LP engine (lpsolve by default) on the library path.
+ */
+public class MurataAsyncTest extends TestCase {
+
+  @Test
+  public void testRunAsync() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<MurataOutput> future = new Murata().runAsync(null, input, new MurataParameters(), executor);
+    assertFalse(future.isDone());
+    executor.runAll();
+    assertTrue(future.isDone());
+    assertIsomorphic(new Murata().run(null, input, new MurataParameters()), future.get());
+  }
+
+  @Test
+  public void testRerunAsync() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    MurataOutput previous = new Murata().run(null, input, new MurataParameters());
+    MurataDelta delta = new MurataDelta(input.getNet());
+    Transition transition = delta.addTransition("", true);
+    List<Place> places = new ArrayList<Place>(input.getNet().getPlaces());
+    delta.addArc(places.get(0), transition, 1);
+    delta.addArc(transition, places.get(places.size() - 1), 1);
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<MurataOutput> future = new Murata().rerunAsync(null, input, previous, delta,
+        new MurataParameters(), executor);
+    executor.runAll();
+    MurataOutput output = future.get();
+    for (Place place : output.getPlaceMapping().values()) {
+      assertTrue(output.getNet().getPlaces().contains(place));
+    }
+    for (Transition image : output.getTransitionMapping().values()) {
+      assertTrue(output.getNet().getTransitions().contains(image));
+    }
+  }
+
+  @Test
+  public void testRerunAsyncFails() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    MurataOutput previous = new Murata().run(null, input, new MurataParameters());
+    /*
+     * A delta for another net.
+     */
+    MurataDelta delta = new MurataDelta(NetGenerator.generate(Shape.FREECHOICE, 20, 2).getNet());
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<MurataOutput> future = new Murata().rerunAsync(null, input, previous, delta,
+        new MurataParameters(), executor);
+    executor.runAll();
+    assertTrue(future.isCompletedExceptionally());
+    try {
+      future.get();
+      fail("The delta is not for the net of the input");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void testRunAsyncCancelled() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    CountingParameters parameters = new CountingParameters();
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<MurataOutput> future = new Murata().runAsync(null, input, parameters, executor);
+    assertTrue(future.cancel(true));
+    executor.runAll();
+    assertTrue(future.isCancelled());
+    assertEquals("The reduction should not have started", 0, parameters.calls);
+    new Murata().run(null, input, parameters);
+    assertTrue(parameters.calls > 0);
+  }
+
+  @Test
+  public void testBerthelotRunAsync() throws Throwable {
+    MurataInput generated = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<Petrinet> future = new BerthelotPlugin().runAsync(null, generated.getNet(),
+        createParameters(generated), executor);
+    assertFalse(future.isDone());
+    executor.runAll();
+    Petrinet net = new BerthelotPlugin().run(null, generated.getNet(), createParameters(generated));
+    assertEquals(getLabels(net), getLabels(future.get()));
+  }
+
+  @Test
+  public void testBerthelotRunAsyncFails() throws Throwable {
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<Petrinet> future = new BerthelotPlugin().runAsync(null, null, new BerthelotParameters(),
+        executor);
+    executor.runAll();
+    assertTrue(future.isCompletedExceptionally());
+    try {
+      future.get();
+      fail("There is no net");
+    } catch (ExecutionException e) {
+      assertNotNull(e.getCause());
+    }
+  }
+
+  @Test
+  public void testBerthelotRunAsyncCancelled() throws Throwable {
+    MurataInput generated = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    final int[] calls = new int[1];
+    BerthelotParameters parameters = new BerthelotParameters() {
+
+      public boolean isTryConnections() {
+        calls[0]++;
+        return super.isTryConnections();
+      }
+    };
+    parameters.setInitialMarking(generated.getMarking());
+    parameters.setFinalMarkings(new HashSet<Marking>());
+    QueueExecutor executor = new QueueExecutor();
+    CompletableFuture<Petrinet> future = new BerthelotPlugin().runAsync(null, generated.getNet(), parameters,
+        executor);
+    assertTrue(future.cancel(true));
+    executor.runAll();
+    assertTrue(future.isCancelled());
+    assertEquals("The removal should not have started", 0, calls[0]);
+    assertNull(parameters.getInitialBerthelotMarking());
+    new BerthelotPlugin().run(null, generated.getNet(), parameters);
+    assertTrue(calls[0] > 0);
+  }
+
+  private static void assertIsomorphic(MurataOutput expected, MurataOutput actual) {
+    List<String> differences = new ArrayList<String>();
+    List<String> warnings = new ArrayList<String>();
+    NetComparator.compare(expected, actual, differences, warnings);
+    assertTrue(differences.toString(), differences.isEmpty());
+  }
+
+  private static BerthelotParameters createParameters(MurataInput generated) {
+    BerthelotParameters parameters = new BerthelotParameters();
+    parameters.setInitialMarking(generated.getMarking());
+    parameters.setFinalMarkings(new HashSet<Marking>());
+    return parameters;
+  }
+
+  private static List<String> getLabels(Petrinet net) {
+    List<String> labels = new ArrayList<String>();
+    for (Place place : net.getPlaces()) {
+      labels.add(place.getLabel());
+    }
+    Collections.sort(labels);
+    return labels;
+  }
+
+  /*
+   * Queues the tasks until runAll is called.
+   */
+  private static class QueueExecutor implements Executor {
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    public void runAll() {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      tasks.clear();
+    }
+  }
+
+  /*
+   * Counts how often the reduction asks whether to go off-heap, which it
+   * does as soon as it starts reducing.
+   */
+  private static class CountingParameters extends MurataParameters {
+
+    private int calls = 0;
+
+    public boolean isOffHeap() {
+      calls++;
+      return super.isOffHeap();
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataAsyncTest.class);
+  }
+
+}
@@ -0,0 +1,49 @@
+package org.processmining.tests.murata;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.tests.murata.bench.MurataVariants;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+import org.processmining.tests.murata.bench.RuleNets;
+import org.processmining.tests.murata.validation.DifferentialValidator;
+import org.processmining.tests.murata.validation.LocalMurataEngine;
+
+/**
+ * Validates the local reduction against the default reduction, see
+ * DifferentialValidator. As the rules do not commute, the reduced nets may
+ * differ, but their behaviour should not.
+ */
+public class MurataEngineTest extends TestCase {
+
+  @Test
+  public void testLocalReduction() throws Throwable {
+    DifferentialValidator validator = new DifferentialValidator(new LocalMurataEngine(), 8, 100000, false);
+    for (String rule : RuleNets.RULES) {
+      MurataInput input = RuleNets.create(rule, 3);
+      validate(validator, input.getNet().getLabel(), input);
+    }
+    for (Shape shape : Shape.values()) {
+      for (int size : new int[] { 20, 100 }) {
+        for (int seed = 1; seed <= 3; seed++) {
+          validate(validator, shape + " " + size + " " + seed, NetGenerator.generate(shape, size, seed));
+        }
+      }
+    }
+  }
+
+  private static void validate(DifferentialValidator validator, String name, MurataInput input) {
+    for (String variant : MurataVariants.VARIANTS) {
+      List<String> differences = validator.validate(name, variant, input.getNet(), input.getMarking());
+      assertTrue(name + " (" + variant + "): " + differences, differences.isEmpty());
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataEngineTest.class);
+  }
+
+}
@@ -0,0 +1,98 @@
+package org.processmining.tests.murata;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataDelta;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.tests.murata.bench.MurataVariants;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+import org.processmining.tests.murata.validation.NetComparator;
+
+/**
+ * Updates reductions of generated nets after edits (Murata.rerun), and
+ * compares the mappings with those of reducing the edited nets from scratch.
+ */
+public class MurataIncrementalTest extends TestCase {
+
+  @Test
+  public void testRerun() throws Throwable {
+    int isomorphic = 0;
+    for (Shape shape : Shape.values()) {
+      for (int seed = 1; seed <= 5; seed++) {
+        for (String variant : new String[] { "default", "behavior", "replay", "all" }) {
+          MurataInput generated = NetGenerator.generate(shape, 100, seed);
+          MurataInput input = MurataVariants.createInput(variant, generated.getNet(), generated.getMarking());
+          MurataParameters parameters = MurataVariants.createParameters(variant);
+          MurataOutput previous = new Murata().run(null, input, parameters);
+          MurataDelta delta = edit(input, new Random(seed));
+          MurataOutput incrementalOutput = new Murata().rerun(null, input, previous, delta, parameters);
+          MurataOutput fullOutput = new Murata().run(null, input, parameters);
+
+          String name = shape + " " + seed + " (" + variant + ")";
+          checkImages(name, incrementalOutput.getTransitionMapping(), incrementalOutput.getNet());
+          checkImages(name, incrementalOutput.getPlaceMapping(), incrementalOutput.getNet());
+          /*
+           * The rules are not confluent, so the reduced nets may differ. If
+           * not, the mappings should be the same.
+           */
+          List<String> differences = new ArrayList<String>();
+          List<String> warnings = new ArrayList<String>();
+          NetComparator.compare(fullOutput, incrementalOutput, differences, warnings);
+          if (differences.isEmpty() && warnings.isEmpty()) {
+            isomorphic++;
+            assertEquals(name, fullOutput.getTransitionMapping().keySet(),
+                incrementalOutput.getTransitionMapping().keySet());
+            assertEquals(name, fullOutput.getPlaceMapping().keySet(), incrementalOutput.getPlaceMapping().keySet());
+          }
+        }
+      }
+    }
+    assertTrue("Only " + isomorphic + " isomorphic reductions", isomorphic > 50);
+  }
+
+  /*
+   * Adds a silent transition between two random places, and removes a random
+   * transition. Returns the edits.
+   */
+  private static MurataDelta edit(MurataInput input, Random random) {
+    MurataDelta delta = new MurataDelta(input.getNet());
+    List<Place> places = new ArrayList<Place>(input.getNet().getPlaces());
+    Transition transition = delta.addTransition("", true);
+    delta.addArc(places.get(random.nextInt(places.size())), transition, 1);
+    delta.addArc(transition, places.get(random.nextInt(places.size())), 1);
+    List<Transition> transitions = new ArrayList<Transition>(input.getNet().getTransitions());
+    Transition removed = transitions.get(random.nextInt(transitions.size()));
+    input.removeSacred(removed);
+    delta.removeNode(removed);
+    return delta;
+  }
+
+  /*
+   * Every image should be a node of the reduced net.
+   */
+  private static void checkImages(String name, Map<? extends PetrinetNode, ? extends PetrinetNode> mapping,
+      Petrinet net) {
+    for (Map.Entry<? extends PetrinetNode, ? extends PetrinetNode> entry : mapping.entrySet()) {
+      assertTrue(name + ": " + entry.getKey().getLabel() + " is mapped onto " + entry.getValue(),
+          entry.getValue() != null && net.getNodes().contains(entry.getValue()));
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataIncrementalTest.class);
+  }
+
+}
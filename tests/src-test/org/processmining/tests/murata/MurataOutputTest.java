@@ -0,0 +1,87 @@
+package org.processmining.tests.murata;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+
+/**
+ * Checks the reverse mappings of MurataOutput against the mappings.
+ */
+public class MurataOutputTest extends TestCase {
+
+  @Test
+  public void testReverse() throws Throwable {
+    for (Shape shape : Shape.values()) {
+      for (int seed = 1; seed <= 3; seed++) {
+        MurataInput input = NetGenerator.generate(shape, 100, seed);
+        MurataOutput output = new Murata().run(null, input, new MurataParameters());
+        String name = shape + " " + seed;
+        Map<Transition, List<Transition>> reverseTransitionMapping = output.getReverseTransitionMapping();
+        for (Transition transition : output.getNet().getTransitions()) {
+          List<Transition> originals = new ArrayList<Transition>();
+          for (Map.Entry<Transition, Transition> entry : output.getTransitionMapping().entrySet()) {
+            if (entry.getValue() == transition) {
+              originals.add(entry.getKey());
+            }
+          }
+          assertEquals(name, new HashSet<Transition>(originals),
+              new HashSet<Transition>(output.getOriginalTransitions(transition)));
+          assertEquals(name, originals.size(), output.getOriginalTransitions(transition).size());
+        }
+        assertTrue(name, output.getNet().getTransitions().containsAll(reverseTransitionMapping.keySet()));
+        for (Place place : output.getNet().getPlaces()) {
+          for (Place original : output.getOriginalPlaces(place)) {
+            assertSame(name, place, output.getPlaceMapping().get(original));
+          }
+        }
+        for (Map.Entry<Place, Place> entry : output.getPlaceMapping().entrySet()) {
+          if (output.getNet().getPlaces().contains(entry.getValue())) {
+            assertTrue(name, output.getOriginalPlaces(entry.getValue()).contains(entry.getKey()));
+          }
+        }
+        assertTrue(name, output.getNet().getPlaces().containsAll(output.getReversePlaceMapping().keySet()));
+      }
+    }
+  }
+
+  /*
+   * Images that are not in the output net are left out of the reverse.
+   */
+  @Test
+  public void testReverseOutsideNet() throws Throwable {
+    Petrinet net = PetrinetFactory.newPetrinet("net");
+    Transition transition = net.addTransition("a");
+    Petrinet otherNet = PetrinetFactory.newPetrinet("other");
+    Transition otherTransition = otherNet.addTransition("b");
+    Map<Transition, Transition> transitionMapping = new HashMap<Transition, Transition>();
+    transitionMapping.put(transition, transition);
+    transitionMapping.put(otherNet.addTransition("c"), otherTransition);
+    transitionMapping.put(otherNet.addTransition("d"), null);
+    MurataOutput output = new MurataOutput(net, new Marking());
+    output.setTransitionMapping(transitionMapping);
+    assertEquals(1, output.getReverseTransitionMapping().size());
+    assertEquals(1, output.getOriginalTransitions(transition).size());
+    assertTrue(output.getOriginalTransitions(otherTransition).isEmpty());
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataOutputTest.class);
+  }
+
+}
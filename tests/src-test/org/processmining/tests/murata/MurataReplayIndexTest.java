@@ -0,0 +1,72 @@
+package org.processmining.tests.murata;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.plugins.petrinet.reduction.MurataReplayIndex;
+
+/**
+ * Checks the silent closures of MurataReplayIndex.
+ */
+public class MurataReplayIndexTest extends TestCase {
+
+  /*
+   * p0 -a-> p1 -t1-> p2 -t2-> p3 -t3-> p1, p2 -t4-> p4 -b-> p0, where a and
+   * b are visible, t1, t2, and t3 form a cycle of invisible transitions, and
+   * t4 leaves the cycle.
+   */
+  @Test
+  public void testSilentClosure() throws Throwable {
+    Petrinet net = PetrinetFactory.newPetrinet("net");
+    Place[] places = new Place[5];
+    for (int i = 0; i < places.length; i++) {
+      places[i] = net.addPlace("p" + i);
+    }
+    Transition a = addTransition(net, "a", false, places[0], places[1]);
+    Transition b = addTransition(net, "b", false, places[4], places[0]);
+    Transition t1 = addTransition(net, "t1", true, places[1], places[2]);
+    Transition t2 = addTransition(net, "t2", true, places[2], places[3]);
+    Transition t3 = addTransition(net, "t3", true, places[3], places[1]);
+    Transition t4 = addTransition(net, "t4", true, places[2], places[4]);
+    MurataReplayIndex index = new MurataReplayIndex(net);
+
+    int[] cycle = getIds(index, t1, t2, t3, t4);
+    for (Transition transition : new Transition[] { t1, t2, t3 }) {
+      assertTrue(transition.getLabel(), Arrays.equals(cycle, index.getSilentClosure(index.indexOf(transition))));
+    }
+    assertTrue(Arrays.equals(cycle, index.getSilentClosure(index.indexOf(a))));
+    assertEquals(0, index.getSilentClosure(index.indexOf(b)).length);
+    assertEquals(0, index.getSilentClosure(index.indexOf(t4)).length);
+  }
+
+  private static Transition addTransition(Petrinet net, String label, boolean invisible, Place input,
+      Place output) {
+    Transition transition = net.addTransition(label);
+    transition.setInvisible(invisible);
+    net.addArc(input, transition);
+    net.addArc(transition, output);
+    return transition;
+  }
+
+  /*
+   * The sorted ids of the given transitions.
+   */
+  private static int[] getIds(MurataReplayIndex index, Transition... transitions) {
+    int[] ids = new int[transitions.length];
+    for (int i = 0; i < transitions.length; i++) {
+      ids[i] = index.indexOf(transitions[i]);
+    }
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataReplayIndexTest.class);
+  }
+
+}
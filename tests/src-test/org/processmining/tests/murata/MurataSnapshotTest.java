@@ -0,0 +1,221 @@
+package org.processmining.tests.murata;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Arc;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.plugins.petrinet.reduction.MurataSnapshot;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+import org.processmining.tests.murata.validation.NetComparator;
+
+/**
+ * Writes reduced nets to snapshots and reads them back, see MurataSnapshot.
+ */
+public class MurataSnapshotTest extends TestCase {
+
+  @Test
+  public void testRoundTrip() throws Throwable {
+    for (Shape shape : Shape.values()) {
+      for (int seed = 1; seed <= 3; seed++) {
+        MurataInput input = NetGenerator.generate(shape, 100, seed);
+        MurataOutput output = new Murata().run(null, input, new MurataParameters());
+        MurataOutput snapshot = MurataSnapshot.read(ByteBuffer.wrap(write(output, input)), input.getNet());
+        List<String> differences = new ArrayList<String>();
+        List<String> warnings = new ArrayList<String>();
+        NetComparator.compare(output, snapshot, differences, warnings);
+        String name = shape + " " + seed;
+        assertTrue(name + ": " + differences, differences.isEmpty());
+        assertTrue(name + ": " + warnings, warnings.isEmpty());
+        assertEquals(name, output.getLog(), snapshot.getLog());
+      }
+    }
+  }
+
+  @Test
+  public void testFile() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.BLOCK, 100, 1);
+    MurataOutput output = new Murata().run(null, input, new MurataParameters());
+    File file = File.createTempFile("murata", ".snapshot");
+    try {
+      MurataSnapshot.write(output, input.getNet(), file);
+      MurataOutput snapshot = MurataSnapshot.read(file, input.getNet());
+      List<String> differences = new ArrayList<String>();
+      List<String> warnings = new ArrayList<String>();
+      NetComparator.compare(output, snapshot, differences, warnings);
+      assertTrue(differences.toString(), differences.isEmpty());
+      assertTrue(warnings.toString(), warnings.isEmpty());
+      assertEquals(output.getLog(), snapshot.getLog());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testTruncated() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    byte[] bytes = write(new Murata().run(null, input, new MurataParameters()), input);
+    for (int length = 0; length < bytes.length; length++) {
+      try {
+        MurataSnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, length)), input.getNet());
+        fail("Read a snapshot truncated to " + length + " of " + bytes.length + " bytes");
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+
+  /*
+   * A corrupt snapshot may still be a valid snapshot, but reading it should
+   * fail with an IOException otherwise.
+   */
+  @Test
+  public void testCorrupt() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 20, 1);
+    byte[] bytes = write(new Murata().run(null, input, new MurataParameters()), input);
+    Random random = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      byte[] corrupt = bytes.clone();
+      for (int j = 1 + random.nextInt(3); j > 0; j--) {
+        corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+      }
+      try {
+        MurataSnapshot.read(ByteBuffer.wrap(corrupt), input.getNet());
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+
+  /*
+   * The nodes of the input net are identified by their id, so that nodes with
+   * the same label are told apart.
+   */
+  @Test
+  public void testSharedLabels() throws Throwable {
+    MurataInput input = createInput();
+    MurataOutput output = new Murata().run(null, input, new MurataParameters());
+    byte[] bytes = write(output, input);
+    MurataOutput snapshot = MurataSnapshot.read(ByteBuffer.wrap(bytes), input.getNet());
+    List<String> differences = new ArrayList<String>();
+    List<String> warnings = new ArrayList<String>();
+    NetComparator.compare(output, snapshot, differences, warnings);
+    assertTrue(differences.toString(), differences.isEmpty());
+    assertTrue(warnings.toString(), warnings.isEmpty());
+    /*
+     * A rebuilt input net has other ids, and its nodes with the same label
+     * cannot be told apart.
+     */
+    try {
+      MurataSnapshot.read(ByteBuffer.wrap(bytes), createInput().getNet());
+      fail("Read a snapshot against a rebuilt net with shared labels");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  /*
+   * If the input net has other ids, its nodes are identified by their label.
+   */
+  @Test
+  public void testRebuilt() throws Throwable {
+    MurataInput input = NetGenerator.generate(Shape.FREECHOICE, 100, 1);
+    MurataOutput output = new Murata().run(null, input, new MurataParameters());
+    Map<PetrinetNode, PetrinetNode> copies = new HashMap<PetrinetNode, PetrinetNode>();
+    Petrinet copy = copy(input.getNet(), copies);
+    MurataOutput snapshot = MurataSnapshot.read(ByteBuffer.wrap(write(output, input)), copy);
+    assertEquals(output.getTransitionMapping().size(), snapshot.getTransitionMapping().size());
+    for (Transition transition : input.getNet().getTransitions()) {
+      assertEquals(getLabel(output.getTransitionMapping().get(transition)),
+          getLabel(snapshot.getTransitionMapping().get(copies.get(transition))));
+    }
+    assertEquals(output.getPlaceMapping().size(), snapshot.getPlaceMapping().size());
+    for (Place place : input.getNet().getPlaces()) {
+      assertEquals(getLabel(output.getPlaceMapping().get(place)),
+          getLabel(snapshot.getPlaceMapping().get(copies.get(place))));
+    }
+  }
+
+  /*
+   * p0 -> a -> p1 -> b -> p2 -> a -> p3, with a token in p0.
+   */
+  private static MurataInput createInput() {
+    Petrinet net = PetrinetFactory.newPetrinet("shared");
+    Place place = net.addPlace("p0");
+    Marking marking = new Marking();
+    marking.add(place);
+    String[] labels = new String[] { "a", "b", "a" };
+    for (int i = 0; i < labels.length; i++) {
+      Transition transition = net.addTransition(labels[i]);
+      net.addArc(place, transition);
+      place = net.addPlace("p" + (i + 1));
+      net.addArc(transition, place);
+    }
+    return new MurataInput(net, marking);
+  }
+
+  /*
+   * A copy of the given net, with the nodes added in reverse order.
+   */
+  private static Petrinet copy(Petrinet net, Map<PetrinetNode, PetrinetNode> copies) {
+    Petrinet copy = PetrinetFactory.newPetrinet(net.getLabel());
+    List<Place> places = new ArrayList<Place>(net.getPlaces());
+    Collections.reverse(places);
+    for (Place place : places) {
+      copies.put(place, copy.addPlace(place.getLabel()));
+    }
+    List<Transition> transitions = new ArrayList<Transition>(net.getTransitions());
+    Collections.reverse(transitions);
+    for (Transition transition : transitions) {
+      Transition transitionCopy = copy.addTransition(transition.getLabel());
+      transitionCopy.setInvisible(transition.isInvisible());
+      copies.put(transition, transitionCopy);
+    }
+    for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+      Arc arc = (Arc) edge;
+      if (arc.getSource() instanceof Place) {
+        copy.addArc((Place) copies.get(arc.getSource()), (Transition) copies.get(arc.getTarget()), arc.getWeight());
+      } else {
+        copy.addArc((Transition) copies.get(arc.getSource()), (Place) copies.get(arc.getTarget()), arc.getWeight());
+      }
+    }
+    return copy;
+  }
+
+  private static String getLabel(PetrinetNode node) {
+    return node == null ? null : node.getLabel();
+  }
+
+  private static byte[] write(MurataOutput output, MurataInput input) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    MurataSnapshot.write(output, input.getNet(), stream);
+    return stream.toByteArray();
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataSnapshotTest.class);
+  }
+
+}
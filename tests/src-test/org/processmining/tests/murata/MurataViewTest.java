@@ -0,0 +1,87 @@
+package org.processmining.tests.murata;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataBase;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.tests.murata.bench.NetGenerator;
+import org.processmining.tests.murata.bench.NetGenerator.Shape;
+
+/**
+ * Reduces generated nets under views with fewer sacred nodes than the base
+ * (Murata.runView), and checks the composed mappings.
+ */
+public class MurataViewTest extends TestCase {
+
+  @Test
+  public void testRunView() throws Throwable {
+    int eliminated = 0;
+    for (Shape shape : Shape.values()) {
+      for (int seed = 1; seed <= 3; seed++) {
+        MurataInput input = NetGenerator.generate(shape, 100, seed);
+        input.setVisibleSacred(input.getNet());
+        MurataParameters parameters = new MurataParameters();
+        MurataBase base = new Murata().runBase(null, input, parameters);
+        /*
+         * The view only keeps every other sacred transition.
+         */
+        MurataInput view = new MurataInput(input.getNet(), input.getMarking());
+        boolean keep = true;
+        for (Transition transition : input.getNet().getTransitions()) {
+          if (input.isSacred(transition)) {
+            if (keep) {
+              view.addSacred(transition);
+            }
+            keep = !keep;
+          }
+        }
+        MurataOutput output = new Murata().runView(null, base, view, parameters);
+
+        String name = shape + " " + seed;
+        MurataOutput baseOutput = base.getOutput();
+        checkImages(name, output.getTransitionMapping(), output.getNet());
+        checkImages(name, output.getPlaceMapping(), output.getNet());
+        for (Transition transition : input.getNet().getTransitions()) {
+          Transition baseImage = baseOutput.getTransitionMapping().get(transition);
+          if (baseImage != null && !output.getTransitionMapping().containsKey(transition)) {
+            eliminated++;
+          }
+          if (baseImage == null) {
+            assertFalse(name, output.getTransitionMapping().containsKey(transition));
+          }
+          if (view.isSacred(transition)) {
+            assertNotNull(name, output.getTransitionMapping().get(transition));
+          }
+        }
+        for (Map.Entry<Transition, Transition> entry : output.getTransitionMapping().entrySet()) {
+          assertNotNull(name, baseOutput.getTransitionMapping().get(entry.getKey()));
+        }
+      }
+    }
+    assertTrue("The views eliminated no transitions kept by their bases", eliminated > 0);
+  }
+
+  /*
+   * Every image should be a node of the reduced net.
+   */
+  private static void checkImages(String name, Map<? extends PetrinetNode, ? extends PetrinetNode> mapping,
+      Petrinet net) {
+    for (Map.Entry<? extends PetrinetNode, ? extends PetrinetNode> entry : mapping.entrySet()) {
+      assertTrue(name + ": " + entry.getKey().getLabel() + " is mapped onto " + entry.getValue(),
+          entry.getValue() != null && net.getNodes().contains(entry.getValue()));
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(MurataViewTest.class);
+  }
+
+}
@@ -0,0 +1,42 @@
+package org.processmining.tests.murata;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.petrinet.reduction.Murata;
+import org.processmining.plugins.petrinet.reduction.MurataInput;
+import org.processmining.plugins.petrinet.reduction.MurataOutput;
+import org.processmining.plugins.petrinet.reduction.MurataParameters;
+import org.processmining.tests.murata.bench.RuleNets;
+
+/**
+ * Checks that the nets of the rule benchmarks keep their rule busy: every
+ * larger net gives the rule more to reduce.
+ */
+public class RuleNetsTest extends TestCase {
+
+  @Test
+  public void testRuleNets() throws Throwable {
+    for (String rule : RuleNets.RULES) {
+      int lastRemoved = -1;
+      for (int size = 1; size <= 5; size++) {
+        MurataInput input = RuleNets.create(rule, size);
+        int places = input.getNet().getPlaces().size();
+        int transitions = input.getNet().getTransitions().size();
+        MurataOutput output = new Murata().run(null, input, new MurataParameters());
+        assertEquals(rule + " " + size + " changed the input net", places, input.getNet().getPlaces().size());
+        assertEquals(rule + " " + size + " changed the input net", transitions,
+            input.getNet().getTransitions().size());
+        int removed = places + transitions - output.getNet().getPlaces().size()
+            - output.getNet().getTransitions().size();
+        assertTrue(rule + " " + size + " removed " + removed + " nodes, " + rule + " " + (size - 1) + " removed "
+            + lastRemoved, removed > lastRemoved);
+        lastRemoved = removed;
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(RuleNetsTest.class);
+  }
+
+}